@@ -1,10 +1,18 @@
-import data.DataLoader;
-import data.MarchingCubes;
+import data.*;
+import renderEngine.SoftwareWindow;
 import renderEngine.WindowView;
+import service.ExtractionBenchmark;
+import service.ExtractionService;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copyright 2023, Elia Pym
@@ -20,6 +28,9 @@ import java.util.Scanner;
  * @since 2023 -04-22
  */
 public class Main {
+    private static final int SLAB_SIZE = 16;
+    private static final int CHUNK_SIZE = 32;
+    private static final int CUT_SIZE = 8;
     private static int windowWidth = 640;
     private static int windowHeight = 480;
     private static boolean windowFullscreen = false;
@@ -27,41 +38,228 @@ public class Main {
     private static String dir;
     private static float isoLevel = 0.1f;
     private static boolean col = false;
+    private static int[] seed = null;
 
     /**
-     * The entry point of application.
+     * The entry point of application.<br>
+     * Runs the headless extraction service with arguments
+     * <code>--service &lt;queue directory&gt; [workers] [queue capacity]</code> and times extraction with
+     * <code>--benchmark &lt;source directory&gt; [method] [ISO level] [runs]</code>, or on a synthetic cube with
+     * a size in place of the directory, otherwise prompts for input and opens a window. The mesh is rendered on the CPU if OpenGL is unavailable or the argument
+     * <code>--software</code> is given. <code>--no-vsync</code> disables v-sync and
+     * <code>--frame-cap &lt;fps&gt;</code> limits the frame rate of the window. <code>--method &lt;name&gt;</code>
+     * selects the extraction method, <code>marching_cubes</code>, <code>dual_contouring</code> or
+     * <code>marching_tetrahedra</code>. <code>--two-pass</code> extracts with Marching Cubes in two parallel
+     * passes over the whole volume instead of the slab pipeline. <code>--sparse</code> stores the volume in
+     * bricks, keeping uniform bricks as a single value, and <code>--compressed</code> also compresses the other
+     * bricks. <code>--morton</code> stores samples in Morton order within bricks. The source directory may also
+     * be a raw volume file with a properties header, see {@link data.MappedVolume}, or a directory of DICOM
+     * files, see {@link data.DicomSeries}.
+     * <code>--spacing &lt;x,y,z&gt;</code> sets the distance between samples along each axis, overriding the
+     * spacing of the volume. <code>--frames</code> plays a time series with a subdirectory or raw volume file
+     * for each frame in the source directory, extracted with Marching Cubes at up to
+     * <code>--fps &lt;frames per second&gt;</code> (default 10). Meshes are reordered for the vertex cache before
+     * they are shown, see {@link data.MeshOptimizer}, unless <code>--no-optimise</code> is given.
+     * <code>--chunked</code> extracts the volume with Marching Cubes in chunks, see {@link data.ChunkedExtraction},
+     * and each press of the E key cuts more samples off the volume along the x-axis, showing a cross-section once
+     * the chunks the cut changes have been extracted again and swapped in.
      *
      * @param args the input arguments
      * @throws Exception Exception thrown if data can't be read from Data Loader class
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 1 && Objects.equals(args[0], "--service")) {
+            int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            int queueCapacity = args.length > 3 ? Integer.parseInt(args[3]) : workers * 2;
+            new ExtractionService(new File(args[1]), workers, queueCapacity).run();
+            return;
+        }
+        if (args.length > 1 && Objects.equals(args[0], "--benchmark")) {
+            ExtractionParameters parameters = new ExtractionParameters();
+            if (args.length > 2) parameters.method = ExtractionParameters.Method.valueOf(args[2].toUpperCase(Locale.ROOT));
+            if (args.length > 3) parameters.isoLevel = Float.parseFloat(args[3]);
+            int runs = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+            parameters.twoPass = Arrays.asList(args).contains("--two-pass");
+            DataLoader.Storage storage = getStorage(Arrays.asList(args));
+            ExtractionBenchmark benchmark = args[1].matches("\\d+")
+                    ? new ExtractionBenchmark(Integer.parseInt(args[1]), storage)
+                    : new ExtractionBenchmark(args[1], storage);
+            benchmark.run(parameters, runs);
+            return;
+        }
+
+        List<String> options = Arrays.asList(args);
         userInput();
         windowTitle = "Marching Cubes v4.0 - " + dir + " - DEMO";
 
-        // read data from directory
-        DataLoader.Data[][][] data = DataLoader.getData(dir);
+        // set parameters for Marching Cubes extraction
+        // only extracts the surface connected to the seed voxel if one is given
+        ExtractionParameters parameters = new ExtractionParameters();
+        parameters.isoLevel = isoLevel;
+        parameters.enableColours = col;
+        parameters.seed = seed;
+        int methodIndex = options.indexOf("--method");
+        if (methodIndex >= 0 && methodIndex + 1 < args.length) {
+            parameters.method = ExtractionParameters.Method.valueOf(args[methodIndex + 1].toUpperCase(Locale.ROOT));
+        }
+        parameters.twoPass = options.contains("--two-pass");
+        int spacingIndex = options.indexOf("--spacing");
+        if (spacingIndex >= 0 && spacingIndex + 1 < args.length) parameters.spacing = DataLoader.parseSpacing(args[spacingIndex + 1]);
+        DataLoader.Storage storage = getStorage(options);
+        if (options.contains("--frames")) {
+            int fpsIndex = options.indexOf("--fps");
+            playFrames(parameters, storage, fpsIndex >= 0 && fpsIndex + 1 < args.length ? Float.parseFloat(args[fpsIndex + 1]) : 10);
+            return;
+        }
+        if (options.contains("--chunked")) {
+            showChunks(parameters, storage);
+            return;
+        }
 
-        // set parameters for Marching Cubes class
-        MarchingCubes.isoLevel = isoLevel;
-        MarchingCubes.enableColours = col;
-        // generate vertices of mesh from the data array
-        MarchingCubes.generateVertices(data);
+        // generate mesh from the volume in the source directory
+        // single pass Marching Cubes without a seed loads and extracts slices as a pipeline of slabs
+        // otherwise the whole volume is loaded first, or mapped if it is a raw volume file
+        // DICOM series are decoded in parallel before extraction
+        MarchingCubes marchingCubes = new MarchingCubes();
+        Volume volume;
+        MeshData mesh;
+        if (parameters.method == ExtractionParameters.Method.MARCHING_CUBES && seed == null && !parameters.twoPass
+                && storage == DataLoader.Storage.DENSE && !DataLoader.isRawVolume(dir)
+                && !DataLoader.isDicomSeries(dir)) {
+            ExtractionPipeline pipeline = new ExtractionPipeline(marchingCubes, SLAB_SIZE);
+            mesh = pipeline.run(dir, parameters);
+            volume = pipeline.getVolume();
+        } else {
+            SurfaceExtractor extractor = switch (parameters.method) {
+                case MARCHING_CUBES -> marchingCubes;
+                case DUAL_CONTOURING -> new DualContouring();
+                case MARCHING_TETRAHEDRA -> new MarchingTetrahedra();
+            };
+            volume = DataLoader.getVolume(dir, storage);
+            mesh = extractor.generate(volume, parameters);
+        }
+        if (!options.contains("--no-optimise")) mesh = optimise(mesh);
 
-        // gets data from Marching Cubes class
-        float[] vertices = MarchingCubes.getVertices();
-        int[] indices = MarchingCubes.getIndices();
-        float[] normals = MarchingCubes.getNormals();
-        float[] colours = MarchingCubes.getColours();
+        // frame pacing of the GLFW window
+        if (options.contains("--no-vsync")) WindowView.vsync = false;
+        int frameCapIndex = options.indexOf("--frame-cap");
+        if (frameCapIndex >= 0 && frameCapIndex + 1 < args.length) WindowView.frameCap = Integer.parseInt(args[frameCapIndex + 1]);
 
         // creates the GLFW window object
+        int[] size = getMeshSize(volume, parameters);
+        boolean software = options.contains("--software");
+        if (!software) {
+            WindowView window = new WindowView(windowWidth, windowHeight, windowFullscreen, windowTitle);
+            // sets data in window view class
+            window.data(mesh.getVertices(), mesh.getIndices(), mesh.getNormals(), mesh.getColours());
+            window.setPos(size[0], size[1], size[2]);
+            // run window, falling back to software rendering if it can't be created
+            software = !window.run();
+        }
+        if (software) showSoftware(mesh, size);
+    }
+
+    // plays a time series of volumes in the source directory, extracting each frame in chunks in the background
+    // the software renderer can't play a series, so only shows the first frame
+    private static void playFrames(ExtractionParameters parameters, DataLoader.Storage storage, float framesPerSecond) throws Exception {
+        MarchingCubes marchingCubes = new MarchingCubes();
+        TimeSeries series = TimeSeries.load(TimeSeries.listFrames(dir), storage, marchingCubes, parameters, CHUNK_SIZE);
+        int[] size = getMeshSize(series.getFrame(0), parameters);
+
+        WindowView window = new WindowView(windowWidth, windowHeight, windowFullscreen, windowTitle);
+        window.play(series, framesPerSecond);
+        window.setPos(size[0], size[1], size[2]);
+        if (!window.run()) {
+            System.err.println("Playing a time series needs OpenGL, showing the first frame");
+            showSoftware(optimise(marchingCubes.generate(series.getFrame(0), parameters)), size);
+        }
+    }
+
+    // shows the volume extracted in chunks, each E key press cuts CUT_SIZE more samples off the volume along the
+    // x-axis, the chunks the cut changes are extracted in the background and swapped in as they are uploaded
+    private static void showChunks(ExtractionParameters parameters, DataLoader.Storage storage) throws Exception {
+        DenseVolume volume = toDense(DataLoader.getVolume(dir, storage));
+        ChunkedExtraction extraction = new ChunkedExtraction(new MarchingCubes(), volume, parameters, CHUNK_SIZE);
+        extraction.update();
+        MeshData[] chunks = new MeshData[extraction.getChunkCount()];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = extraction.getChunk(i);
+        int[] size = getMeshSize(volume, parameters);
+
         WindowView window = new WindowView(windowWidth, windowHeight, windowFullscreen, windowTitle);
-        // sets data in window view class
-        window.data(vertices, indices, normals, colours);
-        window.setPos(MarchingCubes.getWidth(), MarchingCubes.getHeight(), MarchingCubes.getDepth());
-        // run window
+        window.chunks(chunks);
+        window.setPos(size[0], size[1], size[2]);
+
+        // edits run one at a time, so samples don't change while chunks are extracted
+        ExecutorService editor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "volume-edit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger cut = new AtomicInteger(volume.getWidth());
+        window.onEdit(() -> editor.execute(() -> {
+            int last = cut.get() - 1;
+            if (last < 0) return;
+            int first = cut.updateAndGet(x -> Math.max(0, x - CUT_SIZE));
+            // samples cut off are set to 0, below any ISO level, which closes the surface at the cut
+            volume.fill(new int[]{first, 0, 0}, new int[]{last, volume.getHeight() - 1, volume.getDepth() - 1}, 0);
+            for (int chunk : extraction.update()) window.swapChunk(chunk, extraction.getChunk(chunk));
+        }));
+        if (!window.run()) showSoftware(extraction.toMeshData(), size);
+        editor.shutdownNow();
+    }
+
+    // volume as a dense volume that can be edited, copying the samples of volumes stored otherwise
+    private static DenseVolume toDense(Volume volume) {
+        if (volume instanceof DenseVolume) return (DenseVolume) volume;
+        DenseVolume dense = new DenseVolume(volume.getWidth(), volume.getHeight(), volume.getDepth());
+        dense.setSpacing(volume.getSpacing());
+        float[] row = new float[volume.getDepth()];
+        for (int y = 0; y < volume.getHeight(); y++) {
+            for (int x = 0; x < volume.getWidth(); x++) {
+                volume.getRow(x, y, row);
+                dense.setRow(x, y, row);
+            }
+        }
+        return dense;
+    }
+
+    // reorders mesh for the vertex cache, printing the average cache miss ratio before and after
+    private static MeshData optimise(MeshData mesh) {
+        long start = System.nanoTime();
+        MeshData optimised = MeshOptimizer.optimise(mesh);
+        long time = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "Vertex cache: ACMR %.3f -> %.3f (%d entries) in %.1f ms%n",
+                MeshOptimizer.acmr(mesh.getIndices(), MeshOptimizer.CACHE_SIZE),
+                MeshOptimizer.acmr(optimised.getIndices(), MeshOptimizer.CACHE_SIZE),
+                MeshOptimizer.CACHE_SIZE, time / 1e6);
+        return optimised;
+    }
+
+    // shows mesh in a window rendered on the CPU
+    private static void showSoftware(MeshData mesh, int[] size) {
+        SoftwareWindow window = new SoftwareWindow(windowWidth, windowHeight, windowFullscreen, windowTitle);
+        window.data(mesh.getVertices(), mesh.getIndices(), mesh.getNormals(), mesh.getColours());
+        window.setPos(size[0], size[1], size[2]);
         window.run();
     }
 
+    // size of the mesh for positioning the camera, scaled by the spacing it was extracted with
+    private static int[] getMeshSize(Volume volume, ExtractionParameters parameters) {
+        float[] spacing = parameters.getSpacing(volume);
+        return new int[]{
+                Math.round(volume.getWidth() * spacing[0]),
+                Math.round(volume.getHeight() * spacing[1]),
+                Math.round(volume.getDepth() * spacing[2])};
+    }
+
+    // storage of the volume selected by the command line options
+    private static DataLoader.Storage getStorage(List<String> options) {
+        if (options.contains("--compressed")) return DataLoader.Storage.COMPRESSED;
+        if (options.contains("--sparse")) return DataLoader.Storage.SPARSE;
+        if (options.contains("--morton")) return DataLoader.Storage.MORTON;
+        return DataLoader.Storage.DENSE;
+    }
+
     // gets inputs from user to set up application
     private static void userInput() {
         Scanner in = new Scanner(System.in);
@@ -81,6 +279,14 @@ public class Main {
         inFlt = in.nextFloat();
         if (inFlt > 0.0f) isoLevel = inFlt;
 
+        // seed voxel to extract a single connected surface from
+        System.out.print("Extract surface from seed voxel (y/n): ");
+        inStr = in.next();
+        if (Objects.equals(inStr, "y")) {
+            System.out.print("Enter seed voxel (x y z): ");
+            seed = new int[]{in.nextInt(), in.nextInt(), in.nextInt()};
+        }
+
         // enable fullscreen for the GLFW window
         System.out.print("Enable fullscreen (y/n): ");
         inStr = in.next();
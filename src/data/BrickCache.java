@@ -0,0 +1,58 @@
+package data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of decompressed bricks, evicting the least recently used brick when full.<br>
+ * Shared by every thread reading a volume. Bricks are decoded outside the lock, so two threads missing the same
+ * brick at once may both decode it, which is harmless as decoded bricks are never modified.
+ */
+class BrickCache {
+    private final LinkedHashMap<Integer, float[]> bricks;
+
+    /**
+     * Creates empty cache.
+     *
+     * @param capacity maximum number of bricks kept
+     */
+    BrickCache(int capacity) {
+        int limit = Math.max(1, capacity);
+        bricks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    /**
+     * Returns samples of a brick, marking it as most recently used.
+     *
+     * @param brick index of the brick
+     * @return samples of the brick, null if not cached
+     */
+    synchronized float[] get(int brick) {
+        return bricks.get(brick);
+    }
+
+    /**
+     * Returns whether a brick is cached, without marking it as used.
+     *
+     * @param brick index of the brick
+     * @return true if the brick is cached
+     */
+    synchronized boolean contains(int brick) {
+        return bricks.containsKey(brick);
+    }
+
+    /**
+     * Adds samples of a brick, evicting the least recently used brick if the cache is full.
+     *
+     * @param brick   index of the brick
+     * @param samples decoded samples of the brick
+     */
+    synchronized void put(int brick, float[] samples) {
+        bricks.put(brick, samples);
+    }
+}
@@ -0,0 +1,196 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Sparse volume stored as cubic bricks of {@link #BRICK_SIZE} samples along each axis.<br>
+ * A brick whose samples all have the same value, such as the air around a scan, is stored as that single value.
+ * Only bricks with differing samples keep an array of their samples. Bricks at the far edges of the volume are
+ * padded with their last sample, so they can still be uniform.<br>
+ * Bricks are filled a layer at a time along the y-axis with {@link #setLayer}, so the whole volume never needs to
+ * be held densely.
+ */
+public class BrickVolume implements Volume {
+    /**
+     * Number of samples along each axis of a brick.
+     */
+    public static final int BRICK_SIZE = 16;
+    static final int BRICK_BITS = 4;
+    static final int BRICK_MASK = BRICK_SIZE - 1;
+    static final int BRICK_SAMPLES = BRICK_SIZE * BRICK_SIZE * BRICK_SIZE;
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final float[] spacing = {1, 1, 1};
+    private final int bricksX, bricksY, bricksZ;
+    // samples of each brick indexed by ((x * BRICK_SIZE) + y) * BRICK_SIZE + z, null for uniform bricks
+    private final float[][] bricks;
+    // value of every sample of each uniform brick
+    private final float[] uniformValues;
+
+    /**
+     * Creates volume with every sample 0.
+     *
+     * @param width  number of samples along the x-axis
+     * @param height number of samples along the y-axis
+     * @param depth  number of samples along the z-axis
+     */
+    public BrickVolume(int width, int height, int depth) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        bricksX = (width + BRICK_MASK) >> BRICK_BITS;
+        bricksY = (height + BRICK_MASK) >> BRICK_BITS;
+        bricksZ = (depth + BRICK_MASK) >> BRICK_BITS;
+        bricks = new float[bricksX * bricksY * bricksZ][];
+        uniformValues = new float[bricks.length];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    /**
+     * Sets distance between samples along each axis.
+     *
+     * @param spacing array of spacing along the x, y and z axes
+     */
+    public void setSpacing(float[] spacing) {
+        System.arraycopy(spacing, 0, this.spacing, 0, 3);
+    }
+
+    @Override
+    public float getValue(int x, int y, int z) {
+        int brick = brickIndex(x >> BRICK_BITS, y >> BRICK_BITS, z >> BRICK_BITS);
+        float[] samples = bricks[brick];
+        if (samples == null) return uniformValues[brick];
+        return samples[sampleIndex(x & BRICK_MASK, y & BRICK_MASK, z & BRICK_MASK)];
+    }
+
+    @Override
+    public void getRow(int x, int y, float[] row) {
+        int bx = x >> BRICK_BITS, by = y >> BRICK_BITS;
+        int offset = sampleIndex(x & BRICK_MASK, y & BRICK_MASK, 0);
+        for (int bz = 0; bz < bricksZ; bz++) {
+            int brick = brickIndex(bx, by, bz);
+            int z = bz << BRICK_BITS;
+            int length = Math.min(BRICK_SIZE, depth - z);
+            float[] samples = bricks[brick];
+            if (samples == null) Arrays.fill(row, z, z + length, uniformValues[brick]);
+            else System.arraycopy(samples, offset, row, z, length);
+        }
+    }
+
+    /**
+     * Stores a layer of bricks from a dense slab of slices.<br>
+     * Replaces bricks of the layer, so each layer should be set once.
+     *
+     * @param by   index of the brick layer along the y-axis
+     * @param slab dense volume of the same width and depth holding slices
+     *             <code>by * BRICK_SIZE</code> onwards, from slab y coordinate 0
+     */
+    public void setLayer(int by, DenseVolume slab) {
+        int y0 = by << BRICK_BITS;
+        int slabHeight = Math.min(BRICK_SIZE, Math.min(height - y0, slab.getHeight()));
+        float[] samples = new float[BRICK_SAMPLES];
+
+        for (int bx = 0; bx < bricksX; bx++) {
+            for (int bz = 0; bz < bricksZ; bz++) {
+                int brick = brickIndex(bx, by, bz);
+                boolean uniform = readBrick(slab, bx << BRICK_BITS, slabHeight, bz << BRICK_BITS, samples);
+                uniformValues[brick] = samples[0];
+                bricks[brick] = uniform ? null : samples.clone();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a brick is stored as a single value.
+     *
+     * @param bx brick index along the x-axis
+     * @param by brick index along the y-axis
+     * @param bz brick index along the z-axis
+     * @return true if every sample of the brick has the same value
+     */
+    public boolean isUniform(int bx, int by, int bz) {
+        return bricks[brickIndex(bx, by, bz)] == null;
+    }
+
+    /**
+     * Returns number of bricks along each axis.
+     *
+     * @return array of brick counts along the x, y and z axes
+     */
+    public int[] getBrickCounts() {
+        return new int[]{bricksX, bricksY, bricksZ};
+    }
+
+    /**
+     * Returns number of bricks storing every sample.
+     *
+     * @return count of non-uniform bricks
+     */
+    public int getStoredBrickCount() {
+        int count = 0;
+        for (float[] brick : bricks) {
+            if (brick != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns approximate memory used by samples, including the brick tables.
+     *
+     * @return size in bytes
+     */
+    public long getStoredBytes() {
+        return (long) getStoredBrickCount() * BRICK_SAMPLES * Float.BYTES + (long) bricks.length * (Float.BYTES + 8);
+    }
+
+    // index of brick in the brick tables
+    private int brickIndex(int bx, int by, int bz) {
+        return (bx * bricksY + by) * bricksZ + bz;
+    }
+
+    // copies brick with given origin from a slab, padding past the edges of the volume with the last sample
+    // returns whether every sample of the brick has the same value
+    static boolean readBrick(DenseVolume slab, int x0, int slabHeight, int z0, float[] samples) {
+        int width = slab.getWidth(), depth = slab.getDepth();
+        boolean uniform = true;
+        float first = slab.getValue(x0, 0, z0);
+        for (int lx = 0; lx < BRICK_SIZE; lx++) {
+            int x = Math.min(x0 + lx, width - 1);
+            for (int ly = 0; ly < BRICK_SIZE; ly++) {
+                int y = Math.min(ly, slabHeight - 1);
+                for (int lz = 0; lz < BRICK_SIZE; lz++) {
+                    float value = slab.getValue(x, y, Math.min(z0 + lz, depth - 1));
+                    samples[sampleIndex(lx, ly, lz)] = value;
+                    uniform &= value == first;
+                }
+            }
+        }
+        return uniform;
+    }
+
+    // index of sample within its brick
+    static int sampleIndex(int lx, int ly, int lz) {
+        return (((lx << BRICK_BITS) + ly) << BRICK_BITS) + lz;
+    }
+}
@@ -0,0 +1,52 @@
+package data;
+
+/**
+ * Classifies a row of cells along the z-axis, computing the Marching Cubes case index of every cell at once.<br>
+ * Samples of each row are first compared against the ISO level with {@link #classifySamples}, then the flags of
+ * the four rows around a row of cells are combined into case indices with {@link #classifyCells}. Corners are
+ * numbered as in {@link TriangulationTable#getCornerOffsets()}.<br>
+ * {@link #create()} returns an implementation using the Java Vector API if the <code>jdk.incubator.vector</code>
+ * module is available, otherwise a scalar one.
+ */
+interface CellClassifier {
+    /**
+     * Flags samples of a row that are below the ISO level.
+     *
+     * @param row      sample values
+     * @param length   number of samples in the row
+     * @param isoLevel ISO level
+     * @param below    array receiving true for each sample below the ISO level
+     */
+    void classifySamples(float[] row, int length, float isoLevel, boolean[] below);
+
+    /**
+     * Combines sample flags of four rows into the case index of each cell between them.<br>
+     * Rows are named by their offset in x and y from the cells.
+     *
+     * @param below00 flags of the row at (x, y)
+     * @param below10 flags of the row at (x + 1, y)
+     * @param below01 flags of the row at (x, y + 1)
+     * @param below11 flags of the row at (x + 1, y + 1)
+     * @param cells   number of cells, one less than the number of samples in each row
+     * @param cases   array receiving the case index of each cell
+     */
+    void classifyCells(boolean[] below00, boolean[] below10, boolean[] below01, boolean[] below11, int cells, byte[] cases);
+
+    /**
+     * Creates classifier, using the Vector API if available unless the system property
+     * <code>extract.vector</code> is set to false.
+     *
+     * @return cell classifier
+     */
+    static CellClassifier create() {
+        if (Boolean.parseBoolean(System.getProperty("extract.vector", "true"))) {
+            try {
+                // loaded by name so this class doesn't depend on the incubator module
+                return (CellClassifier) Class.forName("data.VectorCellClassifier").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // module not added with --add-modules jdk.incubator.vector
+            }
+        }
+        return new ScalarCellClassifier();
+    }
+}
@@ -0,0 +1,187 @@
+package data;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Mesh of a volume extracted with Marching Cubes as a grid of chunks, so edits to the volume only re-extract the
+ * chunks they touch.<br>
+ * Edits the volume reports to its {@link Volume.EditListener}s mark the chunks they affect as dirty, other changes
+ * can be marked with {@link #markDirty}. Call {@link #update} to re-extract the dirty chunks, several at once. A
+ * changed sample alters the cells around it, and the normals of vertices those cells share with the cells next to
+ * them, so chunks within one cell of the changed cells are updated too. Each chunk is extracted with
+ * {@link MarchingCubes#generate(Volume, ExtractionParameters, int[], int[])}, so its vertices on the faces it shares
+ * with other chunks have the same normals as in a mesh of the whole volume, and is then reordered for the vertex
+ * cache with {@link MeshOptimizer}.<br>
+ * Chunks can be swapped in the renderer one at a time, see {@link renderEngine.WindowView#swapChunk}.
+ */
+public class ChunkedExtraction {
+    private static final Counter chunksExtracted = Metrics.counter("extract.chunksExtracted");
+    private static final Histogram updateTime = Metrics.histogram("extract.chunkUpdateTime");
+
+    private final MarchingCubes marchingCubes;
+    private final Volume volume;
+    private final ExtractionParameters parameters;
+    private final int chunkSize;
+    private final int chunksX, chunksY, chunksZ;
+    private final MeshData[] chunks;
+    // chunks affected by edits since the last update
+    private final BitSet dirty = new BitSet();
+
+    /**
+     * Creates chunked extraction of given volume, listening for edits to it. No chunk is extracted until
+     * {@link #update} is called.
+     *
+     * @param marchingCubes engine used to polygonise each chunk
+     * @param volume        volume to extract, samples may be changed between updates
+     * @param parameters    parameters of the extraction, the seed and two pass mode are ignored
+     * @param chunkSize     number of cells along each axis of a chunk
+     */
+    public ChunkedExtraction(MarchingCubes marchingCubes, Volume volume, ExtractionParameters parameters, int chunkSize) {
+        this.marchingCubes = marchingCubes;
+        this.volume = volume;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parameters = new ExtractionParameters();
+        this.parameters.isoLevel = parameters.isoLevel;
+        this.parameters.enableColours = parameters.enableColours;
+        this.parameters.spacing = parameters.getSpacing(volume);
+
+        chunksX = chunkCount(volume.getWidth());
+        chunksY = chunkCount(volume.getHeight());
+        chunksZ = chunkCount(volume.getDepth());
+        chunks = new MeshData[chunksX * chunksY * chunksZ];
+        dirty.set(0, chunks.length);
+        volume.addEditListener(this::markDirty);
+    }
+
+    /**
+     * Marks a box of samples as changed, so the chunks it affects are extracted by the next update.<br>
+     * May be called from any thread.
+     *
+     * @param minX x coordinate of the first changed sample
+     * @param minY y coordinate of the first changed sample
+     * @param minZ z coordinate of the first changed sample
+     * @param maxX x coordinate of the last changed sample
+     * @param maxY y coordinate of the last changed sample
+     * @param maxZ z coordinate of the last changed sample
+     */
+    public void markDirty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        // cells with a changed corner run from one before the first changed sample to the last changed sample
+        // cells one further share vertices with them, so their normals change too
+        int[] first = {chunk(minX - 2, chunksX), chunk(minY - 2, chunksY), chunk(minZ - 2, chunksZ)};
+        int[] last = {chunk(maxX + 1, chunksX), chunk(maxY + 1, chunksY), chunk(maxZ + 1, chunksZ)};
+        synchronized (dirty) {
+            for (int cx = first[0]; cx <= last[0]; cx++) {
+                for (int cy = first[1]; cy <= last[1]; cy++) {
+                    for (int cz = first[2]; cz <= last[2]; cz++) {
+                        dirty.set(chunkIndex(cx, cy, cz));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Extracts every chunk marked as dirty, several at once.<br>
+     * Samples of the affected chunks must not change while updating.
+     *
+     * @return indices of the chunks extracted, in ascending order
+     */
+    public synchronized int[] update() {
+        int[] updated;
+        synchronized (dirty) {
+            updated = dirty.stream().toArray();
+            dirty.clear();
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+
+        IntStream.of(updated).parallel().forEach(chunk -> chunks[chunk] = extract(chunk));
+
+        if (Metrics.ENABLED) {
+            updateTime.record(System.nanoTime() - start);
+            chunksExtracted.add(updated.length);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns mesh of a chunk from the last update that extracted it.
+     *
+     * @param index index of the chunk
+     * @return mesh of the chunk, null if it hasn't been extracted
+     */
+    public MeshData getChunk(int index) {
+        return chunks[index];
+    }
+
+    /**
+     * Returns number of chunks in the grid.
+     *
+     * @return chunk count
+     */
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * Returns meshes of every chunk joined into a single mesh, for writing out.<br>
+     * Vertices on the faces between chunks are kept once for each chunk.
+     *
+     * @return joined mesh
+     */
+    public MeshData toMeshData() {
+        int vertexCount = 0, indexCount = 0;
+        for (MeshData chunk : chunks) {
+            if (chunk == null) continue;
+            vertexCount += chunk.getVertexCount();
+            indexCount += chunk.getIndices().length;
+        }
+
+        float[] vertices = new float[vertexCount * 3];
+        float[] normals = new float[vertexCount * 3];
+        float[] colours = new float[vertexCount * 3];
+        int[] indices = new int[indexCount];
+        int vertexOffset = 0, indexOffset = 0;
+        for (MeshData chunk : chunks) {
+            if (chunk == null) continue;
+            System.arraycopy(chunk.getVertices(), 0, vertices, vertexOffset * 3, chunk.getVertices().length);
+            System.arraycopy(chunk.getNormals(), 0, normals, vertexOffset * 3, chunk.getNormals().length);
+            System.arraycopy(chunk.getColours(), 0, colours, vertexOffset * 3, chunk.getColours().length);
+            for (int index : chunk.getIndices()) indices[indexOffset++] = index + vertexOffset;
+            vertexOffset += chunk.getVertexCount();
+        }
+        return new MeshData(vertices, indices, normals, colours);
+    }
+
+    // extracts the cells of a chunk, with its buffers reordered for the vertex cache
+    private MeshData extract(int chunk) {
+        int cz = chunk % chunksZ;
+        int cy = (chunk / chunksZ) % chunksY;
+        int cx = chunk / (chunksZ * chunksY);
+        int[] cellMin = {cx * chunkSize, cy * chunkSize, cz * chunkSize};
+        int[] cellMax = {
+                Math.min(cellMin[0] + chunkSize, volume.getWidth() - 1),
+                Math.min(cellMin[1] + chunkSize, volume.getHeight() - 1),
+                Math.min(cellMin[2] + chunkSize, volume.getDepth() - 1)};
+        return MeshOptimizer.optimise(marchingCubes.generate(volume, parameters, cellMin, cellMax));
+    }
+
+    // number of chunks along an axis with given number of samples
+    private int chunkCount(int samples) {
+        return Math.max(1, (samples - 1 + chunkSize - 1) / chunkSize);
+    }
+
+    // chunk along an axis holding given cell, clamped to the grid
+    private int chunk(int cell, int count) {
+        return Math.max(0, Math.min(cell / chunkSize, count - 1));
+    }
+
+    // index of chunk in the chunk array
+    private int chunkIndex(int cx, int cy, int cz) {
+        return (cx * chunksY + cy) * chunksZ + cz;
+    }
+}
@@ -0,0 +1,292 @@
+package data;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static data.BrickVolume.BRICK_BITS;
+import static data.BrickVolume.BRICK_MASK;
+import static data.BrickVolume.BRICK_SAMPLES;
+import static data.BrickVolume.BRICK_SIZE;
+
+/**
+ * Volume stored as compressed cubic bricks of {@link BrickVolume#BRICK_SIZE} samples along each axis, for volumes
+ * too large to hold uncompressed.<br>
+ * Uniform bricks are stored as their value, as in {@link BrickVolume}. Other bricks are stored losslessly: each
+ * sample's bits are XORed with the previous sample along the z-axis, the bytes of the deltas are grouped by
+ * significance, and the result is compressed with LZ4. Neighbouring samples of a scan are close, so the high
+ * bytes of the deltas are mostly zero and compress well.<br>
+ * Bricks are decompressed on demand into a bounded LRU cache shared by every thread reading the volume. Reading
+ * the first row of a layer of bricks queues the bricks of the next layer along the y-axis for decoding on a
+ * background thread, as extraction walks rows along the y-axis. Prefetching is disabled with
+ * <code>-Dvolume.prefetch=false</code>.<br>
+ * Cache hits and misses, prefetched bricks, decoded bytes and decode time are recorded as metrics.
+ */
+public class CompressedVolume implements Volume {
+    private static final Counter cacheHits = Metrics.counter("volume.brickCacheHits");
+    private static final Counter cacheMisses = Metrics.counter("volume.brickCacheMisses");
+    private static final Counter bricksPrefetched = Metrics.counter("volume.bricksPrefetched");
+    private static final Counter decodedBytes = Metrics.counter("volume.brickDecodedBytes");
+    private static final Histogram decodeTime = Metrics.histogram("volume.brickDecodeTime");
+    private static final boolean PREFETCH = !"false".equals(System.getProperty("volume.prefetch"));
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "brick-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final float[] spacing = {1, 1, 1};
+    private final int bricksX, bricksY, bricksZ;
+    // compressed samples of each brick, null for uniform bricks
+    private final byte[][] bricks;
+    // value of every sample of each uniform brick
+    private final float[] uniformValues;
+    private final BrickCache cache;
+    // bricks queued for prefetching, so each is only queued once
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Reader> readers = ThreadLocal.withInitial(Reader::new);
+
+    /**
+     * Creates volume with every sample 0.
+     *
+     * @param width       number of samples along the x-axis
+     * @param height      number of samples along the y-axis
+     * @param depth       number of samples along the z-axis
+     * @param cacheBricks maximum number of decompressed bricks kept in the cache
+     */
+    public CompressedVolume(int width, int height, int depth, int cacheBricks) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        bricksX = (width + BRICK_MASK) >> BRICK_BITS;
+        bricksY = (height + BRICK_MASK) >> BRICK_BITS;
+        bricksZ = (depth + BRICK_MASK) >> BRICK_BITS;
+        bricks = new byte[bricksX * bricksY * bricksZ][];
+        uniformValues = new float[bricks.length];
+        cache = new BrickCache(cacheBricks);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    /**
+     * Sets distance between samples along each axis.
+     *
+     * @param spacing array of spacing along the x, y and z axes
+     */
+    public void setSpacing(float[] spacing) {
+        System.arraycopy(spacing, 0, this.spacing, 0, 3);
+    }
+
+    @Override
+    public float getValue(int x, int y, int z) {
+        int brick = brickIndex(x >> BRICK_BITS, y >> BRICK_BITS, z >> BRICK_BITS);
+        if (bricks[brick] == null) return uniformValues[brick];
+
+        // neighbouring samples are usually in the same brick, so the last brick read by the thread is kept
+        Reader reader = readers.get();
+        if (reader.brick != brick) {
+            reader.samples = load(brick, reader);
+            reader.brick = brick;
+        }
+        return reader.samples[BrickVolume.sampleIndex(x & BRICK_MASK, y & BRICK_MASK, z & BRICK_MASK)];
+    }
+
+    @Override
+    public void getRow(int x, int y, float[] row) {
+        int bx = x >> BRICK_BITS, by = y >> BRICK_BITS;
+        if (PREFETCH && (y & BRICK_MASK) == 0 && by + 1 < bricksY) prefetchRow(bx, by + 1);
+
+        Reader reader = readers.get();
+        int offset = BrickVolume.sampleIndex(x & BRICK_MASK, y & BRICK_MASK, 0);
+        for (int bz = 0; bz < bricksZ; bz++) {
+            int brick = brickIndex(bx, by, bz);
+            int z = bz << BRICK_BITS;
+            int length = Math.min(BRICK_SIZE, depth - z);
+            if (bricks[brick] == null) Arrays.fill(row, z, z + length, uniformValues[brick]);
+            else System.arraycopy(load(brick, reader), offset, row, z, length);
+        }
+    }
+
+    /**
+     * Compresses and stores a layer of bricks from a dense slab of slices.<br>
+     * Replaces bricks of the layer, so each layer should be set once.
+     *
+     * @param by   index of the brick layer along the y-axis
+     * @param slab dense volume of the same width and depth holding slices
+     *             <code>by * BRICK_SIZE</code> onwards, from slab y coordinate 0
+     */
+    public void setLayer(int by, DenseVolume slab) {
+        int slabHeight = Math.min(BRICK_SIZE, Math.min(height - (by << BRICK_BITS), slab.getHeight()));
+        float[] samples = new float[BRICK_SAMPLES];
+        byte[] deltas = new byte[BRICK_SAMPLES * Float.BYTES];
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(deltas.length)];
+        int[] table = Lz4Codec.createTable();
+
+        for (int bx = 0; bx < bricksX; bx++) {
+            for (int bz = 0; bz < bricksZ; bz++) {
+                int brick = brickIndex(bx, by, bz);
+                boolean uniform = BrickVolume.readBrick(slab, bx << BRICK_BITS, slabHeight, bz << BRICK_BITS, samples);
+                uniformValues[brick] = samples[0];
+                if (uniform) {
+                    bricks[brick] = null;
+                } else {
+                    encodeDeltas(samples, deltas);
+                    bricks[brick] = Arrays.copyOf(compressed, Lz4Codec.compress(deltas, deltas.length, compressed, table));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a brick is stored as a single value.
+     *
+     * @param bx brick index along the x-axis
+     * @param by brick index along the y-axis
+     * @param bz brick index along the z-axis
+     * @return true if every sample of the brick has the same value
+     */
+    public boolean isUniform(int bx, int by, int bz) {
+        return bricks[brickIndex(bx, by, bz)] == null;
+    }
+
+    /**
+     * Returns number of bricks along each axis.
+     *
+     * @return array of brick counts along the x, y and z axes
+     */
+    public int[] getBrickCounts() {
+        return new int[]{bricksX, bricksY, bricksZ};
+    }
+
+    /**
+     * Returns number of bricks storing compressed samples.
+     *
+     * @return count of non-uniform bricks
+     */
+    public int getStoredBrickCount() {
+        int count = 0;
+        for (byte[] brick : bricks) {
+            if (brick != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns approximate memory used by compressed samples, including the brick tables but not the cache.
+     *
+     * @return size in bytes
+     */
+    public long getStoredBytes() {
+        long bytes = (long) bricks.length * (Float.BYTES + 8);
+        for (byte[] brick : bricks) {
+            if (brick != null) bytes += brick.length;
+        }
+        return bytes;
+    }
+
+    // returns samples of a brick from the cache, decoding the brick on a miss
+    private float[] load(int brick, Reader reader) {
+        float[] samples = cache.get(brick);
+        if (samples != null) {
+            if (Metrics.ENABLED) cacheHits.increment();
+            return samples;
+        }
+        if (Metrics.ENABLED) cacheMisses.increment();
+        samples = decode(brick, reader.deltas);
+        cache.put(brick, samples);
+        return samples;
+    }
+
+    // queues bricks of a row along the z-axis for decoding on the prefetch thread
+    private void prefetchRow(int bx, int by) {
+        for (int bz = 0; bz < bricksZ; bz++) {
+            int brick = brickIndex(bx, by, bz);
+            if (bricks[brick] == null || cache.contains(brick) || !queued.add(brick)) continue;
+            prefetcher.execute(() -> {
+                try {
+                    if (!cache.contains(brick)) {
+                        cache.put(brick, decode(brick, readers.get().deltas));
+                        if (Metrics.ENABLED) bricksPrefetched.increment();
+                    }
+                } finally {
+                    queued.remove(brick);
+                }
+            });
+        }
+    }
+
+    // decompresses a brick into a new array of samples
+    private float[] decode(int brick, byte[] deltas) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        byte[] compressed = bricks[brick];
+        Lz4Codec.decompress(compressed, compressed.length, deltas);
+
+        float[] samples = new float[BRICK_SAMPLES];
+        int previous = 0;
+        for (int i = 0; i < BRICK_SAMPLES; i++) {
+            int delta = (deltas[i] & 0xFF) << 24 | (deltas[i + BRICK_SAMPLES] & 0xFF) << 16
+                    | (deltas[i + 2 * BRICK_SAMPLES] & 0xFF) << 8 | (deltas[i + 3 * BRICK_SAMPLES] & 0xFF);
+            previous ^= delta;
+            samples[i] = Float.intBitsToFloat(previous);
+        }
+
+        if (Metrics.ENABLED) {
+            decodeTime.record(System.nanoTime() - start);
+            decodedBytes.add((long) BRICK_SAMPLES * Float.BYTES);
+        }
+        return samples;
+    }
+
+    // XORs bits of each sample with the previous sample, storing the bytes of every delta grouped by significance
+    private static void encodeDeltas(float[] samples, byte[] deltas) {
+        int previous = 0;
+        for (int i = 0; i < BRICK_SAMPLES; i++) {
+            int bits = Float.floatToRawIntBits(samples[i]);
+            int delta = bits ^ previous;
+            previous = bits;
+            deltas[i] = (byte) (delta >>> 24);
+            deltas[i + BRICK_SAMPLES] = (byte) (delta >>> 16);
+            deltas[i + 2 * BRICK_SAMPLES] = (byte) (delta >>> 8);
+            deltas[i + 3 * BRICK_SAMPLES] = (byte) delta;
+        }
+    }
+
+    // index of brick in the brick tables
+    private int brickIndex(int bx, int by, int bz) {
+        return (bx * bricksY + by) * bricksZ + bz;
+    }
+
+    // per thread buffer for decoding and the last brick read by getValue
+    private static class Reader {
+        private final byte[] deltas = new byte[BRICK_SAMPLES * Float.BYTES];
+        private int brick = -1;
+        private float[] samples;
+    }
+}
@@ -1,145 +1,349 @@
 package data;
 
-import org.joml.Vector3f;
+import metrics.Histogram;
+import metrics.Metrics;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.BiConsumer;
 
 /**
- * Creates 3-dimensional data array from images in given directory.
+ * Creates volumes from images in given directory, raw volume files or DICOM series.
  */
 public class DataLoader {
+    private static final Histogram sliceDecodeTime = Metrics.histogram("load.sliceDecodeTime");
 
-    private static Data[][][] data;
-    private static File directory;
-    private static File[] slices;
+    /**
+     * Storage of loaded volumes.
+     */
+    public enum Storage {
+        /**
+         * Every sample in a single array, see {@link DenseVolume}.
+         */
+        DENSE,
+        /**
+         * Bricks of samples, with bricks of a single value stored as that value, see {@link BrickVolume}.
+         */
+        SPARSE,
+        /**
+         * Compressed bricks of samples, decompressed on demand into a cache, see {@link CompressedVolume}.
+         */
+        COMPRESSED,
+        /**
+         * Every sample in a single array, in bricks with samples in Morton order, see {@link MortonVolume}.
+         */
+        MORTON
+    }
+
+    /**
+     * Source of the slices of a volume.
+     */
+    public interface SliceSource {
+        /**
+         * Reads a slice of the volume into a slab.
+         *
+         * @param y     y coordinate of the slice in the volume
+         * @param slab  dense volume of the same width and depth to read the slice into
+         * @param slabY y coordinate of the slice in the slab
+         * @throws IOException if the slice can't be read
+         */
+        void readSlice(int y, DenseVolume slab, int slabY) throws IOException;
+    }
 
     /**
-     * Generates and returns 3D array of Data objects.
+     * Generates and returns volume from images in given directory.<br>
+     * Holds no shared state, so volumes can be loaded from several threads at once.
      *
      * @param dir source directory of images
-     * @return generated Data array
-     * @throws Exception ImageIO.read() exception
+     * @return generated volume
+     * @throws IOException if no images are found or an image can't be read
      */
-    public static Data[][][] getData(String dir) throws Exception {
-        directory = new File(dir);
-        slices = getSlices();
-        if (slices.length > 0) {
-            generateData();
-        } else {
-            System.err.printf("No files found in %s%n", directory.getPath());
+    public static DenseVolume getVolume(String dir) throws IOException {
+        File[] slices = listSlices(dir);
+        DenseVolume volume = createVolume(slices);
+        for (int y = 0; y < slices.length; y++) {
+            loadSlice(slices[y], volume, y);
         }
-
-        return data;
+        return volume;
     }
 
-    // returns list of files located in source directory with ".png" file extension
-    private static File[] getSlices() {
-        FilenameFilter filter = (dir, name) -> name.toLowerCase().endsWith(".png");
+    /**
+     * Generates and returns volume from images in given directory with given storage.<br>
+     * If the path is a raw volume file instead, see {@link #getRawVolume}, or a directory of DICOM files, see
+     * {@link #getDicomVolume}.
+     *
+     * @param dir     source directory of images
+     * @param storage storage of the volume
+     * @return generated volume
+     * @throws IOException if no images are found or an image can't be read
+     */
+    public static Volume getVolume(String dir, Storage storage) throws IOException {
+        if (isRawVolume(dir)) return getRawVolume(dir, storage);
+        if (isDicomSeries(dir)) return getDicomVolume(dir, storage);
+        if (storage == Storage.DENSE) return getVolume(dir);
+        File[] slices = listSlices(dir);
+        int[] dimensions = readDimensions(slices);
+        return createVolume(dimensions[0], dimensions[1], dimensions[2], readSpacing(slices), storage,
+                (y, slab, slabY) -> loadSlice(slices[y], slab, slabY));
+    }
 
-        return directory.listFiles(filter);
+    /**
+     * Returns whether given path is a raw volume file rather than a directory of image slices.
+     *
+     * @param path source path
+     * @return true if the path is a file with the extension <code>.raw</code>
+     */
+    public static boolean isRawVolume(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".raw") && new File(path).isFile();
     }
 
-    // read through each image slice
-    private static void generateData() throws IOException {
-        int height = slices.length;
-        BufferedImage tempImage = ImageIO.read(slices[0]);
-        int width = tempImage.getWidth();
-        int depth = tempImage.getHeight();
-        System.out.printf("Width: %d | Height: %d | Depth: %d%n", width, height, depth);
+    /**
+     * Opens raw volume file described by the properties file next to it, see {@link MappedVolume}.<br>
+     * Dense storage reads samples straight from the memory mapped file, without loading it. Other storage is
+     * filled from the mapped file a slice at a time.
+     *
+     * @param path    raw volume file
+     * @param storage storage of the volume
+     * @return opened volume
+     * @throws IOException if the file or its header can't be read
+     */
+    public static Volume getRawVolume(String path, Storage storage) throws IOException {
+        MappedVolume mapped = new MappedVolume(new File(path));
+        if (storage == Storage.DENSE) return mapped;
 
-        data = new Data[width][height][depth];
+        float[] row = new float[mapped.getDepth()];
+        return createVolume(mapped.getWidth(), mapped.getHeight(), mapped.getDepth(), mapped.getSpacing(), storage, (y, slab, slabY) -> {
+            for (int x = 0; x < mapped.getWidth(); x++) {
+                mapped.getRow(x, y, row);
+                for (int z = 0; z < row.length; z++) slab.setValue(x, slabY, z, row[z]);
+            }
+        });
+    }
 
-        for (int y = 0; y < height; y++) {
-            BufferedImage image = ImageIO.read(slices[y]);
+    /**
+     * Returns whether given path is a directory of DICOM files rather than image slices.
+     *
+     * @param path source path
+     * @return true if the path is a directory holding a DICOM series, see {@link DicomSeries#isSeries}
+     */
+    public static boolean isDicomSeries(String path) {
+        return DicomSeries.isSeries(new File(path));
+    }
 
-            for (int x = 0; x < width; x++) {
-                for (int z = 0; z < depth; z++) {
-                    // get colour as RGB integer value
-                    // bitwise AND comparison to extract red, green, blue values
-                    int clr = image.getRGB(x, z);
-                    int r = (clr & 0x00ff0000) >> 16;
-                    int g = (clr & 0x0000ff00) >> 8;
-                    int b = clr & 0x000000ff;
+    /**
+     * Reads DICOM series in given directory, see {@link DicomSeries}.<br>
+     * Dense storage decodes every frame in parallel straight into the volume. Other storage is filled a layer of
+     * bricks at a time.
+     *
+     * @param dir     source directory of DICOM files
+     * @param storage storage of the volume
+     * @return generated volume
+     * @throws IOException if no DICOM files are found, or a file can't be read or isn't supported
+     */
+    public static Volume getDicomVolume(String dir, Storage storage) throws IOException {
+        DicomSeries series = new DicomSeries(new File(dir));
+        if (storage == Storage.DENSE) return series.readVolume();
+        return createVolume(series.getWidth(), series.getHeight(), series.getDepth(), series.getSpacing(), storage, series);
+    }
 
-                    data[x][y][z] = new Data(
-                            new Vector3f(x, y, z),
-                            (float) (r * 0.2126 + g * 0.7152 + b * 0.0722) / 255 // brightness value of pixel
-                    );
+    /**
+     * Creates volume with given storage from slices read in order.<br>
+     * Sparse and compressed volumes read a layer of bricks at a time, so the volume is never held densely. Their
+     * cache holds up to <code>-Dvolume.cacheMB</code> of decompressed bricks (default 64).
+     *
+     * @param width   number of samples along the x-axis
+     * @param height  number of samples along the y-axis (number of slices)
+     * @param depth   number of samples along the z-axis
+     * @param spacing distance between samples along the x, y and z axes
+     * @param storage storage of the volume
+     * @param source  source of the slices
+     * @return generated volume
+     * @throws IOException if a slice can't be read
+     */
+    public static Volume createVolume(int width, int height, int depth, float[] spacing, Storage storage,
+                                      SliceSource source) throws IOException {
+        return switch (storage) {
+            case DENSE -> {
+                DenseVolume volume = new DenseVolume(width, height, depth);
+                volume.setSpacing(spacing);
+                for (int y = 0; y < height; y++) source.readSlice(y, volume, y);
+                yield volume;
+            }
+            case MORTON -> {
+                MortonVolume volume = new MortonVolume(width, height, depth);
+                volume.setSpacing(spacing);
+                DenseVolume slice = new DenseVolume(width, 1, depth);
+                for (int y = 0; y < height; y++) {
+                    source.readSlice(y, slice, 0);
+                    for (int x = 0; x < width; x++) {
+                        for (int z = 0; z < depth; z++) volume.setValue(x, y, z, slice.getValue(x, 0, z));
+                    }
                 }
+                yield volume;
+            }
+            case SPARSE -> {
+                BrickVolume volume = new BrickVolume(width, height, depth);
+                volume.setSpacing(spacing);
+                readLayers(width, height, depth, source, volume::setLayer);
+                int[] bricks = volume.getBrickCounts();
+                System.out.printf("Bricks stored: %d of %d | %.1f MB (dense %.1f MB)%n", volume.getStoredBrickCount(),
+                        bricks[0] * bricks[1] * bricks[2], volume.getStoredBytes() / 1e6, denseBytes(volume) / 1e6);
+                yield volume;
+            }
+            case COMPRESSED -> {
+                long cacheBytes = Long.getLong("volume.cacheMB", 64) << 20;
+                CompressedVolume volume = new CompressedVolume(width, height, depth,
+                        (int) (cacheBytes / ((long) BrickVolume.BRICK_SAMPLES * Float.BYTES)));
+                volume.setSpacing(spacing);
+                readLayers(width, height, depth, source, volume::setLayer);
+                int[] bricks = volume.getBrickCounts();
+                System.out.printf("Bricks compressed: %d of %d | %.1f MB (dense %.1f MB)%n", volume.getStoredBrickCount(),
+                        bricks[0] * bricks[1] * bricks[2], volume.getStoredBytes() / 1e6, denseBytes(volume) / 1e6);
+                yield volume;
+            }
+        };
+    }
+
+    // reads slices into a dense slab one layer of bricks at a time, passing each layer to the volume
+    private static void readLayers(int width, int height, int depth, SliceSource source,
+                                   BiConsumer<Integer, DenseVolume> setLayer) throws IOException {
+        DenseVolume slab = new DenseVolume(width, BrickVolume.BRICK_SIZE, depth);
+        for (int y0 = 0; y0 < height; y0 += BrickVolume.BRICK_SIZE) {
+            for (int y = y0; y < Math.min(y0 + BrickVolume.BRICK_SIZE, height); y++) {
+                source.readSlice(y, slab, y - y0);
             }
+            setLayer.accept(y0 / BrickVolume.BRICK_SIZE, slab);
         }
     }
 
+    // size of the volume if every sample was stored
+    private static long denseBytes(Volume volume) {
+        return (long) volume.getWidth() * volume.getHeight() * volume.getDepth() * Float.BYTES;
+    }
+
     /**
-     * Vertex class as a 3D vector.
+     * Returns image slices in given directory, in order of the volume's y-axis.
+     *
+     * @param dir source directory of images
+     * @return sorted array of image files
+     * @throws FileNotFoundException if no images are found
      */
-    public static class Vertex {
-        public Vector3f pos;
-
-        public Vector3f colour;
-
-        /**
-         * Instantiates a new Vertex.
-         *
-
-         */
-        public Vertex(Vector3f pos) {
-            this.pos = pos;
+    public static File[] listSlices(String dir) throws FileNotFoundException {
+        File directory = new File(dir);
+        File[] slices = getSlices(directory);
+        if (slices == null || slices.length == 0) {
+            throw new FileNotFoundException(String.format("No files found in %s", directory.getPath()));
         }
+        return slices;
     }
 
-    public static class Triangle {
-        int v1;
-        int v2;
-        int v3;
+    /**
+     * Creates empty volume sized to hold given image slices.<br>
+     * Dimensions are taken from the first slice, and spacing from the properties file
+     * <code>volume.properties</code> next to the slices if there is one, e.g. <code>spacing=0.5,1.2,0.5</code>.
+     *
+     * @param slices sorted array of image files
+     * @return empty volume
+     * @throws IOException if the first image can't be read
+     */
+    public static DenseVolume createVolume(File[] slices) throws IOException {
+        int[] dimensions = readDimensions(slices);
+        DenseVolume volume = new DenseVolume(dimensions[0], dimensions[1], dimensions[2]);
+        volume.setSpacing(readSpacing(slices));
+        return volume;
+    }
 
-        Vector3f normal;
+    // reads spacing from volume.properties next to the slices, 1 along every axis if there is none
+    private static float[] readSpacing(File[] slices) throws IOException {
+        File file = new File(slices[0].getParentFile(), "volume.properties");
+        if (!file.isFile()) return new float[]{1, 1, 1};
 
-        public Triangle(int v1, int v2, int v3){
-            this.v1 = v1;
-            this.v2 = v2;
-            this.v3 = v3;
+        Properties properties = new Properties();
+        try (Reader in = new FileReader(file)) {
+            properties.load(in);
         }
+        float[] spacing = parseSpacing(properties.getProperty("spacing", "1,1,1"));
+        System.out.printf("Spacing: %s, %s, %s%n", spacing[0], spacing[1], spacing[2]);
+        return spacing;
+    }
 
-        public int getV1() {
-            return v1;
+    /**
+     * Parses spacing along each axis.
+     *
+     * @param value comma separated spacing along the x, y and z axes
+     * @return array of spacing along the x, y and z axes
+     * @throws IOException if the value isn't 3 positive numbers
+     */
+    public static float[] parseSpacing(String value) throws IOException {
+        String[] values = value.split(",");
+        if (values.length != 3) throw new IOException("Spacing needs 3 values: " + value);
+        float[] spacing = new float[3];
+        try {
+            for (int i = 0; i < 3; i++) spacing[i] = Float.parseFloat(values[i].trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid spacing: " + value, e);
         }
-
-        public int getV2() {
-            return v2;
+        for (float s : spacing) {
+            if (!(s > 0)) throw new IOException("Spacing must be positive: " + value);
         }
+        return spacing;
+    }
 
-        public int getV3() {
-            return v3;
-        }
+    // reads width, height and depth of the volume from the first slice and the number of slices
+    private static int[] readDimensions(File[] slices) throws IOException {
+        int height = slices.length;
+        BufferedImage tempImage = ImageIO.read(slices[0]);
+        int width = tempImage.getWidth();
+        int depth = tempImage.getHeight();
+        System.out.printf("Width: %d | Height: %d | Depth: %d%n", width, height, depth);
+        return new int[]{width, height, depth};
     }
 
     /**
-     * Data class containing vertex and value.
+     * Reads brightness of each pixel of an image slice into the volume.
+     *
+     * @param slice  image file
+     * @param volume volume to fill
+     * @param y      y coordinate of the slice in the volume
+     * @throws IOException if the image can't be read
      */
-    public static class Data {
-        /**
-         * Position of data in 3D space.
-         */
-        Vector3f pos;
-        /**
-         * Value of data.
-         */
-        float val;
+    public static void loadSlice(File slice, DenseVolume volume, int y) throws IOException {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        BufferedImage image = ImageIO.read(slice);
 
-        /**
-         * Data constructor.
-         *
-         * @param pos vertex position of data
-         * @param val value of data
-         */
-        public Data(Vector3f pos, float val) {
-            this.pos = pos;
-            this.val = val;
+        for (int x = 0; x < volume.getWidth(); x++) {
+            for (int z = 0; z < volume.getDepth(); z++) {
+                volume.setValue(x, y, z, brightness(image.getRGB(x, z)));
+            }
         }
+        if (Metrics.ENABLED) sliceDecodeTime.record(System.nanoTime() - start);
+    }
+
+    // returns list of files located in source directory with ".png" file extension, sorted by name
+    private static File[] getSlices(File directory) {
+        FilenameFilter filter = (dir, name) -> name.toLowerCase().endsWith(".png");
+
+        File[] files = directory.listFiles(filter);
+        if (files != null) Arrays.sort(files);
+        return files;
+    }
+
+    // get colour as RGB integer value
+    // bitwise AND comparison to extract red, green, blue values
+    static float brightness(int clr) {
+        int r = (clr & 0x00ff0000) >> 16;
+        int g = (clr & 0x0000ff00) >> 8;
+        int b = clr & 0x000000ff;
+
+        return (float) (r * 0.2126 + g * 0.7152 + b * 0.0722) / 255; // brightness value of pixel
     }
 }
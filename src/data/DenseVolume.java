@@ -0,0 +1,138 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Volume storing every sample in a single primitive array.<br>
+ * Samples are stored slice by slice, with the z-axis contiguous in memory. Samples may be edited once loaded,
+ * each change is reported to the listeners registered with {@link #addEditListener}.
+ */
+public class DenseVolume implements Volume {
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final float[] spacing = {1, 1, 1};
+    private final float[] values;
+    // copied on registration, so changes report to listeners without locking
+    private volatile EditListener[] listeners = new EditListener[0];
+
+    /**
+     * Creates an empty volume of given dimensions.
+     *
+     * @param width  number of samples along the x-axis
+     * @param height number of samples along the y-axis
+     * @param depth  number of samples along the z-axis
+     */
+    public DenseVolume(int width, int height, int depth) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        values = new float[width * height * depth];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    /**
+     * Sets distance between samples along each axis.
+     *
+     * @param spacing array of spacing along the x, y and z axes
+     */
+    public void setSpacing(float[] spacing) {
+        System.arraycopy(spacing, 0, this.spacing, 0, 3);
+    }
+
+    @Override
+    public float getValue(int x, int y, int z) {
+        return values[(y * width + x) * depth + z];
+    }
+
+    @Override
+    public void getRow(int x, int y, float[] row) {
+        System.arraycopy(values, (y * width + x) * depth, row, 0, depth);
+    }
+
+    @Override
+    public synchronized void addEditListener(EditListener listener) {
+        EditListener[] registered = Arrays.copyOf(listeners, listeners.length + 1);
+        registered[listeners.length] = listener;
+        listeners = registered;
+    }
+
+    /**
+     * Sets the row of samples along the z-axis at given x and y.
+     *
+     * @param x   x coordinate
+     * @param y   y coordinate
+     * @param row array of at least depth values to copy into the row
+     */
+    public void setRow(int x, int y, float[] row) {
+        setRow(x, y, row, 0, depth - 1);
+    }
+
+    /**
+     * Sets part of the row of samples along the z-axis at given x and y, leaving the rest of the row as it is.
+     *
+     * @param x    x coordinate
+     * @param y    y coordinate
+     * @param row  array of at least depth values, only those from minZ to maxZ are copied into the row
+     * @param minZ z coordinate of the first sample to set
+     * @param maxZ z coordinate of the last sample to set
+     */
+    public void setRow(int x, int y, float[] row, int minZ, int maxZ) {
+        System.arraycopy(row, minZ, values, (y * width + x) * depth + minZ, maxZ - minZ + 1);
+        edited(x, y, minZ, x, y, maxZ);
+    }
+
+    /**
+     * Sets value of sample at given position.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     * @param value value of sample
+     */
+    public void setValue(int x, int y, int z, float value) {
+        values[(y * width + x) * depth + z] = value;
+        edited(x, y, z, x, y, z);
+    }
+
+    /**
+     * Sets every sample in a box to the same value, reporting the box as a single change.
+     *
+     * @param min   x, y and z coordinates of the first sample to set
+     * @param max   x, y and z coordinates of the last sample to set
+     * @param value value of samples
+     */
+    public void fill(int[] min, int[] max, float value) {
+        for (int y = min[1]; y <= max[1]; y++) {
+            for (int x = min[0]; x <= max[0]; x++) {
+                int row = (y * width + x) * depth;
+                Arrays.fill(values, row + min[2], row + max[2] + 1, value);
+            }
+        }
+        edited(min[0], min[1], min[2], max[0], max[1], max[2]);
+    }
+
+    // reports a changed box of samples to every listener
+    private void edited(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (EditListener listener : listeners) listener.edited(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+}
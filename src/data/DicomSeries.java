@@ -0,0 +1,459 @@
+package data;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Series of DICOM files in a directory, one slice per file, read straight into a volume.<br>
+ * Supports the uncompressed little endian transfer syntaxes, implicit VR (1.2.840.10008.1.2) and explicit VR
+ * (1.2.840.10008.1.2.1), with 8 or 16 bit monochrome samples. Files with the extension <code>.dcm</code> are
+ * read, or every file starting with the DICOM preamble if there are none.<br>
+ * Slices are sorted by Image Position (Patient) along the normal of Image Orientation (Patient), falling back to
+ * Instance Number. Samples are rescaled with the Rescale Slope and Intercept of each file, so CT volumes hold
+ * Hounsfield units and ISO levels are given in them. Spacing is taken from Pixel Spacing and the distance between
+ * slices.<br>
+ * Headers are parsed and frames decoded in parallel. Columns of each frame run along the x-axis of the volume,
+ * rows along the z-axis and slices along the y-axis, as for image slices.
+ */
+public class DicomSeries implements DataLoader.SliceSource {
+    private static final String IMPLICIT_VR_LITTLE_ENDIAN = "1.2.840.10008.1.2";
+    private static final String EXPLICIT_VR_LITTLE_ENDIAN = "1.2.840.10008.1.2.1";
+    // explicit VRs with a 4 byte length after 2 reserved bytes, the others have a 2 byte length
+    private static final Set<String> LONG_VRS = Set.of("OB", "OD", "OF", "OL", "OV", "OW", "SQ", "SV", "UC", "UN", "UR", "UT", "UV");
+    private static final int PREAMBLE_LENGTH = 128;
+    private static final int UNDEFINED_LENGTH = -1;
+
+    private static final int TRANSFER_SYNTAX = 0x00020010;
+    private static final int SLICE_THICKNESS = 0x00180050;
+    private static final int INSTANCE_NUMBER = 0x00200013;
+    private static final int IMAGE_POSITION = 0x00200032;
+    private static final int IMAGE_ORIENTATION = 0x00200037;
+    private static final int SAMPLES_PER_PIXEL = 0x00280002;
+    private static final int ROWS = 0x00280010;
+    private static final int COLUMNS = 0x00280011;
+    private static final int PIXEL_SPACING = 0x00280030;
+    private static final int BITS_ALLOCATED = 0x00280100;
+    private static final int BITS_STORED = 0x00280101;
+    private static final int PIXEL_REPRESENTATION = 0x00280103;
+    private static final int RESCALE_INTERCEPT = 0x00281052;
+    private static final int RESCALE_SLOPE = 0x00281053;
+    private static final int PIXEL_DATA = 0x7FE00010;
+    private static final int ITEM = 0xFFFEE000;
+    private static final int ITEM_END = 0xFFFEE00D;
+    private static final int SEQUENCE_END = 0xFFFEE0DD;
+
+    private final Frame[] frames;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final float[] spacing;
+
+    /**
+     * Reads headers of every DICOM file in given directory and sorts them into slices.
+     *
+     * @param directory directory of DICOM files
+     * @throws IOException if no DICOM files are found, a file can't be read or isn't supported, or the frames
+     *                     differ in size or sample format
+     */
+    public DicomSeries(File directory) throws IOException {
+        File[] files = listFiles(directory);
+        if (files.length == 0) throw new FileNotFoundException(String.format("No DICOM files found in %s", directory.getPath()));
+
+        Frame[] parsed = new Frame[files.length];
+        try {
+            IntStream.range(0, files.length).parallel().forEach(i -> {
+                try {
+                    parsed[i] = readHeader(files[i]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Frame first = parsed[0];
+        for (Frame frame : parsed) {
+            if (frame.rows != first.rows || frame.columns != first.columns) {
+                throw new IOException(String.format("%s is %d x %d, %s is %d x %d", frame.file.getName(), frame.columns,
+                        frame.rows, first.file.getName(), first.columns, first.rows));
+            }
+        }
+        frames = sort(parsed);
+        width = first.columns;
+        height = frames.length;
+        depth = first.rows;
+        spacing = new float[]{
+                first.pixelSpacing != null ? (float) first.pixelSpacing[1] : 1,
+                sliceSpacing(frames),
+                first.pixelSpacing != null ? (float) first.pixelSpacing[0] : 1};
+        System.out.printf("Width: %d | Height: %d | Depth: %d | %d bit DICOM | Spacing: %s, %s, %s%n",
+                width, height, depth, first.bitsStored, spacing[0], spacing[1], spacing[2]);
+    }
+
+    /**
+     * Returns whether given directory holds a DICOM series.
+     *
+     * @param directory directory to check
+     * @return true if the directory has files with the extension <code>.dcm</code> or files starting with the
+     * DICOM preamble
+     */
+    public static boolean isSeries(File directory) {
+        if (!directory.isDirectory()) return false;
+        try {
+            return listFiles(directory).length > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns number of samples along the x-axis, the columns of each frame.
+     *
+     * @return width of the volume
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns number of samples along the y-axis, the number of slices.
+     *
+     * @return height of the volume
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns number of samples along the z-axis, the rows of each frame.
+     *
+     * @return depth of the volume
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns distance between samples along each axis.
+     *
+     * @return array of spacing along the x, y and z axes
+     */
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    /**
+     * Decodes every frame into a new dense volume, several frames at once.
+     *
+     * @return volume of rescaled samples
+     * @throws IOException if a frame can't be read
+     */
+    public DenseVolume readVolume() throws IOException {
+        DenseVolume volume = new DenseVolume(width, height, depth);
+        volume.setSpacing(spacing);
+        try {
+            IntStream.range(0, height).parallel().forEach(y -> {
+                try {
+                    readSlice(y, volume, y);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return volume;
+    }
+
+    @Override
+    public void readSlice(int y, DenseVolume slab, int slabY) throws IOException {
+        Frame frame = frames[y];
+        int bytesPerSample = frame.bitsAllocated / 8;
+        int length = frame.rows * frame.columns * bytesPerSample;
+        ByteBuffer pixels = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(frame.file.toPath(), StandardOpenOption.READ)) {
+            long position = frame.pixelOffset;
+            while (pixels.hasRemaining()) {
+                int read = channel.read(pixels, position);
+                if (read < 0) throw new IOException("Pixel data of " + frame.file.getName() + " is truncated");
+                position += read;
+            }
+        }
+
+        // samples narrower than their allocation are sign extended or masked to the stored bits
+        int shift = 32 - frame.bitsStored;
+        for (int row = 0, i = 0; row < frame.rows; row++) {
+            for (int column = 0; column < frame.columns; column++, i += bytesPerSample) {
+                int raw = bytesPerSample == 1 ? pixels.get(i) : pixels.getShort(i);
+                raw = frame.signed ? (raw << shift) >> shift : (raw << shift) >>> shift;
+                slab.setValue(column, slabY, row, (float) (raw * frame.slope + frame.intercept));
+            }
+        }
+    }
+
+    // DICOM files of the directory, sorted by name
+    private static File[] listFiles(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".dcm"));
+        if (files == null) throw new FileNotFoundException(directory.getPath());
+        if (files.length == 0) {
+            File[] all = directory.listFiles(File::isFile);
+            if (all == null) throw new FileNotFoundException(directory.getPath());
+            files = Arrays.stream(all).filter(DicomSeries::hasPreamble).toArray(File[]::new);
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    // whether the file starts with the 128 byte preamble and the DICM prefix
+    private static boolean hasPreamble(File file) {
+        byte[] start = new byte[PREAMBLE_LENGTH + 4];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return in.readNBytes(start, 0, start.length) == start.length
+                    && new String(start, PREAMBLE_LENGTH, 4, StandardCharsets.US_ASCII).equals("DICM");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // parses the header of a file up to its pixel data
+    private static Frame readHeader(File file) throws IOException {
+        try {
+            return new Parser(file, Files.readAllBytes(file.toPath())).parse();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(file.getName() + " is truncated", e);
+        }
+    }
+
+    // sorts frames along the slice normal by Image Position, otherwise by Instance Number, otherwise by file name
+    private static Frame[] sort(Frame[] frames) {
+        Frame[] sorted = frames.clone();
+        if (Arrays.stream(frames).allMatch(frame -> frame.position != null)) {
+            double[] normal = normal(frames[0].orientation);
+            for (Frame frame : sorted) {
+                frame.location = frame.position[0] * normal[0] + frame.position[1] * normal[1] + frame.position[2] * normal[2];
+            }
+            Arrays.sort(sorted, Comparator.comparingDouble(frame -> frame.location));
+        } else if (Arrays.stream(frames).allMatch(frame -> frame.instanceNumber != null)) {
+            Arrays.sort(sorted, Comparator.comparingInt(frame -> frame.instanceNumber));
+        }
+        return sorted;
+    }
+
+    // normal of the slices from the row and column directions, the z-axis of the patient if there are none
+    private static double[] normal(double[] orientation) {
+        if (orientation == null || orientation.length < 6) return new double[]{0, 0, 1};
+        double[] normal = {
+                orientation[1] * orientation[5] - orientation[2] * orientation[4],
+                orientation[2] * orientation[3] - orientation[0] * orientation[5],
+                orientation[0] * orientation[4] - orientation[1] * orientation[3]};
+        double length = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+        if (length == 0) return new double[]{0, 0, 1};
+        for (int i = 0; i < 3; i++) normal[i] /= length;
+        return normal;
+    }
+
+    // mean distance between sorted slices, falling back to Slice Thickness then 1
+    // slices are placed evenly, so a warning is printed if the distances differ
+    private static float sliceSpacing(Frame[] frames) {
+        if (frames.length > 1 && frames[0].position != null) {
+            double first = frames[0].location, last = frames[frames.length - 1].location;
+            double mean = (last - first) / (frames.length - 1);
+            for (int i = 1; i < frames.length; i++) {
+                if (Math.abs(frames[i].location - frames[i - 1].location - mean) > 0.01 * Math.abs(mean)) {
+                    System.err.printf("Slice spacing varies, using mean of %s%n", mean);
+                    break;
+                }
+            }
+            if (mean > 0) return (float) mean;
+        }
+        return frames[0].sliceThickness > 0 ? (float) frames[0].sliceThickness : 1;
+    }
+
+    // header values of a single file
+    private static class Frame {
+        private final File file;
+        private int rows;
+        private int columns;
+        private int samplesPerPixel = 1;
+        private int bitsAllocated = 16;
+        private int bitsStored;
+        private boolean signed;
+        private double slope = 1;
+        private double intercept = 0;
+        private double[] position;
+        private double[] orientation;
+        private double[] pixelSpacing;
+        private double sliceThickness;
+        private Integer instanceNumber;
+        private long pixelOffset = -1;
+        // position along the slice normal, set when sorting
+        private double location;
+
+        private Frame(File file) {
+            this.file = file;
+        }
+    }
+
+    // reads data elements of a file in order up to the pixel data
+    private static class Parser {
+        private final File file;
+        private final ByteBuffer buffer;
+        private boolean explicit = true;
+        private int tag;
+        private String vr;
+        private int length;
+
+        private Parser(File file, byte[] bytes) {
+            this.file = file;
+            this.buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private Frame parse() throws IOException {
+            Frame frame = new Frame(file);
+
+            // file meta information is always explicit VR little endian, files without a preamble are implicit
+            String transferSyntax = IMPLICIT_VR_LITTLE_ENDIAN;
+            if (buffer.limit() >= PREAMBLE_LENGTH + 4
+                    && new String(buffer.array(), PREAMBLE_LENGTH, 4, StandardCharsets.US_ASCII).equals("DICM")) {
+                buffer.position(PREAMBLE_LENGTH + 4);
+                while (buffer.remaining() >= 4 && (buffer.getShort(buffer.position()) & 0xFFFF) == 0x0002) {
+                    nextElement();
+                    if (tag == TRANSFER_SYNTAX) transferSyntax = string();
+                    else skipValue();
+                }
+            }
+            switch (transferSyntax) {
+                case IMPLICIT_VR_LITTLE_ENDIAN -> explicit = false;
+                case EXPLICIT_VR_LITTLE_ENDIAN -> explicit = true;
+                default -> throw new IOException(String.format("%s has unsupported transfer syntax %s", file.getName(), transferSyntax));
+            }
+
+            while (buffer.hasRemaining()) {
+                nextElement();
+                switch (tag) {
+                    case PIXEL_DATA -> {
+                        if (length == UNDEFINED_LENGTH) throw new IOException(file.getName() + " has compressed pixel data");
+                        frame.pixelOffset = buffer.position();
+                        if (length < (long) frame.rows * frame.columns * (frame.bitsAllocated / 8)) {
+                            throw new IOException("Pixel data of " + file.getName() + " is truncated");
+                        }
+                        return validate(frame);
+                    }
+                    case ROWS -> frame.rows = unsignedShort();
+                    case COLUMNS -> frame.columns = unsignedShort();
+                    case SAMPLES_PER_PIXEL -> frame.samplesPerPixel = unsignedShort();
+                    case BITS_ALLOCATED -> frame.bitsAllocated = unsignedShort();
+                    case BITS_STORED -> frame.bitsStored = unsignedShort();
+                    case PIXEL_REPRESENTATION -> frame.signed = unsignedShort() == 1;
+                    case RESCALE_SLOPE -> frame.slope = numbers()[0];
+                    case RESCALE_INTERCEPT -> frame.intercept = numbers()[0];
+                    case IMAGE_POSITION -> frame.position = numbers();
+                    case IMAGE_ORIENTATION -> frame.orientation = numbers();
+                    case PIXEL_SPACING -> frame.pixelSpacing = numbers();
+                    case SLICE_THICKNESS -> frame.sliceThickness = numbers()[0];
+                    case INSTANCE_NUMBER -> frame.instanceNumber = (int) numbers()[0];
+                    default -> skipValue();
+                }
+            }
+            throw new IOException(file.getName() + " has no pixel data");
+        }
+
+        // checks the frame is a single monochrome frame this reader can decode
+        private Frame validate(Frame frame) throws IOException {
+            if (frame.samplesPerPixel != 1) throw new IOException(file.getName() + " is not monochrome");
+            if (frame.bitsAllocated != 8 && frame.bitsAllocated != 16) {
+                throw new IOException(String.format("%s has unsupported %d bit samples", file.getName(), frame.bitsAllocated));
+            }
+            if (frame.bitsStored <= 0 || frame.bitsStored > frame.bitsAllocated) frame.bitsStored = frame.bitsAllocated;
+            if (frame.rows <= 0 || frame.columns <= 0) throw new IOException(file.getName() + " has no rows or columns");
+            return frame;
+        }
+
+        // reads tag, VR and length of the next element, leaving the buffer at its value
+        // items and delimiters have no VR in either syntax
+        private void nextElement() {
+            int group = buffer.getShort() & 0xFFFF;
+            int element = buffer.getShort() & 0xFFFF;
+            tag = group << 16 | element;
+            if (group == 0xFFFE || !explicit) {
+                vr = null;
+                length = buffer.getInt();
+                return;
+            }
+            vr = new String(new byte[]{buffer.get(), buffer.get()}, StandardCharsets.US_ASCII);
+            if (LONG_VRS.contains(vr)) {
+                buffer.getShort();
+                length = buffer.getInt();
+            } else {
+                length = buffer.getShort() & 0xFFFF;
+            }
+        }
+
+        // skips value of the current element, walking sequences of undefined length
+        private void skipValue() throws IOException {
+            if (length == UNDEFINED_LENGTH) skipSequence();
+            else buffer.position(buffer.position() + length);
+        }
+
+        // skips items up to the sequence delimiter
+        private void skipSequence() throws IOException {
+            while (true) {
+                nextElement();
+                if (tag == SEQUENCE_END) return;
+                if (tag != ITEM) throw new IOException(String.format("%s has a malformed sequence", file.getName()));
+                if (length == UNDEFINED_LENGTH) skipItem();
+                else buffer.position(buffer.position() + length);
+            }
+        }
+
+        // skips elements up to the item delimiter
+        private void skipItem() throws IOException {
+            while (true) {
+                nextElement();
+                if (tag == ITEM_END) return;
+                skipValue();
+            }
+        }
+
+        // value of the current element as an unsigned short
+        private int unsignedShort() {
+            int value = buffer.getShort(buffer.position()) & 0xFFFF;
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        // value of the current element as text, without padding
+        private String string() {
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.US_ASCII);
+            buffer.position(buffer.position() + length);
+            return value.replace('\0', ' ').trim();
+        }
+
+        // value of the current element as backslash separated decimal or integer strings
+        private double[] numbers() throws IOException {
+            String[] values = string().split("\\\\");
+            double[] numbers = new double[values.length];
+            try {
+                for (int i = 0; i < values.length; i++) numbers[i] = Double.parseDouble(values[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("%s has an invalid number in element %08X", file.getName(), tag), e);
+            }
+            return numbers;
+        }
+    }
+}
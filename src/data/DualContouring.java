@@ -0,0 +1,475 @@
+package data;
+
+import metrics.Counter;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Constructs array of vertices, indices, normals and colours from given data using Dual Contouring.<br>
+ * Each cell crossing the surface gets a single vertex, placed by minimising the quadratic error to the tangent
+ * planes at the points where the surface crosses the edges of the cell (the QEF). Vertices can therefore sit on
+ * sharp edges and corners, which Marching Cubes rounds off. For each edge of the grid crossing the surface, the
+ * vertices of the four cells sharing that edge are joined into a quad of two triangles. Cells where separate
+ * sheets of the surface pass through still get one vertex, so the mesh can be non-manifold there.<br>
+ * The mesh has two triangles for each grid edge crossing the surface, about as many triangles as Marching Cubes
+ * makes, but fewer vertices on curved surfaces as each cell has one vertex rather than one for each edge crossed.<br>
+ * Cells are processed in parallel in blocks of slices along the x-axis. Each block numbers the vertices of its
+ * cells and joins them into quads by itself, keeping the vertex of each cell only while it runs, apart from its
+ * first and last slice of cells. Quads around edges on the face between two blocks are joined after, from the last
+ * slice of one block and the first slice of the next, so memory for cell vertices doesn't grow with the volume.
+ * The seed of the extraction parameters is ignored. An instance holds no state, so one instance can be shared
+ * between threads.
+ */
+public class DualContouring implements SurfaceExtractor {
+    /**
+     * Number of cell slices along the x-axis in each block processed in parallel.
+     */
+    public static final int BLOCK_SIZE = 16;
+    // eigenvalues of the QEF below this are treated as zero, so flat and edge regions stay near the mass point
+    private static final double SVD_THRESHOLD = 0.1;
+
+    // corner i of a cell is offset by (i & 1, (i >> 1) & 1, (i >> 2) & 1)
+    private static final int[][] edges = {
+            {0, 1}, {2, 3}, {4, 5}, {6, 7},
+            {0, 2}, {1, 3}, {4, 6}, {5, 7},
+            {0, 4}, {1, 5}, {2, 6}, {3, 7}
+    };
+
+    private static final Counter cellsVisited = Metrics.counter("extract.cellsVisited");
+    private static final Counter cellsSkipped = Metrics.counter("extract.cellsSkipped");
+    private static final Counter trianglesEmitted = Metrics.counter("extract.triangles");
+    private static final Counter verticesEmitted = Metrics.counter("extract.vertices");
+
+    @Override
+    public MeshData generate(Volume volume, ExtractionParameters parameters) {
+        return new Extraction(volume, parameters.isoLevel, parameters.enableColours, parameters.getSpacing(volume)).run();
+    }
+
+    // vertices and quads generated by one block of cells
+    // quads inside the block index its own vertices from 0, quads on the face with the previous block index the
+    // vertices of the whole mesh
+    private static class Block {
+        private float[] vertices = new float[3 * 256];
+        private float[] normals = new float[3 * 256];
+        private float[] colours = new float[3 * 256];
+        private int vertexCount;
+        private int vertexOffset;
+        private int[] indices = new int[6 * 256];
+        private int indexCount;
+        private int[] faceIndices = new int[0];
+        private int faceIndexCount;
+        private int indexOffset;
+        // vertex of each cell in the first and last slice of the block, -1 for cells not crossing the surface
+        private int[] firstSlice, lastSlice;
+        private long skipped;
+
+        // scratch arrays of the QEF solve of a cell
+        private final float[] values = new float[8];
+        private final float[] gradient0 = new float[3];
+        private final float[] gradient1 = new float[3];
+        private final double[][] qef = new double[3][3];
+        private final double[][] eigenvectors = new double[3][3];
+        private final double[] rhs = new double[3];
+        private final double[] solution = new double[3];
+
+        // appends vertex
+        private int addVertex(float px, float py, float pz, float nx, float ny, float nz, float r, float g, float b) {
+            if (vertexCount * 3 == vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertexCount * 6);
+                normals = Arrays.copyOf(normals, vertexCount * 6);
+                colours = Arrays.copyOf(colours, vertexCount * 6);
+            }
+            int i = vertexCount * 3;
+            vertices[i] = px;
+            vertices[i + 1] = py;
+            vertices[i + 2] = pz;
+            normals[i] = nx;
+            normals[i + 1] = ny;
+            normals[i + 2] = nz;
+            colours[i] = r;
+            colours[i + 1] = g;
+            colours[i + 2] = b;
+            return vertexCount++;
+        }
+
+        // appends two triangles of a quad inside the block
+        private void addQuad(int v0, int v1, int v2, int v3) {
+            if (indexCount + 6 > indices.length) indices = Arrays.copyOf(indices, indices.length * 2);
+            putQuad(indices, indexCount, v0, v1, v2, v3);
+            indexCount += 6;
+        }
+
+        // appends two triangles of a quad on the face with the previous block
+        private void addFaceQuad(int v0, int v1, int v2, int v3) {
+            if (faceIndexCount + 6 > faceIndices.length) faceIndices = Arrays.copyOf(faceIndices, Math.max(6 * 256, faceIndices.length * 2));
+            putQuad(faceIndices, faceIndexCount, v0, v1, v2, v3);
+            faceIndexCount += 6;
+        }
+
+        // writes two triangles of a quad at given index
+        private static void putQuad(int[] indices, int i, int v0, int v1, int v2, int v3) {
+            indices[i] = v0;
+            indices[i + 1] = v1;
+            indices[i + 2] = v2;
+            indices[i + 3] = v0;
+            indices[i + 4] = v2;
+            indices[i + 5] = v3;
+        }
+    }
+
+    // state of a single extraction
+    private static class Extraction {
+        private final Volume data;
+        private final float isoLevel;
+        private final boolean enableColours;
+        private final int cellsX, cellsY, cellsZ;
+        private final float max_x, max_y, max_z;
+        // spacing along each axis, applied to positions and normals as vertices are added
+        private final float sx, sy, sz;
+        private final Block[] blocks;
+
+        private Extraction(Volume volume, float isoLevel, boolean enableColours, float[] spacing) {
+            this.data = volume;
+            this.isoLevel = isoLevel;
+            this.enableColours = enableColours;
+            sx = spacing[0];
+            sy = spacing[1];
+            sz = spacing[2];
+            cellsX = volume.getWidth() - 1;
+            cellsY = volume.getHeight() - 1;
+            cellsZ = volume.getDepth() - 1;
+
+            // maximum x, y, z positions used to centre mesh around origin
+            max_x = volume.getWidth() - 1;
+            max_y = volume.getHeight() - 1;
+            max_z = volume.getDepth() - 1;
+
+            blocks = new Block[Math.max(0, (cellsX + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+        }
+
+        // places vertices and joins quads in every block, numbers vertices in block order, then joins quads on the
+        // faces between blocks
+        private MeshData run() {
+            IntStream.range(0, blocks.length).parallel().forEach(this::generateBlock);
+
+            int vertexCount = 0;
+            for (Block block : blocks) {
+                block.vertexOffset = vertexCount;
+                vertexCount += block.vertexCount;
+            }
+            IntStream.range(1, blocks.length).parallel().forEach(this::generateFaceQuads);
+
+            int indexCount = 0;
+            for (Block block : blocks) {
+                block.indexOffset = indexCount;
+                indexCount += block.faceIndexCount + block.indexCount;
+            }
+
+            float[] vertices = new float[vertexCount * 3];
+            float[] normals = new float[vertexCount * 3];
+            float[] colours = new float[vertexCount * 3];
+            int[] indices = new int[indexCount];
+            IntStream.range(0, blocks.length).parallel().forEach(b -> {
+                Block block = blocks[b];
+                System.arraycopy(block.vertices, 0, vertices, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.normals, 0, normals, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.colours, 0, colours, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.faceIndices, 0, indices, block.indexOffset, block.faceIndexCount);
+                int offset = block.indexOffset + block.faceIndexCount;
+                for (int i = 0; i < block.indexCount; i++) indices[offset + i] = block.indices[i] + block.vertexOffset;
+            });
+
+            if (Metrics.ENABLED) {
+                long skipped = 0;
+                for (Block block : blocks) skipped += block.skipped;
+                cellsVisited.add((long) cellsX * cellsY * cellsZ);
+                cellsSkipped.add(skipped);
+                trianglesEmitted.add(indexCount / 3);
+                verticesEmitted.add(vertexCount);
+            }
+            return new MeshData(vertices, indices, normals, colours);
+        }
+
+        // places a vertex in each cell of a block that crosses the surface, then joins the vertices around each grid
+        // edge inside the block that crosses the surface
+        // the vertex of each cell is kept in an array of the block's cells while it runs, only its first and last
+        // slices are kept for joining quads on the faces with the neighbouring blocks
+        private void generateBlock(int b) {
+            Block block = new Block();
+            blocks[b] = block;
+            float[] values = block.values;
+            int xStart = b * BLOCK_SIZE;
+            int xEnd = Math.min(xStart + BLOCK_SIZE, cellsX);
+            int slice = cellsY * cellsZ;
+            int[] cellVertex = new int[(xEnd - xStart) * slice];
+
+            for (int x = xStart; x < xEnd; x++) {
+                for (int y = 0; y < cellsY; y++) {
+                    for (int z = 0; z < cellsZ; z++) {
+                        int cell = ((x - xStart) * cellsY + y) * cellsZ + z;
+                        int mask = 0;
+                        for (int i = 0; i < 8; i++) {
+                            values[i] = data.getValue(x + (i & 1), y + ((i >> 1) & 1), z + ((i >> 2) & 1));
+                            if (values[i] < isoLevel) mask |= 1 << i;
+                        }
+                        if (mask == 0 || mask == 255) {
+                            cellVertex[cell] = -1;
+                            block.skipped++;
+                            continue;
+                        }
+                        cellVertex[cell] = placeVertex(block, x, y, z, values, mask);
+                    }
+                }
+            }
+
+            // edges along y and z on the first slice join cells of the previous block, see generateFaceQuads
+            for (int x = xStart; x < xEnd; x++) {
+                int current = (x - xStart) * slice;
+                int previous = current - slice;
+                for (int y = 0; y < cellsY; y++) {
+                    for (int z = 0; z < cellsZ; z++) {
+                        boolean outside = data.getValue(x, y, z) < isoLevel;
+                        int cell = y * cellsZ + z;
+
+                        // edge along x, shared by cells around it in the y-z plane
+                        if (y > 0 && z > 0 && outside != data.getValue(x + 1, y, z) < isoLevel) {
+                            addQuad(block, false, outside,
+                                    cellVertex[current + cell - cellsZ - 1], cellVertex[current + cell - 1],
+                                    cellVertex[current + cell], cellVertex[current + cell - cellsZ]);
+                        }
+                        if (x == xStart) continue;
+                        // edge along y, shared by cells around it in the z-x plane
+                        if (z > 0 && outside != data.getValue(x, y + 1, z) < isoLevel) {
+                            addQuad(block, false, outside,
+                                    cellVertex[previous + cell - 1], cellVertex[previous + cell],
+                                    cellVertex[current + cell], cellVertex[current + cell - 1]);
+                        }
+                        // edge along z, shared by cells around it in the x-y plane
+                        if (y > 0 && outside != data.getValue(x, y, z + 1) < isoLevel) {
+                            addQuad(block, false, outside,
+                                    cellVertex[previous + cell - cellsZ], cellVertex[current + cell - cellsZ],
+                                    cellVertex[current + cell], cellVertex[previous + cell]);
+                        }
+                    }
+                }
+            }
+
+            block.firstSlice = Arrays.copyOf(cellVertex, slice);
+            block.lastSlice = xEnd - xStart == 1 ? block.firstSlice : Arrays.copyOfRange(cellVertex, cellVertex.length - slice, cellVertex.length);
+        }
+
+        // joins vertices around each edge along y and z on the face between a block and the previous block
+        // vertices of both blocks are numbered by now, so the quads index the vertices of the whole mesh
+        private void generateFaceQuads(int b) {
+            Block block = blocks[b];
+            Block previousBlock = blocks[b - 1];
+            int[] previous = previousBlock.lastSlice, current = block.firstSlice;
+            int previousOffset = previousBlock.vertexOffset, currentOffset = block.vertexOffset;
+            int x = b * BLOCK_SIZE;
+
+            for (int y = 0; y < cellsY; y++) {
+                for (int z = 0; z < cellsZ; z++) {
+                    boolean outside = data.getValue(x, y, z) < isoLevel;
+                    int cell = y * cellsZ + z;
+
+                    // edge along y, shared by cells around it in the z-x plane
+                    if (z > 0 && outside != data.getValue(x, y + 1, z) < isoLevel) {
+                        addQuad(block, true, outside,
+                                previous[cell - 1] + previousOffset, previous[cell] + previousOffset,
+                                current[cell] + currentOffset, current[cell - 1] + currentOffset);
+                    }
+                    // edge along z, shared by cells around it in the x-y plane
+                    if (y > 0 && outside != data.getValue(x, y, z + 1) < isoLevel) {
+                        addQuad(block, true, outside,
+                                previous[cell - cellsZ] + previousOffset, current[cell - cellsZ] + currentOffset,
+                                current[cell] + currentOffset, previous[cell] + previousOffset);
+                    }
+                }
+            }
+        }
+
+        // solves the QEF of a cell and adds its vertex to the block
+        private int placeVertex(Block block, int x, int y, int z, float[] values, int mask) {
+            // upper triangle of A^T A, A^T b and the mass point of the edge crossings, in cell local coordinates
+            double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+            double b0 = 0, b1 = 0, b2 = 0;
+            double mx = 0, my = 0, mz = 0;
+            double nx = 0, ny = 0, nz = 0;
+            int crossings = 0;
+            float[] gradient0 = block.gradient0;
+            float[] gradient1 = block.gradient1;
+
+            for (int[] edge : edges) {
+                int c0 = edge[0], c1 = edge[1];
+                if (((mask >> c0) & 1) == ((mask >> c1) & 1)) continue;
+
+                // point where the surface crosses the edge, interpolated between corner values
+                float v0 = values[c0], v1 = values[c1];
+                float t = Math.abs(v1 - v0) > 0.00001 ? (isoLevel - v0) / (v1 - v0) : 0.5f;
+                float px = (c0 & 1) + ((c1 & 1) - (c0 & 1)) * t;
+                float py = ((c0 >> 1) & 1) + (((c1 >> 1) & 1) - ((c0 >> 1) & 1)) * t;
+                float pz = ((c0 >> 2) & 1) + (((c1 >> 2) & 1) - ((c0 >> 2) & 1)) * t;
+                mx += px;
+                my += py;
+                mz += pz;
+                crossings++;
+
+                // tangent plane normal from the gradient of the volume, interpolated between corners
+                gradient(x + (c0 & 1), y + ((c0 >> 1) & 1), z + ((c0 >> 2) & 1), gradient0);
+                gradient(x + (c1 & 1), y + ((c1 >> 1) & 1), z + ((c1 >> 2) & 1), gradient1);
+                double gx = gradient0[0] + (gradient1[0] - gradient0[0]) * t;
+                double gy = gradient0[1] + (gradient1[1] - gradient0[1]) * t;
+                double gz = gradient0[2] + (gradient1[2] - gradient0[2]) * t;
+                double length = Math.sqrt(gx * gx + gy * gy + gz * gz);
+                if (length < 1e-8) continue;
+                gx /= length;
+                gy /= length;
+                gz /= length;
+                nx += gx;
+                ny += gy;
+                nz += gz;
+
+                double d = gx * px + gy * py + gz * pz;
+                a00 += gx * gx;
+                a01 += gx * gy;
+                a02 += gx * gz;
+                a11 += gy * gy;
+                a12 += gy * gz;
+                a22 += gz * gz;
+                b0 += gx * d;
+                b1 += gy * d;
+                b2 += gz * d;
+            }
+            mx /= crossings;
+            my /= crossings;
+            mz /= crossings;
+
+            // minimises |A(p - m) - (b - Am)| around the mass point m, so degenerate directions stay at m
+            double[][] qef = block.qef;
+            qef[0][0] = a00; qef[0][1] = a01; qef[0][2] = a02;
+            qef[1][0] = a01; qef[1][1] = a11; qef[1][2] = a12;
+            qef[2][0] = a02; qef[2][1] = a12; qef[2][2] = a22;
+            double[] rhs = block.rhs;
+            rhs[0] = b0 - (a00 * mx + a01 * my + a02 * mz);
+            rhs[1] = b1 - (a01 * mx + a11 * my + a12 * mz);
+            rhs[2] = b2 - (a02 * mx + a12 * my + a22 * mz);
+            double[] position = block.solution;
+            solveQef(qef, rhs, block.eigenvectors, position);
+            double px = mx + position[0], py = my + position[1], pz = mz + position[2];
+
+            // vertices leaving their cell would fold the mesh, so fall back to the mass point
+            double margin = 0.001;
+            if (px < -margin || px > 1 + margin || py < -margin || py > 1 + margin || pz < -margin || pz > 1 + margin) {
+                px = mx;
+                py = my;
+                pz = mz;
+            }
+
+            // normals point up the gradient, matching Marching Cubes, with z flipped like positions
+            // the QEF is solved in sample space, only the output is scaled by the spacing
+            nx /= sx;
+            ny /= sy;
+            nz /= sz;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+
+            float r, g, bl;
+            if (enableColours) {
+                r = (float) x / data.getWidth();
+                g = (float) y / data.getHeight();
+                bl = (float) z / data.getDepth();
+            } else {
+                r = 0.6f;
+                g = 0.6f;
+                bl = 0.6f;
+            }
+
+            // positions are centred around origin and scaled the same way as Marching Cubes
+            return block.addVertex(
+                    (float) (x + px - max_x / 2) * sx,
+                    (float) (y + py - max_y / 2) * sy,
+                    (float) -(z + pz - max_z / 2) * sz - 2,
+                    (float) nx, (float) ny, (float) -nz,
+                    r, g, bl);
+        }
+
+        // central difference gradient of the volume at a sample, one sided at the borders
+        private void gradient(int x, int y, int z, float[] out) {
+            out[0] = data.getValue(Math.min(x + 1, cellsX), y, z) - data.getValue(Math.max(x - 1, 0), y, z);
+            out[1] = data.getValue(x, Math.min(y + 1, cellsY), z) - data.getValue(x, Math.max(y - 1, 0), z);
+            out[2] = data.getValue(x, y, Math.min(z + 1, cellsZ)) - data.getValue(x, y, Math.max(z - 1, 0));
+        }
+
+        // adds quad of vertices of the cells listed counter-clockwise around the edge direction, wound to face the
+        // same way as Marching Cubes triangles
+        private void addQuad(Block block, boolean face, boolean outside, int v0, int v1, int v2, int v3) {
+            if (face) {
+                if (outside) block.addFaceQuad(v0, v1, v2, v3);
+                else block.addFaceQuad(v0, v3, v2, v1);
+            } else {
+                if (outside) block.addQuad(v0, v1, v2, v3);
+                else block.addQuad(v0, v3, v2, v1);
+            }
+        }
+    }
+
+    // solves A^T A x = rhs with the pseudo inverse of the symmetric matrix A^T A, ignoring small eigenvalues
+    // a is overwritten with its eigenvalues and v with its eigenvectors
+    private static void solveQef(double[][] a, double[] rhs, double[][] v, double[] x) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) v[i][j] = i == j ? 1 : 0;
+        }
+
+        // Jacobi eigenvalue iteration, a converges to the diagonal matrix of eigenvalues
+        for (int sweep = 0; sweep < 8; sweep++) {
+            double off = a[0][1] * a[0][1] + a[0][2] * a[0][2] + a[1][2] * a[1][2];
+            if (off < 1e-20) break;
+            for (int p = 0; p < 2; p++) {
+                for (int q = p + 1; q < 3; q++) {
+                    if (Math.abs(a[p][q]) < 1e-20) continue;
+                    double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) t = 1;
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    rotate(a, v, p, q, c, s);
+                }
+            }
+        }
+
+        // x = V D^+ V^T rhs
+        Arrays.fill(x, 0);
+        for (int i = 0; i < 3; i++) {
+            if (a[i][i] < SVD_THRESHOLD) continue;
+            double projection = (v[0][i] * rhs[0] + v[1][i] * rhs[1] + v[2][i] * rhs[2]) / a[i][i];
+            x[0] += v[0][i] * projection;
+            x[1] += v[1][i] * projection;
+            x[2] += v[2][i] * projection;
+        }
+    }
+
+    // applies Jacobi rotation in the p-q plane to symmetric matrix a and accumulates it into eigenvectors v
+    private static void rotate(double[][] a, double[][] v, int p, int q, double c, double s) {
+        for (int k = 0; k < 3; k++) {
+            double akp = a[k][p], akq = a[k][q];
+            a[k][p] = c * akp - s * akq;
+            a[k][q] = s * akp + c * akq;
+        }
+        for (int k = 0; k < 3; k++) {
+            double apk = a[p][k], aqk = a[q][k];
+            a[p][k] = c * apk - s * aqk;
+            a[q][k] = s * apk + c * aqk;
+        }
+        for (int k = 0; k < 3; k++) {
+            double vkp = v[k][p], vkq = v[k][q];
+            v[k][p] = c * vkp - s * vkq;
+            v[k][q] = s * vkp + c * vkq;
+        }
+    }
+}
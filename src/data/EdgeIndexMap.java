@@ -0,0 +1,94 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from grid edge keys to vertex indices, so a vertex on an edge shared by several cells
+ * is only created once.<br>
+ * Keys must be positive, 0 marks an empty slot. Not thread safe.
+ */
+class EdgeIndexMap {
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates empty map.
+     *
+     * @param expected number of entries expected, the map grows past this if needed
+     */
+    EdgeIndexMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns index stored for given key.
+     *
+     * @param key edge key
+     * @return vertex index, -1 if the key isn't in the map
+     */
+    int get(long key) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == 0) return -1;
+        }
+    }
+
+    /**
+     * Stores index for given key, replacing any index already stored.
+     *
+     * @param key   edge key, greater than 0
+     * @param value vertex index
+     */
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) grow();
+        int i = hash(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == 0) size++;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Returns number of entries in the map.
+     *
+     * @return entry count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry, keeping the allocated capacity.
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    // doubles capacity and reinserts entries
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    // mixes bits of key so neighbouring edges spread over the table
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
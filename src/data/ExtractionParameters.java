@@ -0,0 +1,62 @@
+package data;
+
+/**
+ * Parameters for a single surface extraction.
+ */
+public class ExtractionParameters {
+    /**
+     * Surface extraction method.
+     */
+    public enum Method {
+        /**
+         * Table driven Marching Cubes, with a vertex on each edge crossing the surface.
+         */
+        MARCHING_CUBES,
+        /**
+         * Dual Contouring, with a vertex placed inside each cell crossing the surface to preserve sharp features.
+         */
+        DUAL_CONTOURING,
+        /**
+         * Marching Tetrahedra, splitting each cell into six tetrahedra for a watertight manifold surface inside the
+         * volume, open only where the surface reaches the faces of the volume.
+         */
+        MARCHING_TETRAHEDRA
+    }
+
+    /**
+     * Surface extraction method.
+     */
+    public Method method = Method.MARCHING_CUBES;
+    /**
+     * Brightness threshold of image.
+     */
+    public float isoLevel = 0.1f;
+    /**
+     * Enable colours for vertices, else default to white.
+     */
+    public boolean enableColours = false;
+    /**
+     * Seed voxel (x, y, z) to extract the single connected surface from, or null to scan the whole volume.<br>
+     * Only used by Marching Cubes.
+     */
+    public int[] seed = null;
+    /**
+     * Extract with Marching Cubes in two parallel passes, counting then filling exactly sized arrays.<br>
+     * Only used by Marching Cubes when no seed is set.
+     */
+    public boolean twoPass = false;
+    /**
+     * Distance between samples along the x, y and z axes, or null to use the spacing of the volume.
+     */
+    public float[] spacing = null;
+
+    /**
+     * Returns spacing to extract given volume with.
+     *
+     * @param volume volume being extracted
+     * @return spacing set in the parameters, otherwise the spacing of the volume
+     */
+    public float[] getSpacing(Volume volume) {
+        return spacing != null ? spacing.clone() : volume.getSpacing();
+    }
+}
@@ -0,0 +1,214 @@
+package data;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Loads and extracts a volume as a pipeline of stages working on slabs of slices.<br>
+ * While slab N+1 is being decoded, slab N is polygonised and the triangles of slab N-1 are packed into the final
+ * mesh buffers. Stages are joined by bounded queues, so a fast stage waits for a slow one rather than running
+ * ahead, and the total time approaches that of the slowest stage.<br>
+ * Each slab is extracted as a box of cells, see {@link MarchingCubes#generate(Volume, ExtractionParameters, int[], int[])},
+ * so the cells one beyond it are polygonised for normals and its vertices on the boundary with the next slab have
+ * the same normals as in a mesh of the whole volume. Those vertices are generated by both slabs and merged while
+ * packing, matched by the grid edge they lie on.
+ */
+public class ExtractionPipeline {
+    private static final int QUEUE_CAPACITY = 2;
+    private static final Histogram loadTime = Metrics.histogram("pipeline.slabLoadTime");
+    private static final Histogram extractTime = Metrics.histogram("pipeline.slabExtractTime");
+    private static final Histogram packTime = Metrics.histogram("pipeline.slabPackTime");
+
+    private final MarchingCubes marchingCubes;
+    private final int slabSize;
+    private DenseVolume volume;
+
+    // packed mesh buffers
+    private float[] vertices = new float[0];
+    private float[] normals = new float[0];
+    private float[] colours = new float[0];
+    private int[] indices = new int[0];
+    private int vertexCount;
+    private int indexCount;
+
+    /**
+     * Creates extraction pipeline.
+     *
+     * @param marchingCubes engine used to polygonise each slab
+     * @param slabSize      number of slices of cells in each slab
+     */
+    public ExtractionPipeline(MarchingCubes marchingCubes, int slabSize) {
+        this.marchingCubes = marchingCubes;
+        this.slabSize = Math.max(1, slabSize);
+    }
+
+    /**
+     * Loads volume from images in given directory and generates its mesh.<br>
+     * Loading and extraction run on background threads, packing runs on the calling thread.
+     *
+     * @param dir        source directory of images
+     * @param parameters parameters of the extraction, the seed is ignored
+     * @return generated mesh
+     * @throws Exception if an image can't be read or a stage fails
+     */
+    public MeshData run(String dir, ExtractionParameters parameters) throws Exception {
+        long startTime = System.nanoTime();
+        vertexCount = 0;
+        indexCount = 0;
+        File[] slices = DataLoader.listSlices(dir);
+        volume = DataLoader.createVolume(slices);
+
+        ExtractionParameters slabParameters = new ExtractionParameters();
+        slabParameters.isoLevel = parameters.isoLevel;
+        slabParameters.enableColours = parameters.enableColours;
+        slabParameters.spacing = parameters.getSpacing(volume);
+
+        int cellsY = volume.getHeight() - 1;
+        int slabCount = (cellsY + slabSize - 1) / slabSize;
+        BlockingQueue<Integer> loaded = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<MeshData> extracted = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // load stage: decodes slices and publishes each slab once all of its slices are read
+            Future<Long> loadStage = executor.submit(() -> {
+                long busy = System.nanoTime();
+                int y = 0;
+                for (int slab = 0; slab < slabCount; slab++) {
+                    long start = System.nanoTime();
+                    // cells one beyond the slab are polygonised for normals, so their slice is loaded too
+                    int lastSlice = Math.min((slab + 1) * slabSize + 1, cellsY);
+                    for (; y <= lastSlice; y++) {
+                        DataLoader.loadSlice(slices[y], volume, y);
+                    }
+                    if (Metrics.ENABLED) loadTime.record(System.nanoTime() - start);
+                    loaded.put(slab);
+                }
+                return System.nanoTime() - busy;
+            });
+
+            // extract stage: polygonises each slab as soon as it has been loaded
+            Future<Long> extractStage = executor.submit(() -> {
+                long busy = 0;
+                for (int i = 0; i < slabCount; i++) {
+                    int slab = loaded.take();
+                    long start = System.nanoTime();
+                    int yStart = slab * slabSize;
+                    int[] cellMin = {0, yStart, 0};
+                    int[] cellMax = {volume.getWidth() - 1, Math.min(yStart + slabSize, cellsY), volume.getDepth() - 1};
+                    MeshData mesh = marchingCubes.generateWithEdges(volume, slabParameters, cellMin, cellMax);
+                    long time = System.nanoTime() - start;
+                    if (Metrics.ENABLED) extractTime.record(time);
+                    busy += time;
+                    extracted.put(mesh);
+                }
+                return busy;
+            });
+
+            // pack stage: appends each slab to the mesh buffers, merging vertices shared with the previous slab
+            long packBusy = 0;
+            EdgeIndexMap boundary = new EdgeIndexMap(volume.getWidth() + volume.getDepth());
+            EdgeIndexMap nextBoundary = new EdgeIndexMap(volume.getWidth() + volume.getDepth());
+            for (int slab = 0; slab < slabCount; slab++) {
+                MeshData mesh = poll(extracted, loadStage, extractStage);
+                long start = System.nanoTime();
+                pack(mesh, boundary, nextBoundary, Math.min((slab + 1) * slabSize, cellsY));
+                EdgeIndexMap packed = boundary;
+                boundary = nextBoundary;
+                nextBoundary = packed;
+                long time = System.nanoTime() - start;
+                if (Metrics.ENABLED) packTime.record(time);
+                packBusy += time;
+            }
+
+            if (Metrics.ENABLED) {
+                System.out.printf("Pipeline: load %.1f ms | extract %.1f ms | pack %.1f ms | total %.1f ms%n",
+                        loadStage.get() / 1e6, extractStage.get() / 1e6, packBusy / 1e6, (System.nanoTime() - startTime) / 1e6);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new MeshData(
+                Arrays.copyOf(vertices, vertexCount * 3),
+                Arrays.copyOf(indices, indexCount),
+                Arrays.copyOf(normals, vertexCount * 3),
+                Arrays.copyOf(colours, vertexCount * 3));
+    }
+
+    /**
+     * Returns volume loaded by the last run.
+     *
+     * @return loaded volume
+     */
+    public DenseVolume getVolume() {
+        return volume;
+    }
+
+    // waits for the next extracted slab, rethrowing the failure of an earlier stage
+    private static MeshData poll(BlockingQueue<MeshData> queue, Future<?>... stages) throws Exception {
+        while (true) {
+            MeshData mesh = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (mesh != null) return mesh;
+            for (Future<?> stage : stages) {
+                if (stage.isDone()) stage.get();
+            }
+        }
+    }
+
+    // appends slab mesh to packed buffers
+    // vertices on the lower boundary of the slab are merged with the vertex on the same grid edge from the previous
+    // slab, which has the same normal as both slabs polygonise the cells around the boundary
+    // vertices on edges in the upper boundary plane, at upperY, are put into upper for merging with the next slab
+    private void pack(MeshData mesh, EdgeIndexMap lower, EdgeIndexMap upper, int upperY) {
+        float[] slabVertices = mesh.getVertices();
+        float[] slabNormals = mesh.getNormals();
+        float[] slabColours = mesh.getColours();
+        long[] slabEdges = mesh.getEdgeKeys();
+        int[] slabIndices = mesh.getIndices();
+        int height = volume.getHeight(), depth = volume.getDepth();
+
+        ensureCapacity(vertexCount + mesh.getVertexCount(), indexCount + slabIndices.length);
+        upper.clear();
+        int[] remap = new int[mesh.getVertexCount()];
+
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            long key = slabEdges[i];
+            int shared = lower.size() > 0 ? lower.get(key) : -1;
+            if (shared >= 0) {
+                remap[i] = shared;
+            } else {
+                System.arraycopy(slabVertices, i * 3, vertices, vertexCount * 3, 3);
+                System.arraycopy(slabNormals, i * 3, normals, vertexCount * 3, 3);
+                System.arraycopy(slabColours, i * 3, colours, vertexCount * 3, 3);
+                remap[i] = vertexCount++;
+            }
+
+            // edges along the x and z axes starting at a sample of the upper boundary lie in its plane
+            long edge = key - 1;
+            int y = (int) (edge / 3 / depth % height);
+            if (y == upperY && edge % 3 != 1) upper.put(key, remap[i]);
+        }
+
+        for (int index : slabIndices) {
+            indices[indexCount++] = remap[index];
+        }
+    }
+
+    // grows packed buffers to hold at least the given number of vertices and indices
+    private void ensureCapacity(int vertexCapacity, int indexCapacity) {
+        if (vertices.length < vertexCapacity * 3) {
+            int capacity = Math.max(vertexCapacity * 3, vertices.length * 2);
+            vertices = Arrays.copyOf(vertices, capacity);
+            normals = Arrays.copyOf(normals, capacity);
+            colours = Arrays.copyOf(colours, capacity);
+        }
+        if (indices.length < indexCapacity) {
+            indices = Arrays.copyOf(indices, Math.max(indexCapacity, indices.length * 2));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Compressor and decompressor for the LZ4 block format.<br>
+ * Each sequence is a token, literal bytes copied as they are, then a match copying bytes from up to 64 KB earlier
+ * in the output. Matches are found through a hash table of 4 byte sequences, without searching further, which
+ * favours speed over ratio. The last 5 bytes are always literals, as the format requires.
+ */
+final class Lz4Codec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+    private static final int SKIP_TRIGGER = 6;
+
+    private Lz4Codec() {
+    }
+
+    /**
+     * Returns largest possible size of compressed data.
+     *
+     * @param length length of uncompressed data
+     * @return size of buffer needed by {@link #compress}
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Returns new hash table for {@link #compress}.
+     *
+     * @return hash table
+     */
+    static int[] createTable() {
+        return new int[1 << HASH_BITS];
+    }
+
+    /**
+     * Compresses data.
+     *
+     * @param src    uncompressed data
+     * @param length length of uncompressed data
+     * @param dst    buffer of at least {@link #maxCompressedLength} bytes
+     * @param table  hash table from {@link #createTable}, reused between calls
+     * @return length of compressed data
+     */
+    static int compress(byte[] src, int length, byte[] dst, int[] table) {
+        Arrays.fill(table, -1);
+        int anchor = 0, ip = 0, op = 0;
+        int matchLimit = length - MATCH_LIMIT;
+        int matchEnd = length - LAST_LITERALS;
+
+        // steps further ahead the longer no match is found, so incompressible data is skipped quickly
+        int searches = 1 << SKIP_TRIGGER;
+        while (ip < matchLimit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip += searches++ >>> SKIP_TRIGGER;
+                continue;
+            }
+            searches = 1 << SKIP_TRIGGER;
+
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchEnd && src[ref + matchLength] == src[ip + matchLength]) matchLength++;
+            op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+        return writeSequence(src, anchor, length - anchor, dst, op, 0, 0);
+    }
+
+    /**
+     * Decompresses data.
+     *
+     * @param src    compressed data
+     * @param length length of compressed data
+     * @param dst    buffer large enough for the uncompressed data
+     * @return length of uncompressed data
+     */
+    static int decompress(byte[] src, int length, byte[] dst) {
+        int ip = 0, op = 0;
+        while (true) {
+            int token = src[ip++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, dst, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip >= length) return op;
+
+            int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+            int matchLength = token & 15;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+
+            // matches may overlap the bytes they produce, repeating the last offset bytes
+            int ref = op - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+            } else {
+                for (int i = 0; i < matchLength; i++) dst[op + i] = dst[ref + i];
+            }
+            op += matchLength;
+        }
+    }
+
+    // writes literals followed by a match, or only the literals if the match length is 0
+    private static int writeSequence(byte[] src, int anchor, int literals, byte[] dst, int op, int offset, int matchLength) {
+        int token = op++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4);
+        if (literals >= 15) op = writeLength(dst, op, literals - 15);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        if (matchLength == 0) return op;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        int length = matchLength - MIN_MATCH;
+        dst[token] |= (byte) Math.min(length, 15);
+        if (length >= 15) op = writeLength(dst, op, length - 15);
+        return op;
+    }
+
+    // writes remainder of a length as bytes of 255 followed by the last byte
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    // reads 4 bytes as a little endian integer
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,178 @@
+package data;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Volume read straight from a memory mapped raw file of 8 or 16 bit samples.<br>
+ * Nothing is decoded or copied when the volume is opened: samples are read from the mapping as they are used,
+ * and the operating system pages the file in and out of memory, so volumes larger than the heap can be read.<br>
+ * The file is described by a properties file next to it with the same name and the extension
+ * <code>.properties</code>, e.g. <code>scan.properties</code> for <code>scan.raw</code>:
+ * <ul>
+ * <li><code>width</code>, <code>height</code>, <code>depth</code> - number of columns and rows of each slice
+ * and number of slices (required). Samples are stored column by column, then row by row, then slice by slice,
+ * and are placed in the volume as image slices are, with slices along the y-axis</li>
+ * <li><code>bits</code> - bits per sample, <code>8</code> or <code>16</code> (default 8)</li>
+ * <li><code>byteOrder</code> - byte order of 16 bit samples, <code>little</code> or <code>big</code>
+ * (default little)</li>
+ * <li><code>signed</code> - whether samples are signed, <code>true</code> or <code>false</code> (default false)</li>
+ * <li><code>min</code>, <code>max</code> - sample values mapped to 0 and 1 (default the range of the sample
+ * type)</li>
+ * <li><code>spacing</code> - comma separated distance between samples along the x, y and z axes of the volume
+ * (default 1,1,1)</li>
+ * <li><code>offset</code> - bytes to skip at the start of the file (default 0)</li>
+ * </ul>
+ */
+public class MappedVolume implements Volume {
+    // files are mapped in chunks as a single mapping is limited to 2 GB
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int bytesPerSample;
+    private final boolean signed;
+    private final float min;
+    private final float scale;
+    private final float[] spacing;
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Maps raw volume file described by the properties file next to it.
+     *
+     * @param file raw volume file
+     * @throws IOException if either file can't be read, or the header is invalid or doesn't match the file
+     */
+    public MappedVolume(File file) throws IOException {
+        File header = getHeaderFile(file);
+        if (!header.isFile()) throw new FileNotFoundException(String.format("No header %s for %s", header.getPath(), file.getPath()));
+        Properties properties = new Properties();
+        try (Reader in = new FileReader(header)) {
+            properties.load(in);
+        }
+
+        try {
+            width = Integer.parseInt(required(properties, "width"));
+            height = Integer.parseInt(required(properties, "height"));
+            depth = Integer.parseInt(required(properties, "depth"));
+            int bits = Integer.parseInt(properties.getProperty("bits", "8").trim());
+            if (bits != 8 && bits != 16) throw new IOException("Unsupported bits per sample " + bits);
+            bytesPerSample = bits / 8;
+            signed = Boolean.parseBoolean(properties.getProperty("signed", "false").trim());
+            float typeMin = signed ? -(1 << (bits - 1)) : 0;
+            float typeMax = signed ? (1 << (bits - 1)) - 1 : (1 << bits) - 1;
+            min = Float.parseFloat(properties.getProperty("min", String.valueOf(typeMin)).trim());
+            float max = Float.parseFloat(properties.getProperty("max", String.valueOf(typeMax)).trim());
+            if (max <= min) throw new IOException(String.format("Header max %s is not above min %s", max, min));
+            scale = 1 / (max - min);
+
+            spacing = DataLoader.parseSpacing(properties.getProperty("spacing", "1,1,1"));
+
+            ByteOrder order = switch (properties.getProperty("byteOrder", "little").trim().toLowerCase(Locale.ROOT)) {
+                case "little" -> ByteOrder.LITTLE_ENDIAN;
+                case "big" -> ByteOrder.BIG_ENDIAN;
+                default -> throw new IOException("Unknown byte order " + properties.getProperty("byteOrder"));
+            };
+            long offset = Long.parseLong(properties.getProperty("offset", "0").trim());
+            chunks = map(file, offset, (long) width * height * depth * bytesPerSample, order);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid header " + header.getPath(), e);
+        }
+        System.out.printf("Width: %d | Height: %d | Depth: %d | %d bit | Spacing: %s, %s, %s%n",
+                width, height, depth, bytesPerSample * 8, spacing[0], spacing[1], spacing[2]);
+    }
+
+    /**
+     * Returns properties file describing given raw volume file.
+     *
+     * @param file raw volume file
+     * @return header file with the same name and the extension <code>.properties</code>
+     */
+    public static File getHeaderFile(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".properties");
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float getValue(int x, int y, int z) {
+        return read(((long) y * depth + z) * width + x);
+    }
+
+    @Override
+    public void getRow(int x, int y, float[] row) {
+        long sample = (long) y * depth * width + x;
+        for (int z = 0; z < depth; z++, sample += width) {
+            row[z] = read(sample);
+        }
+    }
+
+    @Override
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    // reads sample at given index in the file, mapped from the range in the header to 0 to 1
+    private float read(long sample) {
+        long position = sample * bytesPerSample;
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int index = (int) (position & CHUNK_MASK);
+        int value;
+        if (bytesPerSample == 1) {
+            value = signed ? chunk.get(index) : chunk.get(index) & 0xFF;
+        } else {
+            value = signed ? chunk.getShort(index) : chunk.getShort(index) & 0xFFFF;
+        }
+        return (value - min) * scale;
+    }
+
+    // maps samples of the file read only in chunks, each overlapping the next by a byte so no sample is split
+    private static MappedByteBuffer[] map(File file, long offset, long length, ByteOrder order) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < offset + length) {
+                throw new IOException(String.format("%s has %d bytes, header needs %d", file.getPath(), channel.size(), offset + length));
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_BITS;
+                long size = Math.min(CHUNK_MASK + 2, length - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, size);
+                chunks[i].order(order);
+            }
+            return chunks;
+        }
+    }
+
+    // returns trimmed value of a header property that must be set
+    private static String required(Properties properties, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) throw new IOException("Header has no " + key);
+        return value.trim();
+    }
+}
@@ -1,322 +1,653 @@
 package data;
 
-import org.joml.Vector3f;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
 
 /**
- * Constructs array of vertices, indices, normals and colours from given data.
+ * Constructs array of vertices, indices, normals and colours from given data.<br>
+ * An instance holds no state for any single extraction, so one instance can be shared between threads and used
+ * for many extractions. Working buffers are pooled between extractions to avoid regrowing them for every job.<br>
+ * Whole rows of cells are classified at once by a {@link CellClassifier}, which uses the Vector API when run with
+ * <code>--add-modules jdk.incubator.vector</code>.
  */
-public class MarchingCubes extends DataLoader {
-    private static final int[] edgeTable = TriangulationTable.getEdgeTable();
-    private static final int[][] triTable = TriangulationTable.getTriTable();
-    private static final ArrayList<Vector3f> normals = new ArrayList<>();
+public class MarchingCubes implements SurfaceExtractor {
+    private static final int[] cornerOffsets = TriangulationTable.getCornerOffsets();
+    private static final int[] edgeCorners = TriangulationTable.getEdgeCorners();
+    private static final int[] edgeOrigins = TriangulationTable.getEdgeOrigins();
+    private static final int[] edgeAxes = TriangulationTable.getEdgeAxes();
+    private static final int[] caseEdgeOffsets = TriangulationTable.getCaseEdgeOffsets();
+    private static final int[] caseEdges = TriangulationTable.getCaseEdges();
+    private static final int[] triangleOffsets = TriangulationTable.getTriangleOffsets();
+    private static final int[] triangleSlots = TriangulationTable.getTriangleSlots();
+    private static final CellClassifier classifier = CellClassifier.create();
+    // number of rows of cells along the y-axis walked for each x before moving to the next x
+    private static final int TILE_SIZE = 16;
+
+    private static final Counter cellsVisited = Metrics.counter("extract.cellsVisited");
+    private static final Counter cellsSkipped = Metrics.counter("extract.cellsSkipped");
+    private static final Counter trianglesEmitted = Metrics.counter("extract.triangles");
+    private static final Counter verticesEmitted = Metrics.counter("extract.vertices");
+    private static final Counter surfaceCellsWalked = Metrics.counter("extract.surfaceCellsWalked");
+    private static final Histogram polygoniseTime = Metrics.histogram("extract.polygoniseTime");
+    private static final Histogram normalsTime = Metrics.histogram("extract.normalsTime");
+    private static final Histogram copyTime = Metrics.histogram("extract.copyTime");
+
+    private final ArrayBlockingQueue<Extraction> pool;
 
-    private static final ArrayList<Triangle> triangles = new ArrayList<>();
+    /**
+     * Creates Marching Cubes engine keeping a working buffer for each available processor.
+     */
+    public MarchingCubes() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates Marching Cubes engine.
+     *
+     * @param poolSize maximum number of idle working buffers kept between extractions
+     */
+    public MarchingCubes(int poolSize) {
+        pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    /**
+     * Generates mesh from given volume.<br>
+     * Scans every cell of the volume, or only the surface connected to the seed voxel if one is set in the parameters.
+     * Without a seed, the volume is extracted in two parallel passes if enabled in the parameters.
+     *
+     * @param volume     volume to construct vertices of mesh from
+     * @param parameters parameters of the extraction
+     * @return generated mesh
+     */
+    @Override
+    public MeshData generate(Volume volume, ExtractionParameters parameters) {
+        if (parameters.twoPass && parameters.seed == null) return generateTwoPass(volume, parameters);
+        return generate(volume, parameters, 0, volume.getHeight() - 1);
+    }
+
+    // extracts whole volume with a parallel count pass and fill pass, see TwoPassExtraction
+    private MeshData generateTwoPass(Volume volume, ExtractionParameters parameters) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        TwoPassExtraction extraction = new TwoPassExtraction(volume, parameters.isoLevel, parameters.enableColours,
+                parameters.getSpacing(volume), classifier);
+        MeshData mesh = extraction.run();
+
+        if (Metrics.ENABLED) {
+            polygoniseTime.record(System.nanoTime() - start);
+            cellsVisited.add(extraction.getCellsVisited());
+            cellsSkipped.add(extraction.getCellsSkipped());
+            trianglesEmitted.add(mesh.getTriangleCount());
+            verticesEmitted.add(mesh.getVertexCount());
+        }
+        return mesh;
+    }
 
-    private static final ArrayList<Integer> hashList = new ArrayList<>();
-    private static final Hashtable<Integer, Vertex> vertHash = new Hashtable<>();
-    private static final Hashtable<Integer, Integer> indHash = new Hashtable<>();
+    /**
+     * Generates mesh from a slab of cells of given volume.<br>
+     * Only samples in slices <code>yStart</code> to <code>yEnd</code> inclusive are read, so the rest of the
+     * volume doesn't need to be loaded yet. Vertices are positioned relative to the whole volume.
+     *
+     * @param volume     volume to construct vertices of mesh from
+     * @param parameters parameters of the extraction
+     * @param yStart     y coordinate of the first cell in the slab
+     * @param yEnd       y coordinate after the last cell in the slab
+     * @return generated mesh
+     */
+    public MeshData generate(Volume volume, ExtractionParameters parameters, int yStart, int yEnd) {
+        return extract(volume, parameters, false, extraction -> {
+            if (parameters.seed != null) {
+                extraction.generateVertices(parameters.seed[0], parameters.seed[1], parameters.seed[2]);
+            } else {
+                extraction.generateVertices(yStart, yEnd);
+            }
+        });
+    }
 
     /**
-     * Brightness threshold of image.
+     * Generates mesh from a box of cells of given volume.<br>
+     * Only triangles of cells from <code>cellMin</code> up to <code>cellMax</code> are kept, but the cells one
+     * beyond each face of the box are polygonised too, so vertices on the faces get the same normals as in a mesh
+     * of the whole volume. Meshes of neighbouring boxes join without shading seams, though vertices on their shared
+     * faces are duplicated. Vertices are positioned relative to the whole volume.
+     *
+     * @param volume     volume to construct vertices of mesh from
+     * @param parameters parameters of the extraction, the seed and two pass mode are ignored
+     * @param cellMin    array of the x, y and z coordinates of the first cell in the box
+     * @param cellMax    array of the x, y and z coordinates after the last cell in the box
+     * @return generated mesh
      */
-    public static float isoLevel = 0.1f;
+    public MeshData generate(Volume volume, ExtractionParameters parameters, int[] cellMin, int[] cellMax) {
+        return extract(volume, parameters, false, extraction -> extraction.generateVertices(cellMin, cellMax));
+    }
+
     /**
-     * Enable colours for vertices, else default to white.
+     * Generates mesh from a box of cells of given volume as {@link #generate(Volume, ExtractionParameters, int[], int[])},
+     * keeping the grid edge each vertex lies on, so vertices on the faces of neighbouring boxes can be joined.
+     *
+     * @param volume     volume to construct vertices of mesh from
+     * @param parameters parameters of the extraction, the seed and two pass mode are ignored
+     * @param cellMin    array of the x, y and z coordinates of the first cell in the box
+     * @param cellMax    array of the x, y and z coordinates after the last cell in the box
+     * @return generated mesh with the edge key of each vertex, see {@link MeshData#getEdgeKeys}
      */
-    public static boolean enableColours = false;
-    private static Data[][][] data;
-    private static float max_x = 0, max_y = 0, max_z = 0;
+    MeshData generateWithEdges(Volume volume, ExtractionParameters parameters, int[] cellMin, int[] cellMax) {
+        return extract(volume, parameters, true, extraction -> extraction.generateVertices(cellMin, cellMax));
+    }
 
     /**
-     * Generate array of vertices.
+     * Returns key of a grid edge of given volume, unique to the edge and greater than 0.
      *
-     * @param in_data 3D data array to construct vertices of mesh.
+     * @param height number of samples of the volume along the y-axis
+     * @param depth  number of samples of the volume along the z-axis
+     * @param x      x coordinate of the sample the edge starts at
+     * @param y      y coordinate of the sample the edge starts at
+     * @param z      z coordinate of the sample the edge starts at
+     * @param axis   axis the edge runs along, 0 for x, 1 for y and 2 for z
+     * @return edge key
      */
-    public static void generateVertices(Data[][][] in_data) {
-        data = in_data;
-        normaliseVertices();
-
-        int vertexCount = 0;
-
-        for (int x = 0; x < data.length - 1; x++) {
-            for (int y = 0; y < data[0].length - 1; y++) {
-                for (int z = 0; z < data[0][0].length - 1; z++) {
-                    try {
-                        int edgeIndex = 0;
-                        Vector3f[] vertList = new Vector3f[12];
-                        Arrays.fill(vertList, new Vector3f(0, 0, 0));
-
-                        // defines each vertex of a cube to march over
-                        Data dp0, dp1, dp2, dp3, dp4, dp5, dp6, dp7;
-                        dp0 = data[x    ][y    ][z    ];
-                        dp1 = data[x    ][y    ][z + 1];
-                        dp2 = data[x + 1][y    ][z + 1];
-                        dp3 = data[x + 1][y    ][z    ];
-                        dp4 = data[x    ][y + 1][z    ];
-                        dp5 = data[x    ][y + 1][z + 1];
-                        dp6 = data[x + 1][y + 1][z + 1];
-                        dp7 = data[x + 1][y + 1][z    ];
-
-                        // checks each vertex for value above ISO threshold
-                        // edge index represents values of each vertex of cube
-                        // marked as 'true' if above the threshold
-                        if (dp0.val < isoLevel) edgeIndex += 1;
-                        if (dp1.val < isoLevel) edgeIndex += 2;
-                        if (dp2.val < isoLevel) edgeIndex += 4;
-                        if (dp3.val < isoLevel) edgeIndex += 8;
-                        if (dp4.val < isoLevel) edgeIndex += 16;
-                        if (dp5.val < isoLevel) edgeIndex += 32;
-                        if (dp6.val < isoLevel) edgeIndex += 64;
-                        if (dp7.val < isoLevel) edgeIndex += 128;
-
-                        // edge index can be represented as an 8-bit binary value
-                        // for each vertex that is represented as 'true' in the edge index,
-                        // find the corresponding value in the precomputed edge table and apply interpolation with connecting vertex
-                        // stores result of the interpolation in vertex list array
-                        if ((edgeTable[edgeIndex] & 1   ) == 1   ) vertList[ 0] = VertexInterpolation(dp0, dp1);
-                        if ((edgeTable[edgeIndex] & 2   ) == 2   ) vertList[ 1] = VertexInterpolation(dp1, dp2);
-                        if ((edgeTable[edgeIndex] & 4   ) == 4   ) vertList[ 2] = VertexInterpolation(dp2, dp3);
-                        if ((edgeTable[edgeIndex] & 8   ) == 8   ) vertList[ 3] = VertexInterpolation(dp3, dp0);
-                        if ((edgeTable[edgeIndex] & 16  ) == 16  ) vertList[ 4] = VertexInterpolation(dp4, dp5);
-                        if ((edgeTable[edgeIndex] & 32  ) == 32  ) vertList[ 5] = VertexInterpolation(dp5, dp6);
-                        if ((edgeTable[edgeIndex] & 64  ) == 64  ) vertList[ 6] = VertexInterpolation(dp6, dp7);
-                        if ((edgeTable[edgeIndex] & 128 ) == 128 ) vertList[ 7] = VertexInterpolation(dp7, dp4);
-                        if ((edgeTable[edgeIndex] & 256 ) == 256 ) vertList[ 8] = VertexInterpolation(dp0, dp4);
-                        if ((edgeTable[edgeIndex] & 512 ) == 512 ) vertList[ 9] = VertexInterpolation(dp1, dp5);
-                        if ((edgeTable[edgeIndex] & 1024) == 1024) vertList[10] = VertexInterpolation(dp2, dp6);
-                        if ((edgeTable[edgeIndex] & 2048) == 2048) vertList[11] = VertexInterpolation(dp3, dp7);
-
-                        ArrayList<Integer> indexList = new ArrayList<>();
-                        // iterate over the precomputed triangulation table at index of the edge index until a '-1' is found
-                        for (int i = 0; triTable[edgeIndex][i] != -1; i++) {
-                            Vector3f v = vertList[triTable[edgeIndex][i]];
-                            Vertex vertex = new Vertex(new Vector3f(v.x, v.y, v.z));
-                            vertex.colour = assignColours(x, y, z);
-
-                            int hash = vertex.pos.toString().hashCode();
-                            indexList.add(hash);
-
-                            if (indHash.get(hash) == null) {
-                                vertHash.put(hash, vertex);
-                                indHash.put(hash, vertexCount);
-                                hashList.add(hash);
-                                vertexCount++;
+    static long edgeKey(int height, int depth, int x, int y, int z, int axis) {
+        return (((long) x * height + y) * depth + z) * 3 + axis + 1;
+    }
+
+    // runs an extraction with pooled working buffers, generating vertices with the given walk of the volume
+    // keeps the edge key of each vertex in the mesh if asked to
+    private MeshData extract(Volume volume, ExtractionParameters parameters, boolean keepEdges, Consumer<Extraction> walk) {
+        Extraction extraction = pool.poll();
+        if (extraction == null) extraction = new Extraction();
+
+        try {
+            extraction.init(volume, parameters.isoLevel, parameters.enableColours, parameters.getSpacing(volume));
+            extraction.keepEdges = keepEdges;
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            walk.accept(extraction);
+            long polygonised = Metrics.ENABLED ? System.nanoTime() : 0;
+            extraction.calculateVertexNormals();
+            extraction.removeBorderTriangles();
+            long normalsDone = Metrics.ENABLED ? System.nanoTime() : 0;
+            MeshData mesh = extraction.toMeshData();
+
+            if (Metrics.ENABLED) {
+                polygoniseTime.record(polygonised - start);
+                normalsTime.record(normalsDone - polygonised);
+                copyTime.record(System.nanoTime() - normalsDone);
+                cellsVisited.add(extraction.cellsVisited);
+                cellsSkipped.add(extraction.cellsSkipped);
+                trianglesEmitted.add(mesh.getTriangleCount());
+                verticesEmitted.add(mesh.getVertexCount());
+            }
+            return mesh;
+        } finally {
+            extraction.clear();
+            pool.offer(extraction);
+        }
+    }
+
+    // state and working buffers of a single extraction
+    private static class Extraction {
+        private final EdgeIndexMap edgeVertices = new EdgeIndexMap(1 << 12);
+        // cells queued by the walk of a seeded extraction, keyed by cell index + 1, and the queue ring of cells
+        private final EdgeIndexMap visitedCells = new EdgeIndexMap(1 << 12);
+        private int[] queue = new int[1 << 10];
+        private int queueHead, queueSize;
+        private final float[] values = new float[8];
+        private final int[] slotVertex = new int[12];
+        // samples and flags of the rows of a tile at x and x + 1
+        private float[][] columnValues = new float[TILE_SIZE + 1][0], nextValues = new float[TILE_SIZE + 1][0];
+        private boolean[][] columnBelow = new boolean[TILE_SIZE + 1][0], nextBelow = new boolean[TILE_SIZE + 1][0];
+        // rows holding the corners of the current row of cells
+        private float[] values00, values10, values01, values11;
+        private byte[] cases = new byte[0];
+        private float[] vertices = new float[3 * 1024];
+        private float[] normals = new float[3 * 1024];
+        private float[] colours = new float[3 * 1024];
+        private int[] indices = new int[3 * 2048];
+        // triangles of cells around the box of a box extraction, only used for normals
+        private int[] borderIndices = new int[0];
+        // edge key of each vertex, only kept when joining meshes
+        private long[] vertexEdges = new long[0];
+        private boolean keepEdges;
+
+        private Volume data;
+        private float isoLevel;
+        private boolean enableColours;
+        private float max_x, max_y, max_z;
+        // spacing along each axis, applied to positions as vertices are added
+        private float sx, sy, sz;
+        private int height, depth;
+        private int vertexCount;
+        private int indexCount;
+        private int borderIndexCount;
+        // whether triangles of the current cell are kept, otherwise they are border triangles
+        private boolean keepTriangles = true;
+        private long cellsVisited;
+        private long cellsSkipped;
+
+        // sets input of the extraction
+        private void init(Volume volume, float isoLevel, boolean enableColours, float[] spacing) {
+            this.data = volume;
+            this.isoLevel = isoLevel;
+            this.enableColours = enableColours;
+            sx = spacing[0];
+            sy = spacing[1];
+            sz = spacing[2];
+            height = volume.getHeight();
+            depth = volume.getDepth();
+
+            // row buffers for classifying rows of cells, kept for later extractions of volumes as deep
+            if (cases.length < depth) {
+                for (int i = 0; i <= TILE_SIZE; i++) {
+                    columnValues[i] = new float[depth];
+                    nextValues[i] = new float[depth];
+                    columnBelow[i] = new boolean[depth];
+                    nextBelow[i] = new boolean[depth];
+                }
+                cases = new byte[depth];
+            }
+
+            // maximum x, y, z positions used to centre mesh around origin
+            max_x = volume.getWidth() - 1;
+            max_y = volume.getHeight() - 1;
+            max_z = volume.getDepth() - 1;
+        }
+
+        // empties working buffers, keeping their capacity for the next extraction
+        private void clear() {
+            edgeVertices.clear();
+            if (visitedCells.size() > 0) visitedCells.clear();
+            data = null;
+            vertexCount = 0;
+            indexCount = 0;
+            borderIndexCount = 0;
+            keepTriangles = true;
+            keepEdges = false;
+            cellsVisited = 0;
+            cellsSkipped = 0;
+        }
+
+        // generate array of vertices from every cell in a slab of the volume
+        // each row of cells along the z-axis is classified at once, only cells crossing the surface are polygonised
+        // the slab is walked in tiles of rows along the y-axis, and the rows at x + 1 of a tile are kept as the rows
+        // at x for the next x, so each row is read and classified once per tile while it is still in the cache
+        // corner values of active cells are read from the row buffers rather than the volume
+        private void generateVertices(int yStart, int yEnd) {
+            int cells = depth - 1;
+            for (int y0 = yStart; y0 < yEnd; y0 += TILE_SIZE) {
+                int rows = Math.min(TILE_SIZE, yEnd - y0) + 1;
+                classifyRows(0, y0, rows, depth, columnValues, columnBelow);
+                for (int x = 0; x < data.getWidth() - 1; x++) {
+                    classifyRows(x + 1, y0, rows, depth, nextValues, nextBelow);
+                    for (int i = 0; i < rows - 1; i++) {
+                        classifier.classifyCells(columnBelow[i], nextBelow[i], columnBelow[i + 1], nextBelow[i + 1], cells, cases);
+                        cellsVisited += cells;
+                        values00 = columnValues[i];
+                        values10 = nextValues[i];
+                        values01 = columnValues[i + 1];
+                        values11 = nextValues[i + 1];
+
+                        for (int z = 0; z < cells; z++) {
+                            int edgeIndex = cases[z] & 0xFF;
+                            if (!isSurfaceCell(edgeIndex)) {
+                                cellsSkipped++;
+                                continue;
                             }
+                            loadRowValues(z);
+                            polygoniseCase(x, y0 + i, z, edgeIndex);
+                        }
+                    }
+
+                    float[][] tempValues = columnValues; columnValues = nextValues; nextValues = tempValues;
+                    boolean[][] tempBelow = columnBelow; columnBelow = nextBelow; nextBelow = tempBelow;
+                }
+            }
+        }
 
-                            if ((i + 1) % 3 == 0) {
-                                Triangle t = new Triangle(
-                                        indHash.get(indexList.get(0)),
-                                        indHash.get(indexList.get(1)),
-                                        indHash.get(indexList.get(2)));
-                                t.normal = calculateTriangleNormals(
-                                        vertHash.get(indexList.get(0)),
-                                        vertHash.get(indexList.get(1)),
-                                        vertHash.get(indexList.get(2)));
-                                triangles.add(t);
-                                indexList.clear();
+        // generate array of vertices from the cells in a box of the volume, walked as a slab is
+        // cells one beyond each face of the box are polygonised so the normals of vertices on the faces include
+        // their triangles, but only triangles of cells inside the box are kept, along with the vertices they use
+        private void generateVertices(int[] cellMin, int[] cellMax) {
+            int xStart = Math.max(0, cellMin[0] - 1), xEnd = Math.min(data.getWidth() - 1, cellMax[0] + 1);
+            int yStart = Math.max(0, cellMin[1] - 1), yEnd = Math.min(height - 1, cellMax[1] + 1);
+            int zStart = Math.max(0, cellMin[2] - 1), zEnd = Math.min(depth - 1, cellMax[2] + 1);
+            for (int y0 = yStart; y0 < yEnd; y0 += TILE_SIZE) {
+                int rows = Math.min(TILE_SIZE, yEnd - y0) + 1;
+                classifyRows(xStart, y0, rows, zEnd + 1, columnValues, columnBelow);
+                for (int x = xStart; x < xEnd; x++) {
+                    classifyRows(x + 1, y0, rows, zEnd + 1, nextValues, nextBelow);
+                    boolean insideX = x >= cellMin[0] && x < cellMax[0];
+                    for (int i = 0; i < rows - 1; i++) {
+                        int y = y0 + i;
+                        boolean insideXY = insideX && y >= cellMin[1] && y < cellMax[1];
+                        classifier.classifyCells(columnBelow[i], nextBelow[i], columnBelow[i + 1], nextBelow[i + 1], zEnd, cases);
+                        cellsVisited += zEnd - zStart;
+                        values00 = columnValues[i];
+                        values10 = nextValues[i];
+                        values01 = columnValues[i + 1];
+                        values11 = nextValues[i + 1];
+
+                        for (int z = zStart; z < zEnd; z++) {
+                            int edgeIndex = cases[z] & 0xFF;
+                            if (!isSurfaceCell(edgeIndex)) {
+                                cellsSkipped++;
+                                continue;
                             }
+                            keepTriangles = insideXY && z >= cellMin[2] && z < cellMax[2];
+                            loadRowValues(z);
+                            polygoniseCase(x, y, z, edgeIndex);
                         }
-                    } catch (Exception e) {
-                        e.printStackTrace();
                     }
+
+                    float[][] tempValues = columnValues; columnValues = nextValues; nextValues = tempValues;
+                    boolean[][] tempBelow = columnBelow; columnBelow = nextBelow; nextBelow = tempBelow;
                 }
             }
+            keepTriangles = true;
         }
-        calculateVertexNormals();
-    }
 
-    // interpolates position between vertex pair based off values
-    private static Vector3f VertexInterpolation(Data p1, Data p2) {
-        if (p2.val < p1.val) {
-            Data temp = p1;
-            p1 = p2;
-            p2 = temp;
+        // reads rows of samples along the z-axis at x from y onwards and flags the first samples of each row that
+        // are below the ISO threshold
+        private void classifyRows(int x, int y, int rows, int samples, float[][] values, boolean[][] below) {
+            for (int i = 0; i < rows; i++) {
+                data.getRow(x, y + i, values[i]);
+                classifier.classifySamples(values[i], samples, isoLevel, below[i]);
+            }
         }
 
-        Vector3f p;
-        if (Math.abs(p1.val - p2.val) > 0.00001) {
-            float px = p1.pos.x + (p2.pos.x - p1.pos.x) / (p2.val - p1.val) * (isoLevel - p1.val);
-            float py = p1.pos.y + (p2.pos.y - p1.pos.y) / (p2.val - p1.val) * (isoLevel - p1.val);
-            float pz = p1.pos.z + (p2.pos.z - p1.pos.z) / (p2.val - p1.val) * (isoLevel - p1.val);
+        // drops border triangles once normals are calculated, along with vertices no kept triangle uses
+        // the rest keep their order and only move towards the start of the arrays, so they are moved in place
+        private void removeBorderTriangles() {
+            if (borderIndexCount == 0) return;
+            borderIndexCount = 0;
+            int[] remap = new int[vertexCount];
+            for (int i = 0; i < indexCount; i++) remap[indices[i]] = 1;
+            int count = 0;
+            for (int v = 0; v < vertexCount; v++) {
+                if (remap[v] == 0) continue;
+                System.arraycopy(vertices, v * 3, vertices, count * 3, 3);
+                System.arraycopy(normals, v * 3, normals, count * 3, 3);
+                System.arraycopy(colours, v * 3, colours, count * 3, 3);
+                if (keepEdges) vertexEdges[count] = vertexEdges[v];
+                remap[v] = count++;
+            }
+            for (int i = 0; i < indexCount; i++) indices[i] = remap[indices[i]];
+            vertexCount = count;
+        }
 
-            p = new Vector3f(px, py, -pz);
-        } else {
-            p = new Vector3f(p1.pos.x, p1.pos.y, p1.pos.z);
+        // loads corner values of the cell at z from the row buffers, in the corner order of the triangulation table
+        private void loadRowValues(int z) {
+            values[0] = values00[z];
+            values[1] = values00[z + 1];
+            values[2] = values10[z + 1];
+            values[3] = values10[z];
+            values[4] = values01[z];
+            values[5] = values01[z + 1];
+            values[6] = values11[z + 1];
+            values[7] = values11[z];
         }
 
-        return p;
-    }
+        // generate array of vertices for the single surface connected to a seed voxel
+        // starting from the seed, searches outwards along the six axis directions for the nearest cell intersecting
+        // the surface, then walks neighbouring cells that intersect the surface breadth first, so only cells on that
+        // surface and the cells around them are visited
+        // visited cells are kept in a hash set and the queue is a ring of cell indices, so the memory used grows
+        // with the size of the surface rather than the volume
+        private void generateVertices(int seedX, int seedY, int seedZ) {
+            int cellsX = data.getWidth() - 1;
+            int cellsY = data.getHeight() - 1;
+            int cellsZ = data.getDepth() - 1;
+
+            // clamps seed to a valid cell position
+            int x = Math.max(0, Math.min(seedX, cellsX - 1));
+            int y = Math.max(0, Math.min(seedY, cellsY - 1));
+            int z = Math.max(0, Math.min(seedZ, cellsZ - 1));
+
+            int seedCell = findSurfaceCell(x, y, z, cellsX, cellsY, cellsZ);
+            if (seedCell < 0) {
+                System.err.printf("No surface found from seed (%d, %d, %d)%n", seedX, seedY, seedZ);
+                return;
+            }
 
-    // normalise vertices to centre around origin
-    private static void normaliseVertices() {
-        // calculate maximum x, y, z positions
-        for (Data[][] dataX : data) {
-            for (Data[] dataXY : dataX) {
-                for (Data dataXYZ : dataXY) {
-                    if (dataXYZ.pos.x > max_x) max_x = dataXYZ.pos.x;
-                    if (dataXYZ.pos.y > max_y) max_y = dataXYZ.pos.y;
-                    if (dataXYZ.pos.z > max_z) max_z = dataXYZ.pos.z;
+            // cells are marked as visited when queued so each cell is only tested once
+            visitedCells.put(seedCell + 1L, 0);
+            queueHead = 0;
+            queueSize = 0;
+            enqueue(seedCell);
+
+            long cellCount = 0;
+            while (queueSize > 0) {
+                int cell = dequeue();
+                z = cell % cellsZ;
+                y = (cell / cellsZ) % cellsY;
+                x = cell / (cellsZ * cellsY);
+
+                // cells that don't intersect the surface are not polygonised or expanded
+                if (!isSurfaceCell(cubeIndex(x, y, z))) {
+                    cellsVisited++;
+                    cellsSkipped++;
+                    continue;
                 }
+                polygoniseCell(x, y, z);
+                cellCount++;
+
+                // queues each face neighbour of the cell that hasn't already been visited
+                if (x > 0) queueCell(cell - cellsY * cellsZ);
+                if (x < cellsX - 1) queueCell(cell + cellsY * cellsZ);
+                if (y > 0) queueCell(cell - cellsZ);
+                if (y < cellsY - 1) queueCell(cell + cellsZ);
+                if (z > 0) queueCell(cell - 1);
+                if (z < cellsZ - 1) queueCell(cell + 1);
             }
+            if (Metrics.ENABLED) surfaceCellsWalked.add(cellCount);
         }
-        System.out.printf("MAX_X: %f | MAX_Y: %f | MAX_Z: %f%n", max_x, max_y, max_z);
-
-        // translate each vertex by half the negative maximum value
-        for (Data[][] dataX : data) {
-            for (Data[] dataXY : dataX) {
-                for (Data dataXYZ : dataXY) {
-                    dataXYZ.pos.x = dataXYZ.pos.x - (max_x / 2);
-                    dataXYZ.pos.y = dataXYZ.pos.y - (max_y / 2);
-                    dataXYZ.pos.z = dataXYZ.pos.z - (max_z / 2);
+
+        // returns the cell intersecting the surface nearest to the given cell along the six axis directions,
+        // testing cells one step further out in every direction at a time, -1 if none of them intersect it
+        private int findSurfaceCell(int x, int y, int z, int cellsX, int cellsY, int cellsZ) {
+            int steps = Math.max(cellsX, Math.max(cellsY, cellsZ));
+            for (int d = 0; d < steps; d++) {
+                for (int direction = 0; direction < 6; direction++) {
+                    int offset = (direction & 1) == 0 ? d : -d;
+                    int cx = direction >> 1 == 0 ? x + offset : x;
+                    int cy = direction >> 1 == 1 ? y + offset : y;
+                    int cz = direction >> 1 == 2 ? z + offset : z;
+                    if (cx < 0 || cx >= cellsX || cy < 0 || cy >= cellsY || cz < 0 || cz >= cellsZ) continue;
+                    if (isSurfaceCell(cubeIndex(cx, cy, cz))) return (cx * cellsY + cy) * cellsZ + cz;
+                    if (d == 0) break;
                 }
             }
+            return -1;
         }
-    }
-
-    // calculate normals of each vertex
-    private static Vector3f calculateTriangleNormals(Vertex vertex1, Vertex vertex2, Vertex vertex3) {
-        Vector3f v1 = new Vector3f(vertex1.pos.x, vertex1.pos.y, vertex1.pos.z);
-        Vector3f v2 = new Vector3f(vertex2.pos.x, vertex2.pos.y, vertex2.pos.z);
-        Vector3f v3 = new Vector3f(vertex3.pos.x, vertex3.pos.y, vertex3.pos.z);
 
-        Vector3f e1 = v2.sub(v1);
-        Vector3f e2 = v3.sub(v1);
+        // adds cell to queue if it has not already been visited
+        private void queueCell(int cell) {
+            long key = cell + 1L;
+            if (visitedCells.get(key) < 0) {
+                visitedCells.put(key, 0);
+                enqueue(cell);
+            }
+        }
 
-        return (e1.cross(e2)).normalize();
-    }
+        // adds cell to the back of the queue ring, doubling it when full
+        private void enqueue(int cell) {
+            if (queueSize == queue.length) {
+                int[] grown = new int[queue.length * 2];
+                int first = queue.length - queueHead;
+                System.arraycopy(queue, queueHead, grown, 0, first);
+                System.arraycopy(queue, 0, grown, first, queueHead);
+                queue = grown;
+                queueHead = 0;
+            }
+            queue[(queueHead + queueSize++) & (queue.length - 1)] = cell;
+        }
 
-    private static void calculateVertexNormals() {
-        HashMap<Integer, List<Triangle>> vertexTriangles = new HashMap<>();
+        // removes cell from the front of the queue ring
+        private int dequeue() {
+            int cell = queue[queueHead];
+            queueHead = (queueHead + 1) & (queue.length - 1);
+            queueSize--;
+            return cell;
+        }
 
-        for (Triangle t : triangles) {
-            addToVertexTriangles(vertexTriangles, t.v1, t);
-            addToVertexTriangles(vertexTriangles, t.v2, t);
-            addToVertexTriangles(vertexTriangles, t.v3, t);
+        // checks edge index for a cube that has vertices both above and below the ISO threshold
+        private boolean isSurfaceCell(int edgeIndex) {
+            return edgeIndex != 0 && edgeIndex != 255;
         }
 
-        for (Integer h : hashList) {
-            Vector3f sum = new Vector3f();
-            int count = 0;
-            List<Triangle> vTriList = vertexTriangles.get(indHash.get(h));
-            if (vTriList != null) {
-                for (Triangle t : vTriList) {
-                    sum = sum.add(t.normal);
-                    count++;
-                }
+        // checks each vertex for value above ISO threshold
+        // edge index represents values of each vertex of cube
+        // marked as 'true' if above the threshold
+        // corner values are kept for interpolating vertices of the cell
+        private int cubeIndex(int x, int y, int z) {
+            loadValues(x, y, z);
+            int edgeIndex = 0;
+            for (int i = 0; i < 8; i++) {
+                edgeIndex |= (values[i] < isoLevel ? 1 : 0) << i;
             }
-            normals.add((sum.div(count)).normalize());
+            return edgeIndex;
         }
-    }
 
-    private static void addToVertexTriangles(
-            HashMap<Integer, List<Triangle>> vertexTriangles,
-            int index,
-            Triangle t) {
-        List<Triangle> triList = vertexTriangles.computeIfAbsent(index, k -> new ArrayList<>());
-        triList.add(t);
-    }
+        // reads values of the corners of a cell
+        private void loadValues(int x, int y, int z) {
+            for (int i = 0; i < 8; i++) {
+                values[i] = data.getValue(x + cornerOffsets[i * 3], y + cornerOffsets[i * 3 + 1], z + cornerOffsets[i * 3 + 2]);
+            }
+        }
 
-    // assign colours to each vertex
-    private static Vector3f assignColours(int x, int y, int z) {
-        float r, g, b;
-        if (enableColours) {
-            r = (float) x / data.length;
-            g = (float) y / data[0].length;
-            b = (float) z / data[0][0].length;
-        } else {
-            r = 0.6f;
-            g = 0.6f;
-            b = 0.6f;
+        // march over a single cube and add its triangles to the mesh
+        private void polygoniseCell(int x, int y, int z) {
+            int edgeIndex = cubeIndex(x, y, z);
+            cellsVisited++;
+            if (!isSurfaceCell(edgeIndex)) {
+                cellsSkipped++;
+                return;
+            }
+            polygoniseCase(x, y, z, edgeIndex);
         }
-        return new Vector3f(r, g, b);
-    }
 
-    /**
-     * Returns float array of vertices.
-     *
-     * @return float array of vertices
-     */
-    public static float[] getVertices() {
-        float[] arr = new float[hashList.size() * 3];
-        for (int i = 0; i < hashList.size(); i++) {
-            arr[i * 3    ] = vertHash.get(hashList.get(i)).pos.x;
-            arr[i * 3 + 1] = vertHash.get(hashList.get(i)).pos.y;
-            arr[i * 3 + 2] = vertHash.get(hashList.get(i)).pos.z - 2;
+        // adds triangles of a cell crossing the surface, corner values must already be loaded
+        private void polygoniseCase(int x, int y, int z, int edgeIndex) {
+            // finds or interpolates the vertex on each edge the case crosses, once per edge
+            int edgeStart = caseEdgeOffsets[edgeIndex];
+            int edgeEnd = caseEdgeOffsets[edgeIndex + 1];
+            for (int e = edgeStart; e < edgeEnd; e++) {
+                slotVertex[e - edgeStart] = edgeVertex(x, y, z, caseEdges[e]);
+            }
+
+            // triangles of the case refer to the vertices by slot, wound in reverse for the renderer
+            int triangleEnd = triangleOffsets[edgeIndex + 1];
+            for (int t = triangleOffsets[edgeIndex]; t < triangleEnd; t += 3) {
+                addTriangle(slotVertex[triangleSlots[t]], slotVertex[triangleSlots[t + 1]], slotVertex[triangleSlots[t + 2]]);
+            }
         }
-        return arr;
-    }
 
-    /**
-     * Returns integer array of indices.
-     *
-     * @return integer array of indices
-     */
-    public static int[] getIndices() {
-        int[] arr = new int[triangles.size() * 3];
-        for (int i = 0; i < triangles.size(); i++) {
-            arr[i * 3    ] = triangles.get(i).v3;
-            arr[i * 3 + 1] = triangles.get(i).v2;
-            arr[i * 3 + 2] = triangles.get(i).v1;
+        // returns index of the vertex on an edge of the cell, creating it if no neighbouring cell has
+        // vertices are keyed by the grid edge, so cells sharing an edge share its vertex
+        private int edgeVertex(int x, int y, int z, int edge) {
+            int origin = edgeOrigins[edge];
+            int gx = x + cornerOffsets[origin * 3];
+            int gy = y + cornerOffsets[origin * 3 + 1];
+            int gz = z + cornerOffsets[origin * 3 + 2];
+            long key = edgeKey(height, depth, gx, gy, gz, edgeAxes[edge]);
+
+            int index = edgeVertices.get(key);
+            if (index >= 0) return index;
+
+            int c0 = edgeCorners[edge * 2];
+            int c1 = edgeCorners[edge * 2 + 1];
+            index = addVertex(x, y, z, c0, c1);
+            edgeVertices.put(key, index);
+            if (keepEdges) {
+                if (index == vertexEdges.length) vertexEdges = Arrays.copyOf(vertexEdges, Math.max(1024, index * 2));
+                vertexEdges[index] = key;
+            }
+            return index;
         }
-        return arr;
-    }
 
-    /**
-     * Returns float array of normals.
-     *
-     * @return float array of normals
-     */
-    public static float[] getNormals() {
-        float[] arr = new float[normals.size() * 3];
-        for (int i = 0; i < normals.size(); i++) {
-            arr[i * 3] = normals.get(i).x;
-            arr[i * 3 + 1] = normals.get(i).y;
-            arr[i * 3 + 2] = normals.get(i).z;
+        // interpolates position between corner pair of the cell based off values and adds vertex
+        // starts from the corner with the lower value so both cells sharing an edge get the same position
+        // positions are centred around origin and scaled by the spacing, face normals follow from the scaled positions
+        private int addVertex(int x, int y, int z, int c0, int c1) {
+            float v1 = values[c0];
+            float v2 = values[c1];
+            if (v2 < v1) {
+                int temp = c0; c0 = c1; c1 = temp;
+                float tempVal = v1; v1 = v2; v2 = tempVal;
+            }
+
+            int x1 = cornerOffsets[c0 * 3], y1 = cornerOffsets[c0 * 3 + 1], z1 = cornerOffsets[c0 * 3 + 2];
+            float px = x + x1 - max_x / 2;
+            float py = y + y1 - max_y / 2;
+            float pz = z + z1 - max_z / 2;
+            if (Math.abs(v1 - v2) > 0.00001) {
+                float mu = (isoLevel - v1) / (v2 - v1);
+                px += (cornerOffsets[c1 * 3] - x1) * mu;
+                py += (cornerOffsets[c1 * 3 + 1] - y1) * mu;
+                pz += (cornerOffsets[c1 * 3 + 2] - z1) * mu;
+            }
+
+            if (vertexCount * 3 == vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
+                normals = Arrays.copyOf(normals, normals.length * 2);
+                colours = Arrays.copyOf(colours, colours.length * 2);
+            }
+            int i = vertexCount * 3;
+            vertices[i    ] = px * sx;
+            vertices[i + 1] = py * sy;
+            vertices[i + 2] = -pz * sz - 2;
+            assignColours(x, y, z, i);
+            return vertexCount++;
         }
-        return arr;
-    }
 
-    /**
-     * Returns float array of colours.
-     *
-     * @return float array of colours
-     */
-    public static float[] getColours() {
-        float[] arr = new float[hashList.size() * 3];
-        for (int i = 0; i < hashList.size(); i++) {
-            arr[i * 3] = vertHash.get(hashList.get(i)).colour.x;
-            arr[i * 3 + 1] = vertHash.get(hashList.get(i)).colour.y;
-            arr[i * 3 + 2] = vertHash.get(hashList.get(i)).colour.z;
+        // adds triangle in reverse order for the renderer
+        // triangles of cells outside the box of a box extraction are kept apart as border triangles
+        private void addTriangle(int v1, int v2, int v3) {
+            if (keepTriangles) {
+                if (indexCount + 3 > indices.length) indices = Arrays.copyOf(indices, indices.length * 2);
+                indices[indexCount++] = v3;
+                indices[indexCount++] = v2;
+                indices[indexCount++] = v1;
+            } else {
+                if (borderIndexCount + 3 > borderIndices.length) borderIndices = Arrays.copyOf(borderIndices, Math.max(3 * 256, borderIndices.length * 2));
+                borderIndices[borderIndexCount++] = v3;
+                borderIndices[borderIndexCount++] = v2;
+                borderIndices[borderIndexCount++] = v1;
+            }
         }
-        return arr;
-    }
 
-    /**
-     * Returns width of mesh.
-     *
-     * @return width width
-     */
-    public static int getWidth() {
-        return data.length;
-    }
+        // calculate normals of each vertex from the area weighted normals of its triangles, see VertexNormals
+        // border triangles add to the normals of vertices on the faces of the box like the triangles of the box
+        private void calculateVertexNormals() {
+            Arrays.fill(normals, 0, vertexCount * 3, 0);
+            VertexNormals.accumulate(vertices, indices, indexCount, normals);
+            VertexNormals.accumulate(vertices, borderIndices, borderIndexCount, normals);
+            VertexNormals.normalise(normals, vertexCount);
+        }
 
-    /**
-     * Returns height of mesh.
-     *
-     * @return height height
-     */
-    public static int getHeight() {
-        return data[0].length;
-    }
+        // assign colours to vertex starting at given array index
+        private void assignColours(int x, int y, int z, int i) {
+            if (enableColours) {
+                colours[i    ] = (float) x / data.getWidth();
+                colours[i + 1] = (float) y / data.getHeight();
+                colours[i + 2] = (float) z / data.getDepth();
+            } else {
+                colours[i    ] = 0.6f;
+                colours[i + 1] = 0.6f;
+                colours[i + 2] = 0.6f;
+            }
+        }
 
-    /**
-     * Gets depth of mesh.
-     *
-     * @return depth depth
-     */
-    public static int getDepth() {
-        return data[0][0].length;
+        // copies working buffers into mesh arrays
+        private MeshData toMeshData() {
+            return new MeshData(
+                    Arrays.copyOf(vertices, vertexCount * 3),
+                    Arrays.copyOf(indices, indexCount),
+                    Arrays.copyOf(normals, vertexCount * 3),
+                    Arrays.copyOf(colours, vertexCount * 3),
+                    keepEdges ? Arrays.copyOf(vertexEdges, vertexCount) : null);
+        }
     }
 }
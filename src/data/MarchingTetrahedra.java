@@ -0,0 +1,360 @@
+package data;
+
+import metrics.Counter;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Constructs array of vertices, indices, normals and colours from given data using Marching Tetrahedra.<br>
+ * Each cell is split into six tetrahedra around its main diagonal (the Kuhn decomposition). Every cell is split
+ * the same way, so neighbouring cells split their shared face along the same diagonal. A tetrahedron has no
+ * ambiguous cases, so the surface is watertight and manifold without any repair, unlike the Marching Cubes table
+ * which can leave holes on ambiguous faces. The cost is about three times as many triangles.<br>
+ * The surface is only closed inside the volume. Where it reaches the faces of the volume, with samples on a face at
+ * or above the ISO level, the mesh is left open along that face. Surround the volume with a layer of samples below
+ * the ISO level if a closed mesh is needed there.<br>
+ * A vertex is created once for each edge crossing the surface, keyed by the edge, and shared by every triangle
+ * using it. Cells are processed in parallel in blocks of slices along the x-axis. The seed of the extraction
+ * parameters is ignored. An instance holds no state, so one instance can be shared between threads.
+ */
+public class MarchingTetrahedra implements SurfaceExtractor {
+    /**
+     * Number of cell slices along the x-axis in each block processed in parallel.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    // corner i of a cell is offset by (i & 1, (i >> 1) & 1, (i >> 2) & 1)
+    // each tetrahedron steps from corner 0 to corner 7 along the axes in one order, listed with positive volume
+    private static final int[][] tetrahedra = createTetrahedra();
+
+    // orderings of the corners of a tetrahedron that keep its orientation, putting one corner or pair first
+    private static final int[][] singleFirst = {{0, 1, 2, 3}, {1, 0, 3, 2}, {2, 3, 0, 1}, {3, 2, 1, 0}};
+    private static final int[][] pairFirst = new int[16][];
+
+    static {
+        pairFirst[0b0011] = new int[]{0, 1, 2, 3};
+        pairFirst[0b0101] = new int[]{0, 2, 3, 1};
+        pairFirst[0b1001] = new int[]{0, 3, 1, 2};
+        pairFirst[0b0110] = new int[]{1, 2, 0, 3};
+        pairFirst[0b1010] = new int[]{1, 3, 2, 0};
+        pairFirst[0b1100] = new int[]{2, 3, 0, 1};
+    }
+
+    private static final Counter cellsVisited = Metrics.counter("extract.cellsVisited");
+    private static final Counter cellsSkipped = Metrics.counter("extract.cellsSkipped");
+    private static final Counter trianglesEmitted = Metrics.counter("extract.triangles");
+    private static final Counter verticesEmitted = Metrics.counter("extract.vertices");
+
+    @Override
+    public MeshData generate(Volume volume, ExtractionParameters parameters) {
+        return new Extraction(volume, parameters.isoLevel, parameters.enableColours, parameters.getSpacing(volume)).run();
+    }
+
+    // lists the six tetrahedra of a cell, swapping two corners of any with negative volume
+    private static int[][] createTetrahedra() {
+        int[][] axes = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+        int[][] result = new int[6][];
+        for (int t = 0; t < 6; t++) {
+            int a = 1 << axes[t][0];
+            int b = a | 1 << axes[t][1];
+            int[] tetrahedron = {0, a, b, 7};
+            if (volume(tetrahedron) < 0) tetrahedron = new int[]{0, a, 7, b};
+            result[t] = tetrahedron;
+        }
+        return result;
+    }
+
+    // signed volume of a tetrahedron of cell corners, times six
+    private static int volume(int[] corners) {
+        int[][] d = new int[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                d[i][axis] = ((corners[i + 1] >> axis) & 1) - ((corners[0] >> axis) & 1);
+            }
+        }
+        return d[0][0] * (d[1][1] * d[2][2] - d[1][2] * d[2][1])
+                - d[0][1] * (d[1][0] * d[2][2] - d[1][2] * d[2][0])
+                + d[0][2] * (d[1][0] * d[2][1] - d[1][1] * d[2][0]);
+    }
+
+    // vertices and triangles generated by one block of cells
+    private static class Block {
+        private final EdgeIndexMap edgeVertices = new EdgeIndexMap(1024);
+        private float[] vertices = new float[3 * 256];
+        private float[] normals = new float[3 * 256];
+        private float[] colours = new float[3 * 256];
+        private int vertexCount;
+        private int vertexOffset;
+        private int[] indices = new int[3 * 512];
+        private int indexCount;
+        private long skipped;
+        // scratch arrays for the gradients at the ends of an edge
+        private final float[] gradient0 = new float[3];
+        private final float[] gradient1 = new float[3];
+
+        // appends vertex for given edge
+        private void addVertex(long edge, float px, float py, float pz, float nx, float ny, float nz, float r, float g, float b) {
+            if ((vertexCount + 1) * 3 > vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
+                normals = Arrays.copyOf(normals, normals.length * 2);
+                colours = Arrays.copyOf(colours, colours.length * 2);
+            }
+            int i = vertexCount * 3;
+            vertices[i] = px;
+            vertices[i + 1] = py;
+            vertices[i + 2] = pz;
+            normals[i] = nx;
+            normals[i + 1] = ny;
+            normals[i + 2] = nz;
+            colours[i] = r;
+            colours[i + 1] = g;
+            colours[i + 2] = b;
+            edgeVertices.put(edge, vertexCount++);
+        }
+
+        // appends triangle
+        private void addTriangle(int v0, int v1, int v2) {
+            if (indexCount + 3 > indices.length) indices = Arrays.copyOf(indices, indices.length * 2);
+            indices[indexCount++] = v0;
+            indices[indexCount++] = v1;
+            indices[indexCount++] = v2;
+        }
+    }
+
+    // state of a single extraction
+    private static class Extraction {
+        private final Volume data;
+        private final float isoLevel;
+        private final boolean enableColours;
+        private final int width, height, depth;
+        private final float max_x, max_y, max_z;
+        // spacing along each axis, applied to positions and gradients as vertices are added
+        private final float sx, sy, sz;
+        private final Block[] blocks;
+
+        private Extraction(Volume volume, float isoLevel, boolean enableColours, float[] spacing) {
+            this.data = volume;
+            this.isoLevel = isoLevel;
+            this.enableColours = enableColours;
+            sx = spacing[0];
+            sy = spacing[1];
+            sz = spacing[2];
+            width = volume.getWidth();
+            height = volume.getHeight();
+            depth = volume.getDepth();
+
+            // maximum x, y, z positions used to centre mesh around origin
+            max_x = width - 1;
+            max_y = height - 1;
+            max_z = depth - 1;
+
+            blocks = new Block[Math.max(0, (width - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+        }
+
+        // creates vertices on the edges owned by every block, numbers them in block order, then triangulates cells
+        private MeshData run() {
+            IntStream.range(0, blocks.length).parallel().forEach(this::generateVertices);
+
+            int vertexCount = 0;
+            for (Block block : blocks) {
+                block.vertexOffset = vertexCount;
+                vertexCount += block.vertexCount;
+            }
+
+            IntStream.range(0, blocks.length).parallel().forEach(this::generateTriangles);
+
+            float[] vertices = new float[vertexCount * 3];
+            float[] normals = new float[vertexCount * 3];
+            float[] colours = new float[vertexCount * 3];
+            int indexCount = 0;
+            for (Block block : blocks) indexCount += block.indexCount;
+            int[] indices = new int[indexCount];
+            int offset = 0;
+            for (Block block : blocks) {
+                System.arraycopy(block.vertices, 0, vertices, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.normals, 0, normals, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.colours, 0, colours, block.vertexOffset * 3, block.vertexCount * 3);
+                System.arraycopy(block.indices, 0, indices, offset, block.indexCount);
+                offset += block.indexCount;
+            }
+
+            if (Metrics.ENABLED) {
+                long skipped = 0;
+                for (Block block : blocks) skipped += block.skipped;
+                cellsVisited.add((long) (width - 1) * (height - 1) * (depth - 1));
+                cellsSkipped.add(skipped);
+                trianglesEmitted.add(indexCount / 3);
+                verticesEmitted.add(vertexCount);
+            }
+            return new MeshData(vertices, indices, normals, colours);
+        }
+
+        // key of the edge from sample (x, y, z) in the direction of the corner offset bits
+        private long edgeKey(int x, int y, int z, int direction) {
+            return (((long) x * height + y) * depth + z) * 8 + direction;
+        }
+
+        // block owning the edges starting in slice x
+        private int owner(int x) {
+            return Math.min(x / BLOCK_SIZE, blocks.length - 1);
+        }
+
+        // creates a vertex on each edge crossing the surface that starts in the slices of a block
+        // the last block also owns the edges starting in the last slice
+        private void generateVertices(int b) {
+            Block block = new Block();
+            blocks[b] = block;
+
+            int xEnd = b == blocks.length - 1 ? width : (b + 1) * BLOCK_SIZE;
+            for (int x = b * BLOCK_SIZE; x < xEnd; x++) {
+                for (int y = 0; y < height; y++) {
+                    for (int z = 0; z < depth; z++) {
+                        float value = data.getValue(x, y, z);
+                        boolean outside = value < isoLevel;
+                        for (int direction = 1; direction < 8; direction++) {
+                            int x1 = x + (direction & 1), y1 = y + ((direction >> 1) & 1), z1 = z + ((direction >> 2) & 1);
+                            if (x1 >= width || y1 >= height || z1 >= depth) continue;
+                            float value1 = data.getValue(x1, y1, z1);
+                            if (outside == value1 < isoLevel) continue;
+                            addVertex(block, x, y, z, value, x1, y1, z1, value1, direction);
+                        }
+                    }
+                }
+            }
+        }
+
+        // interpolates position and normal of the surface on an edge and adds vertex to the block
+        private void addVertex(Block block, int x, int y, int z, float value, int x1, int y1, int z1, float value1, int direction) {
+            float t = Math.abs(value1 - value) > 0.00001 ? (isoLevel - value) / (value1 - value) : 0.5f;
+            float px = x + (x1 - x) * t;
+            float py = y + (y1 - y) * t;
+            float pz = z + (z1 - z) * t;
+
+            // normal from the gradient of the volume, pointing up the gradient like Marching Cubes
+            // differences between samples are divided by the spacing to give the gradient in scaled space
+            float[] gradient0 = block.gradient0;
+            float[] gradient1 = block.gradient1;
+            gradient(x, y, z, gradient0);
+            gradient(x1, y1, z1, gradient1);
+            float nx = (gradient0[0] + (gradient1[0] - gradient0[0]) * t) / sx;
+            float ny = (gradient0[1] + (gradient1[1] - gradient0[1]) * t) / sy;
+            float nz = (gradient0[2] + (gradient1[2] - gradient0[2]) * t) / sz;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+
+            float r, g, b;
+            if (enableColours) {
+                r = (float) x / width;
+                g = (float) y / height;
+                b = (float) z / depth;
+            } else {
+                r = 0.6f;
+                g = 0.6f;
+                b = 0.6f;
+            }
+
+            // positions are centred around origin and scaled the same way as Marching Cubes, with z flipped
+            block.addVertex(edgeKey(x, y, z, direction),
+                    (px - max_x / 2) * sx, (py - max_y / 2) * sy, -(pz - max_z / 2) * sz - 2,
+                    nx, ny, -nz, r, g, b);
+        }
+
+        // central difference gradient of the volume at a sample, one sided at the borders
+        private void gradient(int x, int y, int z, float[] out) {
+            out[0] = data.getValue(Math.min(x + 1, width - 1), y, z) - data.getValue(Math.max(x - 1, 0), y, z);
+            out[1] = data.getValue(x, Math.min(y + 1, height - 1), z) - data.getValue(x, Math.max(y - 1, 0), z);
+            out[2] = data.getValue(x, y, Math.min(z + 1, depth - 1)) - data.getValue(x, y, Math.max(z - 1, 0));
+        }
+
+        // triangulates every tetrahedron of the cells in a block
+        private void generateTriangles(int b) {
+            Block block = blocks[b];
+            float[] values = new float[8];
+            int[] edgeVertex = new int[64];
+
+            int xEnd = Math.min((b + 1) * BLOCK_SIZE, width - 1);
+            for (int x = b * BLOCK_SIZE; x < xEnd; x++) {
+                for (int y = 0; y < height - 1; y++) {
+                    for (int z = 0; z < depth - 1; z++) {
+                        int mask = 0;
+                        for (int i = 0; i < 8; i++) {
+                            values[i] = data.getValue(x + (i & 1), y + ((i >> 1) & 1), z + ((i >> 2) & 1));
+                            if (values[i] < isoLevel) mask |= 1 << i;
+                        }
+                        if (mask == 0 || mask == 255) {
+                            block.skipped++;
+                            continue;
+                        }
+
+                        // vertices of the cell are looked up once, the tetrahedra share most edges
+                        Arrays.fill(edgeVertex, -1);
+                        for (int[] tetrahedron : tetrahedra) {
+                            polygoniseTetrahedron(block, x, y, z, mask, tetrahedron, edgeVertex);
+                        }
+                    }
+                }
+            }
+        }
+
+        // emits one triangle or a quad for a tetrahedron crossing the surface
+        // triangles face away from the corners inside the surface
+        private void polygoniseTetrahedron(Block block, int x, int y, int z, int mask, int[] tetrahedron, int[] edgeVertex) {
+            int inside = 0;
+            for (int i = 0; i < 4; i++) {
+                if ((mask >> tetrahedron[i] & 1) == 0) inside |= 1 << i;
+            }
+
+            switch (Integer.bitCount(inside)) {
+                case 1, 3 -> {
+                    // one corner is separated from the other three
+                    int single = Integer.numberOfTrailingZeros(Integer.bitCount(inside) == 1 ? inside : ~inside & 0xF);
+                    int[] order = singleFirst[single];
+                    int a = tetrahedron[order[0]];
+                    int v0 = vertex(block, x, y, z, a, tetrahedron[order[1]], edgeVertex);
+                    int v1 = vertex(block, x, y, z, a, tetrahedron[order[2]], edgeVertex);
+                    int v2 = vertex(block, x, y, z, a, tetrahedron[order[3]], edgeVertex);
+                    if (Integer.bitCount(inside) == 1) block.addTriangle(v2, v1, v0);
+                    else block.addTriangle(v0, v1, v2);
+                }
+                case 2 -> {
+                    // corners a and b are inside, c and d outside, the surface is a quad around edges ac, ad, bd, bc
+                    int[] order = pairFirst[inside];
+                    int a = tetrahedron[order[0]], b = tetrahedron[order[1]];
+                    int c = tetrahedron[order[2]], d = tetrahedron[order[3]];
+                    int v0 = vertex(block, x, y, z, a, c, edgeVertex);
+                    int v1 = vertex(block, x, y, z, a, d, edgeVertex);
+                    int v2 = vertex(block, x, y, z, b, d, edgeVertex);
+                    int v3 = vertex(block, x, y, z, b, c, edgeVertex);
+                    block.addTriangle(v2, v1, v0);
+                    block.addTriangle(v3, v2, v0);
+                }
+                default -> {
+                }
+            }
+        }
+
+        // returns global index of the vertex on the edge between two corners of cell (x, y, z)
+        // corners along a tetrahedron edge differ by added offset bits, so the lower corner is their intersection
+        private int vertex(Block block, int x, int y, int z, int corner0, int corner1, int[] edgeVertex) {
+            int slot = corner0 << 3 | corner1;
+            if (edgeVertex[slot] >= 0) return edgeVertex[slot];
+
+            int start = corner0 & corner1;
+            int direction = corner0 ^ corner1;
+            int sx = x + (start & 1);
+            Block owner = blocks[owner(sx)];
+            int index = owner.edgeVertices.get(edgeKey(sx, y + ((start >> 1) & 1), z + ((start >> 2) & 1), direction));
+            if (index < 0) throw new IllegalStateException("No vertex on edge crossing the surface");
+
+            edgeVertex[slot] = owner.vertexOffset + index;
+            edgeVertex[corner1 << 3 | corner0] = edgeVertex[slot];
+            return edgeVertex[slot];
+        }
+    }
+}
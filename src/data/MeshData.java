@@ -0,0 +1,105 @@
+package data;
+
+/**
+ * Mesh buffers produced by a surface extraction.
+ */
+public class MeshData {
+    private final float[] vertices;
+    private final int[] indices;
+    private final float[] normals;
+    private final float[] colours;
+    // grid edge of each vertex, only kept by extractions that need to join meshes
+    private final long[] edgeKeys;
+
+    /**
+     * Creates mesh data from given buffers.
+     *
+     * @param vertices float array of vertices
+     * @param indices  integer array of indices for vertices
+     * @param normals  float array of normals for vertices
+     * @param colours  float array of colours for vertices
+     */
+    public MeshData(float[] vertices, int[] indices, float[] normals, float[] colours) {
+        this(vertices, indices, normals, colours, null);
+    }
+
+    /**
+     * Creates mesh data from given buffers and the grid edge each vertex lies on.
+     *
+     * @param vertices float array of vertices
+     * @param indices  integer array of indices for vertices
+     * @param normals  float array of normals for vertices
+     * @param colours  float array of colours for vertices
+     * @param edgeKeys long array of the grid edge key of each vertex, null if not kept
+     */
+    MeshData(float[] vertices, int[] indices, float[] normals, float[] colours, long[] edgeKeys) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.normals = normals;
+        this.colours = colours;
+        this.edgeKeys = edgeKeys;
+    }
+
+    /**
+     * Returns float array of vertices.
+     *
+     * @return float array of vertices
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Returns integer array of indices.
+     *
+     * @return integer array of indices
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Returns float array of normals.
+     *
+     * @return float array of normals
+     */
+    public float[] getNormals() {
+        return normals;
+    }
+
+    /**
+     * Returns float array of colours.
+     *
+     * @return float array of colours
+     */
+    public float[] getColours() {
+        return colours;
+    }
+
+    /**
+     * Returns grid edge key of each vertex, see {@link MarchingCubes#edgeKey}.
+     *
+     * @return long array of edge keys, null if not kept by the extraction
+     */
+    long[] getEdgeKeys() {
+        return edgeKeys;
+    }
+
+    /**
+     * Returns number of vertices in mesh.
+     *
+     * @return vertex count
+     */
+    public int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    /**
+     * Returns number of triangles in mesh.
+     *
+     * @return triangle count
+     */
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+}
@@ -0,0 +1,278 @@
+package data;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Reorders the buffers of indexed triangle meshes for the post-transform vertex cache and for locality of memory
+ * access.<br>
+ * Extractors emit triangles in scan order, so a vertex is transformed again each time it comes back into use after
+ * the rest of a row of cells. Triangles are first reordered with Tom Forsyth's linear-speed vertex cache
+ * optimisation, which greedily picks the next triangle whose vertices score highest in a simulated LRU cache,
+ * favouring vertices used recently and vertices with few triangles left. Vertices are then renumbered in the order
+ * the triangles first use them, so vertex, normal and colour arrays are read front to back while drawing, by the GPU,
+ * the software renderer and exporters alike.<br>
+ * The index buffer is split into ranges of triangles which are reordered independently, several at once. Extractors
+ * emit triangles in scan order, so each range covers a compact piece of the surface and little is lost at the
+ * boundaries. Chunk meshes are small enough to be a single range. The winding of each triangle is kept.<br>
+ * Use {@link #acmr} to measure the average cache miss ratio of an index buffer before and after.
+ */
+public final class MeshOptimizer {
+    private static final Histogram optimiseTime = Metrics.histogram("mesh.optimiseTime");
+
+    /**
+     * Number of entries of the vertex cache triangles are ordered for.
+     */
+    public static final int CACHE_SIZE = 32;
+    private static final int RANGE_TRIANGLES = 1 << 16;
+    private static final int RANGE_VERTICES = 1 << 16;
+    // ranges using vertices spread wider than this keep their order rather than allocate a window that large
+    private static final int MAX_WINDOW_VERTICES = 16 * RANGE_TRIANGLES;
+
+    // weights of the Forsyth vertex score
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE = 32;
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE + 1];
+
+    static {
+        // vertices of the last triangle score the same, so the order within a triangle doesn't matter
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            CACHE_SCORES[i] = i < 3 ? LAST_TRIANGLE_SCORE
+                    : (float) Math.pow(1.0 - (double) (i - 3) / (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        for (int i = 1; i <= MAX_VALENCE; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Returns mesh with triangles reordered for the vertex cache and vertices renumbered by first use.<br>
+     * The mesh given is left unchanged. Vertices not used by any triangle are kept after the others, in their
+     * original order.
+     *
+     * @param mesh mesh to optimise
+     * @return mesh with the same triangles and vertices in optimised order
+     * @throws IllegalArgumentException if the normals or colours don't have three values for each vertex
+     */
+    public static MeshData optimise(MeshData mesh) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int[] source = mesh.getIndices();
+        int indexCount = source.length - source.length % 3;
+        int vertexCount = mesh.getVertexCount();
+        // attributes left in place while positions are renumbered would belong to the wrong vertices
+        checkLength(mesh.getNormals(), vertexCount, "normal");
+        checkLength(mesh.getColours(), vertexCount, "colour");
+        int[] indices = new int[indexCount];
+
+        int ranges = (indexCount / 3 + RANGE_TRIANGLES - 1) / RANGE_TRIANGLES;
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            int first = r * RANGE_TRIANGLES * 3;
+            reorderTriangles(source, first, Math.min(indexCount, first + RANGE_TRIANGLES * 3), indices);
+        });
+
+        // numbers vertices in the order the reordered triangles first use them, unused vertices last
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indexCount; i++) {
+            if (remap[indices[i]] < 0) remap[indices[i]] = next++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] < 0) remap[v] = next++;
+        }
+
+        float[] vertices = reorderVertices(mesh.getVertices(), remap);
+        float[] normals = reorderVertices(mesh.getNormals(), remap);
+        float[] colours = reorderVertices(mesh.getColours(), remap);
+        int indexRanges = (indexCount + RANGE_TRIANGLES * 3 - 1) / (RANGE_TRIANGLES * 3);
+        IntStream.range(0, indexRanges).parallel().forEach(r -> {
+            int end = Math.min(indexCount, (r + 1) * RANGE_TRIANGLES * 3);
+            for (int i = r * RANGE_TRIANGLES * 3; i < end; i++) indices[i] = remap[indices[i]];
+        });
+
+        if (Metrics.ENABLED) optimiseTime.record(System.nanoTime() - start);
+        return new MeshData(vertices, indices, normals, colours);
+    }
+
+    /**
+     * Returns average cache miss ratio of an index buffer, the number of vertices transformed per triangle drawn
+     * through a FIFO vertex cache of given size.<br>
+     * Ranges from 3 with no reuse down to about 0.5 for large regular meshes.
+     *
+     * @param indices   integer array of indices, three for each triangle
+     * @param cacheSize number of entries of the cache
+     * @return misses per triangle, 0 for a mesh without triangles
+     */
+    public static float acmr(int[] indices, int cacheSize) {
+        int triangles = indices.length / 3;
+        if (triangles == 0) return 0;
+        int vertexCount = 0;
+        for (int i = 0; i < triangles * 3; i++) vertexCount = Math.max(vertexCount, indices[i] + 1);
+
+        // a vertex is cached while fewer than cacheSize misses have followed the miss that loaded it
+        long[] loadedAt = new long[vertexCount];
+        Arrays.fill(loadedAt, Long.MIN_VALUE / 2);
+        long misses = 0;
+        for (int i = 0; i < triangles * 3; i++) {
+            int v = indices[i];
+            if (misses - loadedAt[v] >= cacheSize) loadedAt[v] = misses++;
+        }
+        return (float) misses / triangles;
+    }
+
+    // writes the triangles of indices from index start to end into the same range of output, in vertex cache order
+    private static void reorderTriangles(int[] indices, int start, int end, int[] output) {
+        int triangleCount = (end - start) / 3;
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int i = start; i < end; i++) {
+            min = Math.min(min, indices[i]);
+            max = Math.max(max, indices[i]);
+        }
+        if (triangleCount < 2 || max - min >= MAX_WINDOW_VERTICES) {
+            System.arraycopy(indices, start, output, start, end - start);
+            return;
+        }
+
+        // numbers the vertices of the range from zero, counting the triangles using each
+        int[] local = new int[max - min + 1];
+        Arrays.fill(local, -1);
+        int[] corners = new int[end - start];
+        int vertexCount = 0;
+        for (int i = start; i < end; i++) {
+            int v = indices[i] - min;
+            if (local[v] < 0) local[v] = vertexCount++;
+            corners[i - start] = local[v];
+        }
+        int[] remaining = new int[vertexCount];
+        for (int corner : corners) remaining[corner]++;
+
+        // triangles using each vertex, the first remaining[v] of each are those not yet emitted
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) offsets[v + 1] = offsets[v] + remaining[v];
+        int[] adjacent = new int[corners.length];
+        int[] filled = new int[vertexCount];
+        for (int i = 0; i < corners.length; i++) {
+            int v = corners[i];
+            adjacent[offsets[v] + filled[v]++] = i / 3;
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScores = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) vertexScores[v] = vertexScore(-1, remaining[v]);
+        boolean[] emitted = new boolean[triangleCount];
+
+        // cache holds the vertices of the new triangle and those it pushes past the end while updating
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int best = 0;
+        int cursor = 0;
+        for (int n = 0; n < triangleCount; n++) {
+            // no triangle left around the cached vertices, continues with the next triangle in scan order
+            if (best < 0) {
+                while (emitted[cursor]) cursor++;
+                best = cursor;
+            }
+            int offset = best * 3;
+            output[start + n * 3] = indices[start + offset];
+            output[start + n * 3 + 1] = indices[start + offset + 1];
+            output[start + n * 3 + 2] = indices[start + offset + 2];
+            emitted[best] = true;
+
+            // moves the vertices of the triangle to the front of the cache, removing it from their triangles
+            int nextCount = 0;
+            for (int c = 0; c < 3; c++) {
+                int v = corners[offset + c];
+                int last = offsets[v] + --remaining[v];
+                for (int a = offsets[v]; a < last; a++) {
+                    if (adjacent[a] == best) {
+                        adjacent[a] = adjacent[last];
+                        adjacent[last] = best;
+                        break;
+                    }
+                }
+                if (!contains(nextCache, nextCount, v)) nextCache[nextCount++] = v;
+            }
+            int head = nextCount;
+            for (int i = 0; i < cacheCount; i++) {
+                if (!contains(nextCache, head, cache[i])) nextCache[nextCount++] = cache[i];
+            }
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+
+            // scores vertices at their new positions, vertices pushed out of the cache included
+            for (int i = 0; i < nextCount; i++) {
+                int v = cache[i];
+                cachePosition[v] = i < CACHE_SIZE ? i : -1;
+                vertexScores[v] = vertexScore(cachePosition[v], remaining[v]);
+            }
+
+            // the best triangle next is among those using a vertex whose score changed
+            best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < nextCount; i++) {
+                int v = cache[i];
+                for (int a = offsets[v], last = offsets[v] + remaining[v]; a < last; a++) {
+                    int t = adjacent[a];
+                    float score = vertexScores[corners[t * 3]] + vertexScores[corners[t * 3 + 1]] + vertexScores[corners[t * 3 + 2]];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = t;
+                    }
+                }
+            }
+            cacheCount = Math.min(nextCount, CACHE_SIZE);
+        }
+    }
+
+    // whether the first count entries of cache hold given vertex
+    private static boolean contains(int[] cache, int count, int vertex) {
+        for (int i = 0; i < count; i++) {
+            if (cache[i] == vertex) return true;
+        }
+        return false;
+    }
+
+    // Forsyth score of a vertex at given position of the cache, -1 if not cached, with given triangles left to emit
+    private static float vertexScore(int cachePosition, int remaining) {
+        if (remaining == 0) return -1;
+        float score = cachePosition < 0 ? 0 : CACHE_SCORES[cachePosition];
+        return score + VALENCE_SCORES[Math.min(remaining, MAX_VALENCE)];
+    }
+
+    // throws if an attribute array doesn't have three values for each vertex
+    private static void checkLength(float[] values, int vertexCount, String name) {
+        if (values.length != vertexCount * 3) {
+            throw new IllegalArgumentException(String.format("Mesh has %d %s values for %d vertices, expected %d",
+                    values.length, name, vertexCount, vertexCount * 3));
+        }
+    }
+
+    // copies three floats of each vertex to its new number, several ranges of vertices at once
+    private static float[] reorderVertices(float[] values, int[] remap) {
+        float[] reordered = new float[values.length];
+        int ranges = (remap.length + RANGE_VERTICES - 1) / RANGE_VERTICES;
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            int end = Math.min(remap.length, (r + 1) * RANGE_VERTICES);
+            for (int v = r * RANGE_VERTICES; v < end; v++) {
+                int to = remap[v] * 3, from = v * 3;
+                reordered[to] = values[from];
+                reordered[to + 1] = values[from + 1];
+                reordered[to + 2] = values[from + 2];
+            }
+        });
+        return reordered;
+    }
+}
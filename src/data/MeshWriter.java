@@ -0,0 +1,106 @@
+package data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Writes mesh data to file.
+ */
+public class MeshWriter {
+    /**
+     * Supported output formats.
+     */
+    public enum Format {
+        /**
+         * Wavefront OBJ text file with vertex normals.
+         */
+        OBJ,
+        /**
+         * Binary STL file with face normals.
+         */
+        STL
+    }
+
+    /**
+     * Writes mesh to file in given format.
+     *
+     * @param mesh   mesh to write
+     * @param file   destination file
+     * @param format output format
+     * @throws IOException if file can't be written to
+     */
+    public static void write(MeshData mesh, File file, Format format) throws IOException {
+        switch (format) {
+            case OBJ -> writeObj(mesh, file);
+            case STL -> writeStl(mesh, file);
+        }
+    }
+
+    // writes vertices, normals and faces as Wavefront OBJ
+    private static void writeObj(MeshData mesh, File file) throws IOException {
+        float[] vertices = mesh.getVertices();
+        float[] normals = mesh.getNormals();
+        int[] indices = mesh.getIndices();
+
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < vertices.length; i += 3) {
+                out.write(String.format(Locale.ROOT, "v %f %f %f%n", vertices[i], vertices[i + 1], vertices[i + 2]));
+            }
+            for (int i = 0; i < normals.length; i += 3) {
+                out.write(String.format(Locale.ROOT, "vn %f %f %f%n", normals[i], normals[i + 1], normals[i + 2]));
+            }
+            // OBJ indices start at 1
+            for (int i = 0; i < indices.length; i += 3) {
+                int a = indices[i] + 1;
+                int b = indices[i + 1] + 1;
+                int c = indices[i + 2] + 1;
+                out.write("f " + a + "//" + a + " " + b + "//" + b + " " + c + "//" + c + "\n");
+            }
+        }
+    }
+
+    // writes triangles as little endian binary STL
+    private static void writeStl(MeshData mesh, File file) throws IOException {
+        float[] vertices = mesh.getVertices();
+        int[] indices = mesh.getIndices();
+        int triangleCount = mesh.getTriangleCount();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            ByteBuffer buffer = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
+
+            // 80 byte header followed by triangle count
+            out.write(new byte[80]);
+            buffer.putInt(triangleCount);
+            out.write(buffer.array(), 0, 4);
+
+            for (int t = 0; t < triangleCount; t++) {
+                int a = indices[t * 3] * 3;
+                int b = indices[t * 3 + 1] * 3;
+                int c = indices[t * 3 + 2] * 3;
+
+                // face normal from cross product of triangle edges
+                float e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+                float e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+                float nx = e1y * e2z - e1z * e2y;
+                float ny = e1z * e2x - e1x * e2z;
+                float nz = e1x * e2y - e1y * e2x;
+                float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (length > 0) {
+                    nx /= length;
+                    ny /= length;
+                    nz /= length;
+                }
+
+                buffer.clear();
+                buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+                buffer.putFloat(vertices[a]).putFloat(vertices[a + 1]).putFloat(vertices[a + 2]);
+                buffer.putFloat(vertices[b]).putFloat(vertices[b + 1]).putFloat(vertices[b + 2]);
+                buffer.putFloat(vertices[c]).putFloat(vertices[c + 1]).putFloat(vertices[c + 2]);
+                buffer.putShort((short) 0);
+                out.write(buffer.array(), 0, 50);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package data;
+
+/**
+ * Volume storing every sample in a single primitive array, in cubic bricks of {@link BrickVolume#BRICK_SIZE}
+ * samples along each axis with the samples of each brick in Morton (Z-order).<br>
+ * Morton order interleaves the bits of the x, y and z coordinates, so samples close along any axis are close in
+ * memory. The 8 corners of a cell share at most a few cache lines, where the linear layout of
+ * {@link DenseVolume} spreads them over two slices. Only the last brick along each axis is padded, rather than
+ * the whole volume to a power of two.<br>
+ * Indices are sums of per axis offsets looked up in tables, so reading a sample costs three table lookups.
+ */
+public class MortonVolume implements Volume {
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final float[] spacing = {1, 1, 1};
+    // offset of each coordinate along each axis, the index of a sample is the sum of its offsets
+    private final int[] offsetsX, offsetsY, offsetsZ;
+    private final float[] values;
+
+    /**
+     * Creates an empty volume of given dimensions.
+     *
+     * @param width  number of samples along the x-axis
+     * @param height number of samples along the y-axis
+     * @param depth  number of samples along the z-axis
+     * @throws IllegalArgumentException if the bricked volume has too many samples for an array
+     */
+    public MortonVolume(int width, int height, int depth) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        int bricksY = (height + BrickVolume.BRICK_MASK) >> BrickVolume.BRICK_BITS;
+        int bricksZ = (depth + BrickVolume.BRICK_MASK) >> BrickVolume.BRICK_BITS;
+        long size = (long) ((width + BrickVolume.BRICK_MASK) >> BrickVolume.BRICK_BITS) * bricksY * bricksZ * BrickVolume.BRICK_SAMPLES;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("Volume of %d x %d x %d is too large", width, height, depth));
+        }
+
+        // bits of the coordinate within its brick are spread to every third bit, z lowest, then y, then x
+        offsetsX = createOffsets(width, (long) bricksY * bricksZ * BrickVolume.BRICK_SAMPLES, 2);
+        offsetsY = createOffsets(height, (long) bricksZ * BrickVolume.BRICK_SAMPLES, 1);
+        offsetsZ = createOffsets(depth, BrickVolume.BRICK_SAMPLES, 0);
+        values = new float[(int) size];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float[] getSpacing() {
+        return spacing.clone();
+    }
+
+    /**
+     * Sets distance between samples along each axis.
+     *
+     * @param spacing array of spacing along the x, y and z axes
+     */
+    public void setSpacing(float[] spacing) {
+        System.arraycopy(spacing, 0, this.spacing, 0, 3);
+    }
+
+    @Override
+    public float getValue(int x, int y, int z) {
+        return values[offsetsX[x] + offsetsY[y] + offsetsZ[z]];
+    }
+
+    @Override
+    public void getRow(int x, int y, float[] row) {
+        int base = offsetsX[x] + offsetsY[y];
+        for (int z = 0; z < depth; z++) {
+            row[z] = values[base + offsetsZ[z]];
+        }
+    }
+
+    /**
+     * Sets value of sample at given position.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     * @param value value of sample
+     */
+    public void setValue(int x, int y, int z, float value) {
+        values[offsetsX[x] + offsetsY[y] + offsetsZ[z]] = value;
+    }
+
+    // offsets of each coordinate along an axis, the brick offset plus the bits within the brick spread out
+    private static int[] createOffsets(int length, long brickStride, int shift) {
+        int[] offsets = new int[length];
+        for (int i = 0; i < length; i++) {
+            int local = i & BrickVolume.BRICK_MASK;
+            int spread = 0;
+            for (int bit = 0; bit < BrickVolume.BRICK_BITS; bit++) {
+                spread |= ((local >> bit) & 1) << (3 * bit + shift);
+            }
+            offsets[i] = (int) ((i >> BrickVolume.BRICK_BITS) * brickStride + spread);
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,31 @@
+package data;
+
+/**
+ * Cell classifier comparing one sample at a time, used when the Vector API is unavailable.
+ */
+class ScalarCellClassifier implements CellClassifier {
+    @Override
+    public void classifySamples(float[] row, int length, float isoLevel, boolean[] below) {
+        for (int z = 0; z < length; z++) {
+            below[z] = row[z] < isoLevel;
+        }
+    }
+
+    @Override
+    public void classifyCells(boolean[] below00, boolean[] below10, boolean[] below01, boolean[] below11, int cells, byte[] cases) {
+        classifyCells(below00, below10, below01, below11, 0, cells, cases);
+    }
+
+    // classifies cells from start up to end, shared with the vector classifier for cells after the last full vector
+    static void classifyCells(boolean[] below00, boolean[] below10, boolean[] below01, boolean[] below11, int start, int end, byte[] cases) {
+        for (int z = start; z < end; z++) {
+            cases[z] = (byte) (bit(below00[z]) | bit(below00[z + 1]) << 1 | bit(below10[z + 1]) << 2 | bit(below10[z]) << 3
+                    | bit(below01[z]) << 4 | bit(below01[z + 1]) << 5 | bit(below11[z + 1]) << 6 | bit(below11[z]) << 7);
+        }
+    }
+
+    // converts flag to a bit without branching
+    private static int bit(boolean flag) {
+        return flag ? 1 : 0;
+    }
+}
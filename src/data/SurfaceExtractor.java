@@ -0,0 +1,15 @@
+package data;
+
+/**
+ * Extracts a triangle mesh of the ISO surface of a volume.
+ */
+public interface SurfaceExtractor {
+    /**
+     * Generates mesh from given volume.
+     *
+     * @param volume     volume to construct vertices of mesh from
+     * @param parameters parameters of the extraction
+     * @return generated mesh
+     */
+    MeshData generate(Volume volume, ExtractionParameters parameters);
+}
@@ -0,0 +1,212 @@
+package data;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Series of volumes of the same dimensions over time, e.g. the phases of a cardiac CT, extracted with Marching
+ * Cubes one frame at a time for playback.<br>
+ * Frames are extracted in chunks by a {@link ChunkedExtraction} of a working volume. Extracting a frame copies
+ * only the rows of samples that differ from the last frame extracted into the working volume, so only the chunks
+ * they touch are extracted again and the meshes of the other chunks are reused.
+ */
+public class TimeSeries {
+    private static final Histogram frameTime = Metrics.histogram("playback.frameExtractTime");
+    private static final Counter chunksReused = Metrics.counter("playback.chunksReused");
+
+    private final Volume[] frames;
+    private final DenseVolume working;
+    private final ChunkedExtraction extraction;
+    private final float[] row;
+    private final float[] workingRow;
+
+    /**
+     * Creates time series of given frames. No frame is extracted until {@link #extract} is called.
+     *
+     * @param frames        volume of each frame, in order
+     * @param marchingCubes engine used to polygonise each chunk
+     * @param parameters    parameters of the extraction, the seed and two pass mode are ignored
+     * @param chunkSize     number of cells along each axis of a chunk
+     * @throws IllegalArgumentException if there are no frames or the frames differ in dimensions
+     */
+    public TimeSeries(Volume[] frames, MarchingCubes marchingCubes, ExtractionParameters parameters, int chunkSize) {
+        if (frames.length == 0) throw new IllegalArgumentException("Time series has no frames");
+        Volume first = frames[0];
+        for (Volume frame : frames) {
+            if (frame.getWidth() != first.getWidth() || frame.getHeight() != first.getHeight() || frame.getDepth() != first.getDepth()) {
+                throw new IllegalArgumentException(String.format("Frame of %d x %d x %d doesn't match first frame of %d x %d x %d",
+                        frame.getWidth(), frame.getHeight(), frame.getDepth(), first.getWidth(), first.getHeight(), first.getDepth()));
+            }
+        }
+        this.frames = frames.clone();
+        working = new DenseVolume(first.getWidth(), first.getHeight(), first.getDepth());
+        working.setSpacing(first.getSpacing());
+        extraction = new ChunkedExtraction(marchingCubes, working, parameters, chunkSize);
+        row = new float[first.getDepth()];
+        workingRow = new float[first.getDepth()];
+    }
+
+    /**
+     * Loads a volume for each of given sources, several at once, and creates time series of them.
+     *
+     * @param sources       source directory or raw volume file of each frame, in order
+     * @param storage       storage of each volume
+     * @param marchingCubes engine used to polygonise each chunk
+     * @param parameters    parameters of the extraction, the seed and two pass mode are ignored
+     * @param chunkSize     number of cells along each axis of a chunk
+     * @return time series of the loaded volumes
+     * @throws IOException if a volume can't be loaded or the volumes differ in dimensions
+     */
+    public static TimeSeries load(File[] sources, DataLoader.Storage storage, MarchingCubes marchingCubes,
+                                  ExtractionParameters parameters, int chunkSize) throws IOException {
+        Volume[] frames = new Volume[sources.length];
+        try {
+            IntStream.range(0, sources.length).parallel().forEach(i -> {
+                try {
+                    frames[i] = DataLoader.getVolume(sources[i].getPath(), storage);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try {
+            return new TimeSeries(frames, marchingCubes, parameters, chunkSize);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns sources of the frames of a time series in given directory.
+     *
+     * @param dir directory holding a subdirectory or raw volume file for each frame
+     * @return subdirectories and raw volume files of the directory, sorted by name
+     * @throws FileNotFoundException if the directory holds no frames
+     */
+    public static File[] listFrames(String dir) throws FileNotFoundException {
+        File[] sources = new File(dir).listFiles(file -> file.isDirectory()
+                || file.isFile() && file.getName().toLowerCase(Locale.ROOT).endsWith(".raw"));
+        if (sources == null || sources.length == 0) throw new FileNotFoundException("No frames found in " + dir);
+        Arrays.sort(sources);
+        return sources;
+    }
+
+    /**
+     * Returns number of frames.
+     *
+     * @return frame count
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * Returns volume of a frame.
+     *
+     * @param index index of the frame
+     * @return volume of the frame
+     */
+    public Volume getFrame(int index) {
+        return frames[index];
+    }
+
+    /**
+     * Returns number of chunks each frame is extracted in.
+     *
+     * @return chunk count
+     */
+    public int getChunkCount() {
+        return extraction.getChunkCount();
+    }
+
+    /**
+     * Extracts mesh of a frame, reusing chunks that are unchanged since the last frame extracted.
+     *
+     * @param index index of the frame
+     * @return mesh of each chunk of the frame and the chunks extracted again
+     */
+    public synchronized Frame extract(int index) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Volume frame = frames[index];
+
+        // copies the samples between the first and last difference of each row that differs from the working
+        // volume, which reports them to the extraction as changed
+        for (int y = 0; y < working.getHeight(); y++) {
+            for (int x = 0; x < working.getWidth(); x++) {
+                frame.getRow(x, y, row);
+                working.getRow(x, y, workingRow);
+                int first = Arrays.mismatch(row, workingRow);
+                if (first < 0) continue;
+                int last = row.length - 1;
+                while (Float.floatToIntBits(row[last]) == Float.floatToIntBits(workingRow[last])) last--;
+                working.setRow(x, y, row, first, last);
+            }
+        }
+
+        int[] changed = extraction.update();
+        MeshData[] chunks = new MeshData[extraction.getChunkCount()];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = extraction.getChunk(i);
+
+        if (Metrics.ENABLED) {
+            frameTime.record(System.nanoTime() - start);
+            chunksReused.add(chunks.length - changed.length);
+        }
+        return new Frame(index, chunks, changed);
+    }
+
+    /**
+     * Mesh of a single frame in chunks.
+     */
+    public static class Frame {
+        private final int index;
+        private final MeshData[] chunks;
+        private final int[] changed;
+
+        private Frame(int index, MeshData[] chunks, int[] changed) {
+            this.index = index;
+            this.chunks = chunks;
+            this.changed = changed;
+        }
+
+        /**
+         * Returns index of the frame in the series.
+         *
+         * @return frame index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns mesh of a chunk.
+         *
+         * @param chunk index of the chunk
+         * @return mesh of the chunk
+         */
+        public MeshData getChunk(int chunk) {
+            return chunks[chunk];
+        }
+
+        /**
+         * Returns chunks extracted again for this frame, the others are unchanged since the previous frame
+         * extracted.
+         *
+         * @return indices of the changed chunks, in ascending order
+         */
+        public int[] getChanged() {
+            return changed;
+        }
+    }
+}
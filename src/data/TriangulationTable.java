@@ -1,9 +1,25 @@
 package data;
 
 /**
- * Precomputed edge table and triangulation table
+ * Precomputed edge table and triangulation table<br>
+ * Flat versions of the tables are derived once for the cell kernel of {@link MarchingCubes}. The entries for case
+ * <code>c</code> lie between offsets <code>c</code> and <code>c + 1</code> of a single array, so no case walks a
+ * row to a terminator or tests edge bits one at a time.
  */
 public class TriangulationTable {
+    // corner offsets (x, y, z) of each of the 8 cube corners, in the bit order of the case index
+    private static final int[] cornerOffsets = {
+            0, 0, 0,  0, 0, 1,  1, 0, 1,  1, 0, 0,
+            0, 1, 0,  0, 1, 1,  1, 1, 1,  1, 1, 0
+    };
+
+    // corner pair joined by each of the 12 cube edges
+    private static final int[] edgeCorners = {
+            0, 1,  1, 2,  2, 3,  3, 0,
+            4, 5,  5, 6,  6, 7,  7, 4,
+            0, 4,  1, 5,  2, 6,  3, 7
+    };
+
     private static final int[] edgeTable = {
             0x0  , 0x109, 0x203, 0x30a, 0x406, 0x50f, 0x605, 0x70c,
             0x80c, 0x905, 0xa0f, 0xb06, 0xc0a, 0xd03, 0xe09, 0xf00,
@@ -314,4 +330,134 @@ public class TriangulationTable {
     public static int[][] getTriTable() {
         return triTable;
     }
+
+    // flat tables derived from the edge table and triangulation table
+    private static final int[] edgeOrigins = new int[12];
+    private static final int[] edgeAxes = new int[12];
+    private static final int[] caseEdgeOffsets = new int[257];
+    private static final int[] caseEdges;
+    private static final int[] triangleOffsets = new int[257];
+    private static final int[] triangleEdges;
+    private static final int[] triangleSlots;
+
+    static {
+        // lowest corner and axis of each edge, so cells sharing an edge name it the same way
+        for (int edge = 0; edge < 12; edge++) {
+            int c0 = edgeCorners[edge * 2], c1 = edgeCorners[edge * 2 + 1];
+            int axis = 0;
+            while (cornerOffsets[c0 * 3 + axis] == cornerOffsets[c1 * 3 + axis]) axis++;
+            edgeOrigins[edge] = cornerOffsets[c0 * 3 + axis] < cornerOffsets[c1 * 3 + axis] ? c0 : c1;
+            edgeAxes[edge] = axis;
+        }
+
+        int edgeCount = 0;
+        int triangleCount = 0;
+        for (int c = 0; c < 256; c++) {
+            edgeCount += Integer.bitCount(edgeTable[c]);
+            while (triTable[c][triangleCount - triangleOffsets[c]] != -1) triangleCount++;
+            caseEdgeOffsets[c + 1] = edgeCount;
+            triangleOffsets[c + 1] = triangleCount;
+        }
+
+        // each case lists the edges it crosses in ascending order, triangles refer to them by slot in that list
+        caseEdges = new int[edgeCount];
+        triangleEdges = new int[triangleCount];
+        triangleSlots = new int[triangleCount];
+        int[] slots = new int[12];
+        for (int c = 0; c < 256; c++) {
+            int e = caseEdgeOffsets[c];
+            for (int edge = 0; edge < 12; edge++) {
+                if ((edgeTable[c] & (1 << edge)) == 0) continue;
+                slots[edge] = e - caseEdgeOffsets[c];
+                caseEdges[e++] = edge;
+            }
+            for (int t = triangleOffsets[c]; t < triangleOffsets[c + 1]; t++) {
+                triangleEdges[t] = triTable[c][t - triangleOffsets[c]];
+                triangleSlots[t] = slots[triangleEdges[t]];
+            }
+        }
+    }
+
+    /**
+     * Returns corner offsets, three values (x, y, z) for each corner in the bit order of the case index.
+     *
+     * @return int array of 24 corner offsets
+     */
+    public static int[] getCornerOffsets() {
+        return cornerOffsets;
+    }
+
+    /**
+     * Returns the two corners joined by each edge.
+     *
+     * @return int array of 24 corner indices
+     */
+    public static int[] getEdgeCorners() {
+        return edgeCorners;
+    }
+
+    /**
+     * Returns corner each edge starts from, the corner with the lower coordinate along the edge.
+     *
+     * @return int array of 12 corner indices
+     */
+    public static int[] getEdgeOrigins() {
+        return edgeOrigins;
+    }
+
+    /**
+     * Returns axis of each edge, 0 for x, 1 for y and 2 for z.
+     *
+     * @return int array of 12 axes
+     */
+    public static int[] getEdgeAxes() {
+        return edgeAxes;
+    }
+
+    /**
+     * Returns offset of the edges of each case in {@link #getCaseEdges()}, with a final entry for the end.
+     *
+     * @return int array of 257 offsets
+     */
+    public static int[] getCaseEdgeOffsets() {
+        return caseEdgeOffsets;
+    }
+
+    /**
+     * Returns edges crossed by each case in ascending order, packed one case after another.
+     *
+     * @return int array of edges
+     */
+    public static int[] getCaseEdges() {
+        return caseEdges;
+    }
+
+    /**
+     * Returns offset of the triangles of each case in {@link #getTriangleEdges()} and
+     * {@link #getTriangleSlots()}, with a final entry for the end. Each triangle takes three entries.
+     *
+     * @return int array of 257 offsets
+     */
+    public static int[] getTriangleOffsets() {
+        return triangleOffsets;
+    }
+
+    /**
+     * Returns edges of the triangles of each case, packed one case after another without terminators.
+     *
+     * @return int array of edges
+     */
+    public static int[] getTriangleEdges() {
+        return triangleEdges;
+    }
+
+    /**
+     * Returns edges of the triangles of each case as slots in the edge list of the case from
+     * {@link #getCaseEdges()}, packed like {@link #getTriangleEdges()}.
+     *
+     * @return int array of slots
+     */
+    public static int[] getTriangleSlots() {
+        return triangleSlots;
+    }
 }
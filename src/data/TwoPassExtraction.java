@@ -0,0 +1,345 @@
+package data;
+
+import java.util.stream.IntStream;
+
+/**
+ * Marching Cubes extraction in two passes, so the mesh arrays are allocated once at their exact size and filled
+ * in parallel.<br>
+ * The first pass counts the vertices and triangles of each block of slices along the x-axis from the case
+ * indices of its cells. Prefix sums of the counts give each block the offset of its range in the mesh arrays.
+ * The second pass fills every block's range in parallel, without locks, growing or copying. A vertex belongs to
+ * the block containing the start of its edge, so its index doesn't depend on the number of threads and the
+ * output is the same on every run.<br>
+ * Normals are calculated from the filled index buffer afterwards, see {@link VertexNormals}.
+ */
+class TwoPassExtraction {
+    /**
+     * Number of slices along the x-axis in each block.
+     */
+    static final int BLOCK_SIZE = 16;
+
+    private static final int[] cornerOffsets = TriangulationTable.getCornerOffsets();
+    private static final int[] edgeOrigins = TriangulationTable.getEdgeOrigins();
+    private static final int[] edgeAxes = TriangulationTable.getEdgeAxes();
+    private static final int[] caseEdgeOffsets = TriangulationTable.getCaseEdgeOffsets();
+    private static final int[] caseEdges = TriangulationTable.getCaseEdges();
+    private static final int[] triangleOffsets = TriangulationTable.getTriangleOffsets();
+    private static final int[] triangleSlots = TriangulationTable.getTriangleSlots();
+
+    private final Volume data;
+    private final float isoLevel;
+    private final boolean enableColours;
+    private final CellClassifier classifier;
+    private final int width, height, depth;
+    private final float max_x, max_y, max_z;
+    // spacing along each axis, applied to positions as vertices are filled
+    private final float sx, sy, sz;
+    private final int blockCount;
+
+    // per block counts after the first pass, offsets after the prefix sum
+    private final int[] blockVertices;
+    private final int[] blockTriangles;
+    private final long[] blockSkipped;
+    private final EdgeIndexMap[] edgeVertices;
+
+    private float[] vertices;
+    private float[] normals;
+    private float[] colours;
+    private int[] indices;
+
+    /**
+     * Creates two pass extraction of given volume.
+     *
+     * @param volume        volume to construct vertices of mesh from
+     * @param isoLevel      ISO level of the surface
+     * @param enableColours enable colours for vertices
+     * @param spacing       distance between samples along the x, y and z axes
+     * @param classifier    classifier for rows of cells
+     */
+    TwoPassExtraction(Volume volume, float isoLevel, boolean enableColours, float[] spacing, CellClassifier classifier) {
+        this.data = volume;
+        this.isoLevel = isoLevel;
+        this.enableColours = enableColours;
+        this.classifier = classifier;
+        width = volume.getWidth();
+        height = volume.getHeight();
+        depth = volume.getDepth();
+
+        // maximum x, y, z positions used to centre mesh around origin
+        max_x = width - 1;
+        max_y = height - 1;
+        max_z = depth - 1;
+        sx = spacing[0];
+        sy = spacing[1];
+        sz = spacing[2];
+
+        blockCount = Math.max(0, (width - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        blockVertices = new int[blockCount + 1];
+        blockTriangles = new int[blockCount + 1];
+        blockSkipped = new long[blockCount];
+        edgeVertices = new EdgeIndexMap[blockCount];
+    }
+
+    /**
+     * Runs both passes and returns the mesh.
+     *
+     * @return generated mesh
+     */
+    MeshData run() {
+        IntStream.range(0, blockCount).parallel().forEach(this::count);
+
+        // exclusive prefix sums, the last entry holds the totals
+        int vertexCount = 0;
+        int triangleCount = 0;
+        for (int b = 0; b <= blockCount; b++) {
+            int v = blockVertices[b];
+            int t = blockTriangles[b];
+            blockVertices[b] = vertexCount;
+            blockTriangles[b] = triangleCount;
+            vertexCount += v;
+            triangleCount += t;
+        }
+
+        vertices = new float[vertexCount * 3];
+        normals = new float[vertexCount * 3];
+        colours = new float[vertexCount * 3];
+        indices = new int[triangleCount * 3];
+
+        IntStream.range(0, blockCount).parallel().forEach(this::fillVertices);
+        IntStream.range(0, blockCount).parallel().forEach(this::fillTriangles);
+        VertexNormals.calculate(vertices, indices, indices.length, vertexCount, normals);
+
+        return new MeshData(vertices, indices, normals, colours);
+    }
+
+    /**
+     * Returns number of cells classified.
+     *
+     * @return cell count
+     */
+    long getCellsVisited() {
+        return (long) (width - 1) * (height - 1) * (depth - 1);
+    }
+
+    /**
+     * Returns number of cells not crossing the surface.
+     *
+     * @return skipped cell count
+     */
+    long getCellsSkipped() {
+        long skipped = 0;
+        for (long s : blockSkipped) skipped += s;
+        return skipped;
+    }
+
+    // first slice owned by a block
+    private int blockStart(int b) {
+        return b * BLOCK_SIZE;
+    }
+
+    // slice after the last slice owned by a block, the last block also owns the last slice of samples
+    private int blockEnd(int b) {
+        return b == blockCount - 1 ? width : (b + 1) * BLOCK_SIZE;
+    }
+
+    // block owning edges starting in slice x
+    private int owner(int x) {
+        return Math.min(x / BLOCK_SIZE, blockCount - 1);
+    }
+
+    // sample rows along the z-axis around a row of cells, swept along the y-axis
+    // rows are named by their offset in x and y, the upper rows become the lower rows of the next step
+    private class Rows {
+        private float[] values00 = new float[depth], values10 = new float[depth];
+        private float[] values01 = new float[depth], values11 = new float[depth];
+        private boolean[] below00 = new boolean[depth], below10 = new boolean[depth];
+        private boolean[] below01 = new boolean[depth], below11 = new boolean[depth];
+        private final byte[] cases = new byte[depth];
+
+        // reads and classifies the lower rows at (x, y)
+        private void start(int x, int y) {
+            load(x, y, values00, below00);
+            if (x + 1 < width) load(x + 1, y, values10, below10);
+        }
+
+        // reads and classifies the upper rows at (x, y + 1)
+        private void loadUpper(int x, int y) {
+            if (y + 1 >= height) return;
+            load(x, y + 1, values01, below01);
+            if (x + 1 < width) load(x + 1, y + 1, values11, below11);
+        }
+
+        // moves the upper rows down
+        private void advance() {
+            float[] values = values00; values00 = values01; values01 = values;
+            values = values10; values10 = values11; values11 = values;
+            boolean[] below = below00; below00 = below01; below01 = below;
+            below = below10; below10 = below11; below11 = below;
+        }
+
+        private void load(int x, int y, float[] values, boolean[] below) {
+            data.getRow(x, y, values);
+            classifier.classifySamples(values, depth, isoLevel, below);
+        }
+    }
+
+    // counts vertices on edges starting in the slices of a block and triangles of its cells
+    private void count(int b) {
+        Rows rows = new Rows();
+        int vertexCount = 0;
+        int triangleCount = 0;
+        long skipped = 0;
+
+        for (int x = blockStart(b); x < blockEnd(b); x++) {
+            rows.start(x, 0);
+            for (int y = 0; y < height; y++) {
+                rows.loadUpper(x, y);
+                boolean hasX = x + 1 < width, hasY = y + 1 < height;
+                for (int z = 0; z < depth; z++) {
+                    boolean below = rows.below00[z];
+                    if (hasX && below != rows.below10[z]) vertexCount++;
+                    if (hasY && below != rows.below01[z]) vertexCount++;
+                    if (z + 1 < depth && below != rows.below00[z + 1]) vertexCount++;
+                }
+
+                if (hasX && hasY) {
+                    classifier.classifyCells(rows.below00, rows.below10, rows.below01, rows.below11, depth - 1, rows.cases);
+                    for (int z = 0; z < depth - 1; z++) {
+                        int edgeIndex = rows.cases[z] & 0xFF;
+                        if (edgeIndex == 0 || edgeIndex == 255) skipped++;
+                        triangleCount += (triangleOffsets[edgeIndex + 1] - triangleOffsets[edgeIndex]) / 3;
+                    }
+                }
+                rows.advance();
+            }
+        }
+
+        blockVertices[b] = vertexCount;
+        blockTriangles[b] = triangleCount;
+        blockSkipped[b] = skipped;
+    }
+
+    // writes vertices of a block into its range of the mesh arrays and keys them by edge
+    private void fillVertices(int b) {
+        Rows rows = new Rows();
+        int end = blockVertices[b + 1];
+        EdgeIndexMap map = new EdgeIndexMap(end - blockVertices[b]);
+        edgeVertices[b] = map;
+        int index = blockVertices[b];
+
+        for (int x = blockStart(b); x < blockEnd(b); x++) {
+            rows.start(x, 0);
+            for (int y = 0; y < height; y++) {
+                rows.loadUpper(x, y);
+                boolean hasX = x + 1 < width, hasY = y + 1 < height;
+                for (int z = 0; z < depth; z++) {
+                    boolean below = rows.below00[z];
+                    float value = rows.values00[z];
+                    if (hasX && below != rows.below10[z]) index = addVertex(map, index, x, y, z, 0, value, rows.values10[z]);
+                    if (hasY && below != rows.below01[z]) index = addVertex(map, index, x, y, z, 1, value, rows.values01[z]);
+                    if (z + 1 < depth && below != rows.below00[z + 1]) index = addVertex(map, index, x, y, z, 2, value, rows.values00[z + 1]);
+                }
+                rows.advance();
+            }
+        }
+        if (index != end) throw new IllegalStateException("Vertex count changed between passes");
+    }
+
+    // interpolates vertex on the edge from sample (x, y, z) along an axis, the same way as a single pass
+    // returns next free vertex index
+    private int addVertex(EdgeIndexMap map, int index, int x, int y, int z, int axis, float v1, float v2) {
+        int dx = axis == 0 ? 1 : 0, dy = axis == 1 ? 1 : 0, dz = axis == 2 ? 1 : 0;
+        float x1 = x, y1 = y, z1 = z;
+        float sign = 1;
+        if (v2 < v1) {
+            // starts from the sample with the lower value
+            x1 += dx;
+            y1 += dy;
+            z1 += dz;
+            sign = -1;
+            float temp = v1; v1 = v2; v2 = temp;
+        }
+
+        float px = x1 - max_x / 2;
+        float py = y1 - max_y / 2;
+        float pz = z1 - max_z / 2;
+        if (Math.abs(v1 - v2) > 0.00001) {
+            float mu = (isoLevel - v1) / (v2 - v1);
+            px += sign * dx * mu;
+            py += sign * dy * mu;
+            pz += sign * dz * mu;
+        }
+
+        int i = index * 3;
+        vertices[i    ] = px * sx;
+        vertices[i + 1] = py * sy;
+        vertices[i + 2] = -pz * sz - 2;
+
+        // coloured by the first cell in scan order sharing the edge, as a single pass does
+        if (enableColours) {
+            colours[i    ] = (float) (axis == 0 ? x : Math.max(x - 1, 0)) / width;
+            colours[i + 1] = (float) (axis == 1 ? y : Math.max(y - 1, 0)) / height;
+            colours[i + 2] = (float) (axis == 2 ? z : Math.max(z - 1, 0)) / depth;
+        } else {
+            colours[i    ] = 0.6f;
+            colours[i + 1] = 0.6f;
+            colours[i + 2] = 0.6f;
+        }
+
+        map.put(edgeKey(x, y, z, axis), index);
+        return index + 1;
+    }
+
+    // key of the edge from sample (x, y, z) along an axis, the same key as a single pass uses
+    private long edgeKey(int x, int y, int z, int axis) {
+        return (((long) x * height + y) * depth + z) * 3 + axis + 1;
+    }
+
+    // writes triangles of the cells of a block into its range of the index array
+    private void fillTriangles(int b) {
+        Rows rows = new Rows();
+        int[] slotVertex = new int[12];
+        int cursor = blockTriangles[b] * 3;
+        int xEnd = Math.min(blockStart(b) + BLOCK_SIZE, width - 1);
+
+        for (int x = blockStart(b); x < xEnd; x++) {
+            rows.start(x, 0);
+            for (int y = 0; y < height - 1; y++) {
+                rows.loadUpper(x, y);
+                classifier.classifyCells(rows.below00, rows.below10, rows.below01, rows.below11, depth - 1, rows.cases);
+                for (int z = 0; z < depth - 1; z++) {
+                    int edgeIndex = rows.cases[z] & 0xFF;
+                    int triangleEnd = triangleOffsets[edgeIndex + 1];
+                    if (triangleOffsets[edgeIndex] == triangleEnd) continue;
+
+                    int edgeStart = caseEdgeOffsets[edgeIndex];
+                    for (int e = edgeStart; e < caseEdgeOffsets[edgeIndex + 1]; e++) {
+                        slotVertex[e - edgeStart] = edgeVertex(x, y, z, caseEdges[e]);
+                    }
+                    for (int t = triangleOffsets[edgeIndex]; t < triangleEnd; t += 3) {
+                        addTriangle(cursor, slotVertex[triangleSlots[t]], slotVertex[triangleSlots[t + 1]], slotVertex[triangleSlots[t + 2]]);
+                        cursor += 3;
+                    }
+                }
+                rows.advance();
+            }
+        }
+        if (cursor != blockTriangles[b + 1] * 3) throw new IllegalStateException("Triangle count changed between passes");
+    }
+
+    // returns index of the vertex on an edge of cell (x, y, z) from the block owning the edge
+    private int edgeVertex(int x, int y, int z, int edge) {
+        int origin = edgeOrigins[edge];
+        int gx = x + cornerOffsets[origin * 3];
+        int index = edgeVertices[owner(gx)].get(edgeKey(gx, y + cornerOffsets[origin * 3 + 1], z + cornerOffsets[origin * 3 + 2], edgeAxes[edge]));
+        if (index < 0) throw new IllegalStateException("No vertex on edge crossing the surface");
+        return index;
+    }
+
+    // writes triangle in reverse order for the renderer
+    private void addTriangle(int cursor, int v1, int v2, int v3) {
+        indices[cursor    ] = v3;
+        indices[cursor + 1] = v2;
+        indices[cursor + 2] = v1;
+    }
+}
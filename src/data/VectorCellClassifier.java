@@ -0,0 +1,48 @@
+package data;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Cell classifier using the Java Vector API, comparing and combining as many samples per instruction as the
+ * preferred vector size of the processor allows.<br>
+ * Needs the incubator module, added with <code>--add-modules jdk.incubator.vector</code> when compiling and
+ * running. Only loaded by name from {@link CellClassifier#create()}, so the rest of the extractor runs without it.
+ */
+class VectorCellClassifier implements CellClassifier {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public void classifySamples(float[] row, int length, float isoLevel, boolean[] below) {
+        int z = 0;
+        for (int bound = FLOATS.loopBound(length); z < bound; z += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, row, z).compare(VectorOperators.LT, isoLevel).intoArray(below, z);
+        }
+        for (; z < length; z++) {
+            below[z] = row[z] < isoLevel;
+        }
+    }
+
+    @Override
+    public void classifyCells(boolean[] below00, boolean[] below10, boolean[] below01, boolean[] below11, int cells, byte[] cases) {
+        // each corner contributes its bit where its flag is set, corners at z + 1 are read one lane further on
+        ByteVector zero = ByteVector.zero(BYTES);
+        int z = 0;
+        for (int bound = BYTES.loopBound(cells); z < bound; z += BYTES.length()) {
+            zero.blend((byte) 1, VectorMask.fromArray(BYTES, below00, z))
+                    .or(zero.blend((byte) 2, VectorMask.fromArray(BYTES, below00, z + 1)))
+                    .or(zero.blend((byte) 4, VectorMask.fromArray(BYTES, below10, z + 1)))
+                    .or(zero.blend((byte) 8, VectorMask.fromArray(BYTES, below10, z)))
+                    .or(zero.blend((byte) 16, VectorMask.fromArray(BYTES, below01, z)))
+                    .or(zero.blend((byte) 32, VectorMask.fromArray(BYTES, below01, z + 1)))
+                    .or(zero.blend((byte) 64, VectorMask.fromArray(BYTES, below11, z + 1)))
+                    .or(zero.blend((byte) 128, VectorMask.fromArray(BYTES, below11, z)))
+                    .intoArray(cases, z);
+        }
+        ScalarCellClassifier.classifyCells(below00, below10, below01, below11, z, cells, cases);
+    }
+}
@@ -0,0 +1,140 @@
+package data;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Area weighted vertex normals of indexed triangle meshes.<br>
+ * Each triangle adds the cross product of two of its edges to the normals of its vertices. The length of the
+ * cross product is twice the area of the triangle, so slivers count for less than large triangles, and
+ * degenerate triangles without area add nothing rather than a normal of no direction. Vertices used only by
+ * degenerate triangles get a fixed normal rather than NaN.<br>
+ * Large meshes are accumulated in parallel: the index buffer is split into ranges of triangles, each summed into a
+ * partial array covering only the vertices its triangles use, and the partial arrays are added in order after, so
+ * the result is the same on every run. Extractors emit triangles in scan order, so the vertices used by a range
+ * are close together and partial arrays stay small. Ranges using vertices spread too wide for a partial array are
+ * added straight into the normals in their place in that order, without the others running alongside.
+ */
+public final class VertexNormals {
+    private static final int RANGE_TRIANGLES = 1 << 16;
+    private static final int RANGE_VERTICES = 1 << 16;
+    // ranges using vertices spread wider than this are added straight into the normals while adding partial arrays
+    private static final int MAX_PARTIAL_VERTICES = 16 * RANGE_TRIANGLES;
+    // normal of vertices without area, facing the camera as normals point into the surface
+    private static final float FALLBACK_X = 0, FALLBACK_Y = 0, FALLBACK_Z = -1;
+
+    private VertexNormals() {
+    }
+
+    /**
+     * Calculates normal of each vertex from the triangles using it.
+     *
+     * @param vertices    float array of vertices
+     * @param indices     integer array of indices, three for each triangle
+     * @param indexCount  number of indices used
+     * @param vertexCount number of vertices used
+     * @param normals     float array receiving a unit normal for each vertex
+     */
+    public static void calculate(float[] vertices, int[] indices, int indexCount, int vertexCount, float[] normals) {
+        Arrays.fill(normals, 0, vertexCount * 3, 0);
+        accumulate(vertices, indices, indexCount, normals);
+        normalise(normals, vertexCount);
+    }
+
+    /**
+     * Adds the area weighted normal of each triangle to the normals of its vertices.<br>
+     * Triangles are wound as the renderer draws them, with the normal pointing into the surface.
+     *
+     * @param vertices   float array of vertices
+     * @param indices    integer array of indices, three for each triangle
+     * @param indexCount number of indices used
+     * @param normals    float array of normal sums to add to
+     */
+    public static void accumulate(float[] vertices, int[] indices, int indexCount, float[] normals) {
+        int ranges = (indexCount / 3 + RANGE_TRIANGLES - 1) / RANGE_TRIANGLES;
+        if (ranges <= 1) {
+            accumulate(vertices, indices, 0, indexCount, normals, 0);
+            return;
+        }
+
+        float[][] partials = new float[ranges][];
+        int[] firstVertices = new int[ranges];
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            int start = r * RANGE_TRIANGLES * 3;
+            int end = Math.min(indexCount, start + RANGE_TRIANGLES * 3);
+            int min = Integer.MAX_VALUE, max = -1;
+            for (int i = start; i < end; i++) {
+                min = Math.min(min, indices[i]);
+                max = Math.max(max, indices[i]);
+            }
+            if (max - min >= MAX_PARTIAL_VERTICES) return;
+            partials[r] = new float[(max - min + 1) * 3];
+            firstVertices[r] = min;
+            accumulate(vertices, indices, start, end, partials[r], min);
+        });
+
+        // adds ranges in order, so each normal is summed in the same order on every run
+        for (int r = 0; r < ranges; r++) {
+            float[] partial = partials[r];
+            if (partial == null) {
+                int start = r * RANGE_TRIANGLES * 3;
+                accumulate(vertices, indices, start, Math.min(indexCount, start + RANGE_TRIANGLES * 3), normals, 0);
+                continue;
+            }
+            int offset = firstVertices[r] * 3;
+            for (int i = 0; i < partial.length; i++) normals[offset + i] += partial[i];
+        }
+    }
+
+    /**
+     * Scales normal sums to unit length, several ranges of vertices at once.<br>
+     * Sums of zero length, from vertices used only by degenerate triangles, are replaced with a fixed normal.
+     *
+     * @param normals     float array of normal sums
+     * @param vertexCount number of vertices used
+     */
+    public static void normalise(float[] normals, int vertexCount) {
+        int ranges = (vertexCount + RANGE_VERTICES - 1) / RANGE_VERTICES;
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            int end = Math.min(vertexCount, (r + 1) * RANGE_VERTICES) * 3;
+            for (int i = r * RANGE_VERTICES * 3; i < end; i += 3) {
+                float lengthSquared = normals[i] * normals[i] + normals[i + 1] * normals[i + 1] + normals[i + 2] * normals[i + 2];
+                if (lengthSquared > 0 && lengthSquared < Float.POSITIVE_INFINITY) {
+                    float scale = (float) (1.0 / Math.sqrt(lengthSquared));
+                    normals[i    ] *= scale;
+                    normals[i + 1] *= scale;
+                    normals[i + 2] *= scale;
+                } else {
+                    normals[i    ] = FALLBACK_X;
+                    normals[i + 1] = FALLBACK_Y;
+                    normals[i + 2] = FALLBACK_Z;
+                }
+            }
+        });
+    }
+
+    // adds normals of the triangles from index start to end into sums, which start at vertex firstVertex
+    // triangles without area, or with positions that aren't finite, are skipped
+    private static void accumulate(float[] vertices, int[] indices, int start, int end, float[] sums, int firstVertex) {
+        int offset = firstVertex * 3;
+        for (int t = start; t + 2 < end; t += 3) {
+            int i1 = indices[t] * 3, i2 = indices[t + 1] * 3, i3 = indices[t + 2] * 3;
+
+            // normal from the edges of the third vertex to the second and first, the reverse of the drawn winding
+            float e1x = vertices[i2] - vertices[i3], e1y = vertices[i2 + 1] - vertices[i3 + 1], e1z = vertices[i2 + 2] - vertices[i3 + 2];
+            float e2x = vertices[i1] - vertices[i3], e2y = vertices[i1 + 1] - vertices[i3 + 1], e2z = vertices[i1 + 2] - vertices[i3 + 2];
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            float lengthSquared = nx * nx + ny * ny + nz * nz;
+            if (!(lengthSquared > 0 && lengthSquared < Float.POSITIVE_INFINITY)) continue;
+
+            i1 -= offset;
+            i2 -= offset;
+            i3 -= offset;
+            sums[i1] += nx; sums[i1 + 1] += ny; sums[i1 + 2] += nz;
+            sums[i2] += nx; sums[i2 + 1] += ny; sums[i2 + 2] += nz;
+            sums[i3] += nx; sums[i3 + 1] += ny; sums[i3 + 2] += nz;
+        }
+    }
+}
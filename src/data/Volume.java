@@ -0,0 +1,92 @@
+package data;
+
+/**
+ * Scalar volume read by the surface extractors.<br>
+ * Width runs along the x-axis of each image slice, height along the stack of slices and depth along the
+ * y-axis of each image slice.
+ */
+public interface Volume {
+    /**
+     * Returns number of samples along the x-axis.
+     *
+     * @return width of volume
+     */
+    int getWidth();
+
+    /**
+     * Returns number of samples along the y-axis (number of slices).
+     *
+     * @return height of volume
+     */
+    int getHeight();
+
+    /**
+     * Returns number of samples along the z-axis.
+     *
+     * @return depth of volume
+     */
+    int getDepth();
+
+    /**
+     * Returns value of sample at given position.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return value of sample
+     */
+    float getValue(int x, int y, int z);
+
+    /**
+     * Copies the row of samples along the z-axis at given x and y.<br>
+     * Volumes that store rows contiguously should override this with a bulk copy.
+     *
+     * @param x   x coordinate
+     * @param y   y coordinate
+     * @param row array of at least depth values to copy the row into
+     */
+    default void getRow(int x, int y, float[] row) {
+        for (int z = 0; z < getDepth(); z++) {
+            row[z] = getValue(x, y, z);
+        }
+    }
+
+    /**
+     * Returns distance between samples along each axis.<br>
+     * Extractors scale vertex positions by the spacing, so volumes with slices thicker than their pixels keep
+     * their proportions without being resampled. Samples are 1 apart along every axis unless set otherwise.
+     *
+     * @return array of spacing along the x, y and z axes
+     */
+    default float[] getSpacing() {
+        return new float[]{1, 1, 1};
+    }
+
+    /**
+     * Registers listener told about each box of samples changed after loading, e.g. so a
+     * {@link ChunkedExtraction} re-extracts the chunks an edit touches.<br>
+     * Volumes that aren't edited once loaded ignore listeners, see {@link DenseVolume} for one that is.
+     *
+     * @param listener listener to register
+     */
+    default void addEditListener(EditListener listener) {
+    }
+
+    /**
+     * Listener told about samples of a volume that have changed.
+     */
+    @FunctionalInterface
+    interface EditListener {
+        /**
+         * Called after samples of the volume have changed, on the thread that changed them.
+         *
+         * @param minX x coordinate of the first changed sample
+         * @param minY y coordinate of the first changed sample
+         * @param minZ z coordinate of the first changed sample
+         * @param maxX x coordinate of the last changed sample
+         * @param maxY y coordinate of the last changed sample
+         * @param maxZ z coordinate of the last changed sample
+         */
+        void edited(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+    }
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter that can be incremented from several threads at once.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Adds given amount to the counter.
+     *
+     * @param amount amount to add
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Returns current value of the counter.
+     *
+     * @return counter value
+     */
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,133 @@
+package metrics;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of counters and histograms for the extraction and rendering hot paths.<br>
+ * Disabled unless the JVM is started with <code>-Dmetrics.enabled=true</code>. Instrumented code checks
+ * {@link #ENABLED} before measuring anything, so the checks are removed by the JIT compiler when disabled.<br>
+ * When enabled, metrics are exposed through JMX as <code>marchingcubes:type=Metrics</code>. Setting
+ * <code>-Dmetrics.interval=&lt;seconds&gt;</code> also logs every metric periodically, to standard output or
+ * appended to the CSV file set by <code>-Dmetrics.csv=&lt;file&gt;</code>.
+ */
+public class Metrics {
+    /**
+     * Whether metrics are recorded.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("metrics.enabled");
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED) {
+            registerMBean();
+            long interval = Long.getLong("metrics.interval", 0);
+            if (interval > 0) startReporter(interval, System.getProperty("metrics.csv"));
+        }
+    }
+
+    /**
+     * Returns counter with given name, creating it if needed.
+     *
+     * @param name name of the counter
+     * @return counter
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Returns histogram with given name, creating it if needed.
+     *
+     * @param name name of the histogram
+     * @return histogram
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Returns snapshot of all counters, sorted by name.
+     *
+     * @return map of counter names to values
+     */
+    public static Map<String, Long> getCounters() {
+        TreeMap<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.get()));
+        return snapshot;
+    }
+
+    /**
+     * Returns all histograms, sorted by name.
+     *
+     * @return map of histogram names to histograms
+     */
+    public static Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    // registers metrics with the platform MBean server
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("marchingcubes:type=Metrics"));
+        } catch (Exception e) {
+            System.err.println("Failed to register metrics MBean");
+            e.printStackTrace();
+        }
+    }
+
+    // logs every metric on a daemon thread at a fixed interval
+    private static void startReporter(long intervalSeconds, String csv) {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        File csvFile = csv != null ? new File(csv) : null;
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                report(csvFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // writes one line per metric with columns time, name, count, mean, p50, p90, p99, max
+    // counters only fill the count column
+    private static void report(File csvFile) throws IOException {
+        long time = System.currentTimeMillis();
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            out.append(String.format(Locale.ROOT, "%d,%s,%d,,,,,%n", time, counter.getKey(), counter.getValue()));
+        }
+        for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+            Histogram h = entry.getValue();
+            out.append(String.format(Locale.ROOT, "%d,%s,%d,%.1f,%d,%d,%d,%d%n", time, entry.getKey(), h.getCount(),
+                    h.getMean(), h.getPercentile(0.5), h.getPercentile(0.9), h.getPercentile(0.99), h.getMax()));
+        }
+
+        if (csvFile == null) {
+            System.out.print(out);
+            return;
+        }
+        boolean header = !csvFile.exists();
+        try (Writer writer = new FileWriter(csvFile, true)) {
+            if (header) writer.write("time,name,count,mean,p50,p90,p99,max\n");
+            writer.write(out.toString());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package metrics;
+
+import javax.management.*;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Exposes metrics as JMX attributes.<br>
+ * Each counter is an attribute of its name. Each histogram has attributes for its count, mean, 50th, 90th and
+ * 99th percentiles and maximum, named by appending <code>.count</code>, <code>.mean</code>, <code>.p50</code>,
+ * <code>.p90</code>, <code>.p99</code> and <code>.max</code> to its name.
+ */
+class MetricsMBean implements DynamicMBean {
+    private static final String[] HISTOGRAM_STATS = {"count", "mean", "p50", "p90", "p99", "max"};
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long count = Metrics.getCounters().get(attribute);
+        if (count != null) return count;
+
+        int split = attribute.lastIndexOf('.');
+        if (split > 0) {
+            Histogram h = Metrics.getHistograms().get(attribute.substring(0, split));
+            if (h != null) {
+                switch (attribute.substring(split + 1)) {
+                    case "count" -> { return (double) h.getCount(); }
+                    case "mean" -> { return h.getMean(); }
+                    case "p50" -> { return (double) h.getPercentile(0.5); }
+                    case "p90" -> { return (double) h.getPercentile(0.9); }
+                    case "p99" -> { return (double) h.getPercentile(0.99); }
+                    case "max" -> { return (double) h.getMax(); }
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {
+                // attributes that don't exist are left out of the list
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : Metrics.getCounters().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "java.lang.Long", "counter", true, false, false));
+        }
+        for (Map.Entry<String, Histogram> entry : Metrics.getHistograms().entrySet()) {
+            for (String stat : HISTOGRAM_STATS) {
+                attributes.add(new MBeanAttributeInfo(entry.getKey() + "." + stat, "java.lang.Double", "histogram " + stat, true, false, false));
+            }
+        }
+        return new MBeanInfo(Metrics.class.getName(), "Extraction and rendering metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+}
@@ -0,0 +1,142 @@
+package renderEngine;
+
+import data.MeshData;
+import data.TimeSeries;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a {@link TimeSeries} in a window, with double buffered chunk meshes.<br>
+ * The next frame is extracted on a background thread while the current frame is shown. Its changed chunks are
+ * uploaded into the back buffer over as many frames as the upload budget needs, then the buffers are swapped at
+ * once, so a frame is never shown half uploaded. Chunks unchanged between frames share their mesh between both
+ * buffers and are not uploaded again.<br>
+ * Must be used from the thread owning the OpenGL context, except for extraction which runs on its own thread.
+ */
+public class FramePlayer {
+    private final TimeSeries series;
+    private final double frameInterval;
+    private final ExecutorService extractor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "frame-extract");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // chunk meshes drawn, and the chunk meshes of the next frame, sharing meshes of unchanged chunks
+    private final Mesh[] front;
+    private final Mesh[] back;
+    private Future<TimeSeries.Frame> next;
+    // frame being uploaded into the back buffer and the number of its changed chunks uploaded so far
+    private TimeSeries.Frame pending;
+    private int uploaded;
+    private int frame = -1;
+    private double shownAt;
+
+    /**
+     * Creates player and starts extracting the first frame.
+     *
+     * @param series          time series to play
+     * @param framesPerSecond maximum number of frames of the series shown each second
+     */
+    public FramePlayer(TimeSeries series, float framesPerSecond) {
+        this.series = series;
+        this.frameInterval = 1.0 / framesPerSecond;
+        front = new Mesh[series.getChunkCount()];
+        back = new Mesh[series.getChunkCount()];
+        next = extractor.submit(() -> series.extract(0));
+    }
+
+    /**
+     * Uploads chunks of the next frame once it has been extracted, and swaps it in once it has been uploaded and
+     * the current frame has been shown for its interval.
+     *
+     * @param budget maximum bytes of mesh data to upload
+     * @param time   current time in seconds
+     * @return true if a new frame was swapped in
+     */
+    public boolean process(long budget, double time) {
+        if (pending == null) {
+            if (next == null || !next.isDone()) return false;
+            pending = getNext();
+            uploaded = 0;
+            // starts extracting the following frame while this one is uploaded and shown
+            int following = (pending.getIndex() + 1) % series.getFrameCount();
+            next = series.getFrameCount() > 1 ? extractor.submit(() -> series.extract(following)) : null;
+        }
+
+        int[] changed = pending.getChanged();
+        long bytes = 0;
+        while (uploaded < changed.length && bytes < budget) {
+            int chunk = changed[uploaded++];
+            MeshData mesh = pending.getChunk(chunk);
+            back[chunk] = mesh == null || mesh.getTriangleCount() == 0 ? null
+                    : MeshLoader.createMesh(mesh.getVertices(), mesh.getIndices(), mesh.getNormals(), mesh.getColours());
+            if (mesh != null) bytes += 4L * (mesh.getVertices().length * 3 + mesh.getIndices().length);
+        }
+        if (uploaded < changed.length || frame >= 0 && time - shownAt < frameInterval) return false;
+
+        // swaps buffers, deleting meshes of the changed chunks of the frame shown until now
+        for (int chunk : changed) {
+            if (front[chunk] != null) MeshLoader.deleteMesh(front[chunk]);
+            front[chunk] = back[chunk];
+        }
+        frame = pending.getIndex();
+        pending = null;
+        shownAt = time;
+        return true;
+    }
+
+    /**
+     * Returns chunk meshes of the frame shown.
+     *
+     * @return mesh of each chunk, null for chunks without triangles
+     */
+    public Mesh[] getChunks() {
+        return front;
+    }
+
+    /**
+     * Returns index of the frame shown.
+     *
+     * @return frame index, -1 until the first frame is shown
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns number of frames in the series.
+     *
+     * @return frame count
+     */
+    public int getFrameCount() {
+        return series.getFrameCount();
+    }
+
+    /**
+     * Stops extraction and deletes meshes of both buffers.
+     */
+    public void cleanup() {
+        extractor.shutdownNow();
+        for (int chunk = 0; chunk < front.length; chunk++) {
+            if (back[chunk] != null && back[chunk] != front[chunk]) MeshLoader.deleteMesh(back[chunk]);
+            if (front[chunk] != null) MeshLoader.deleteMesh(front[chunk]);
+            front[chunk] = null;
+            back[chunk] = null;
+        }
+    }
+
+    // waits for the extracted frame, rethrowing any failure of the extraction
+    private TimeSeries.Frame getNext() {
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for frame", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Frame extraction failed", e.getCause());
+        }
+    }
+}
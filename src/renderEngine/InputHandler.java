@@ -18,6 +18,7 @@ public class InputHandler {
     private final double scaleLimitHigher = 10;
 
     private boolean rButtonDown = false;
+    private boolean eButtonDown = false;
     private boolean leftButtonDown = false;
 
     private float lastMouseX = 0;
@@ -48,19 +49,15 @@ public class InputHandler {
         this.limitX = limitX;
         this.limitY = limitY;
         this.limitZ = limitZ;
-    }
 
-    /**
-     * Updates input handler to get window inputs.
-     */
-    public void update() {
-        updateKeyPress();
-        updateMousePos();
-        updateScroll();
+        // callbacks are registered once, they update the input state as events are polled
+        registerKeyPress();
+        registerMousePos();
+        registerScroll();
     }
 
-    // update function for mouse position and button click
-    private void updateMousePos() {
+    // registers callbacks for mouse position and button click
+    private void registerMousePos() {
         // callback for mouse button click
         GLFW.glfwSetMouseButtonCallback(window, (long windowHandle, int button, int action, int mods) -> {
             if (button == GLFW.GLFW_MOUSE_BUTTON_LEFT) {
@@ -85,8 +82,8 @@ public class InputHandler {
         });
     }
 
-    // update function for keyboard inputs
-    private void updateKeyPress() {
+    // registers callback for keyboard inputs
+    private void registerKeyPress() {
         GLFW.glfwSetKeyCallback(window, new GLFWKeyCallback() {
             @Override
             public void invoke(long window, int key, int scancode, int action, int mods) {
@@ -105,6 +102,8 @@ public class InputHandler {
                         }
                         // W key toggles wireframe render of model
                         case GLFW.GLFW_KEY_W -> WindowView.renderWireframe = !WindowView.renderWireframe;
+                        // V key toggles v-sync
+                        case GLFW.GLFW_KEY_V -> WindowView.vsync = !WindowView.vsync;
                         // LEFT key translates mesh right (simulates camera moving left)
                         case GLFW.GLFW_KEY_LEFT -> {
                             if (transX + moveRate <= limitX) transX += moveRate;
@@ -133,6 +132,8 @@ public class InputHandler {
                         case GLFW.GLFW_KEY_1 -> WindowView.autoRotateX = !WindowView.autoRotateX;
                         case GLFW.GLFW_KEY_2 -> WindowView.autoRotateY = !WindowView.autoRotateY;
                         case GLFW.GLFW_KEY_3 -> WindowView.autoRotateZ = !WindowView.autoRotateZ;
+                        // E key runs the edit action of the window, see WindowView.onEdit
+                        case GLFW.GLFW_KEY_E -> eButtonDown = true;
                     }
                     // sets rButtonDown to true if R key pressed
                     rButtonDown = key == GLFW.GLFW_KEY_R;
@@ -141,8 +142,8 @@ public class InputHandler {
         });
     }
 
-    // update function for scroll movement
-    private void updateScroll() {
+    // registers callback for scroll movement
+    private void registerScroll() {
         GLFW.glfwSetScrollCallback(window, new GLFWScrollCallback() {
             @Override
             public void invoke(long window, double offsetX, double offsetY) {
@@ -212,6 +213,22 @@ public class InputHandler {
         rButtonDown = false;
     }
 
+    /**
+     * Returns true if E button is pressed.
+     *
+     * @return boolean for E button
+     */
+    public boolean getEButtonDown() {
+        return eButtonDown;
+    }
+
+    /**
+     * Resets value for eButtonDown to false.
+     */
+    public void resetEButtonDown() {
+        eButtonDown = false;
+    }
+
     /**
      * Returns rotation for x-axis.
      *
@@ -1,5 +1,8 @@
 package renderEngine;
 
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
@@ -9,6 +12,8 @@ import org.lwjgl.opengl.GL30;
  * Builds Mesh object. Sets necessary VAO, VBO and IBOs.
  */
 public class MeshLoader {
+    private static final Counter uploadBytes = Metrics.counter("upload.bytes");
+    private static final Histogram uploadTime = Metrics.histogram("upload.time");
     private static int vaoID;
 
     /**
@@ -21,15 +26,38 @@ public class MeshLoader {
      * @return new Mesh object
      */
     public static Mesh createMesh(float[] vertices, int[] indices, float[] normals, float[] colours) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         genVao();
-        genVbo(vertices, GL20.glGetAttribLocation(ShaderProgram.getProgramID(), "position"));
+        genVbo(vertices, ShaderProgram.POSITION_LOCATION);
         genIbo(indices);
-        genVbo(normals, GL20.glGetAttribLocation(ShaderProgram.getProgramID(), "normal"));
-        genVbo(colours, GL20.glGetAttribLocation(ShaderProgram.getProgramID(), "colour"));
+        genVbo(normals, ShaderProgram.NORMAL_LOCATION);
+        genVbo(colours, ShaderProgram.COLOUR_LOCATION);
+
+        if (Metrics.ENABLED) {
+            uploadTime.record(System.nanoTime() - start);
+            uploadBytes.add(4L * (vertices.length + indices.length + normals.length + colours.length));
+        }
 
         return new Mesh(vaoID, indices.length);
     }
 
+    /**
+     * Deletes vertex array object of mesh and the VBOs and IBO attached to it.
+     *
+     * @param mesh mesh to delete
+     */
+    public static void deleteMesh(Mesh mesh) {
+        GL30.glBindVertexArray(mesh.getVaoID());
+        for (int index = 0; index < 3; index++) {
+            int vbo = GL20.glGetVertexAttribi(index, GL15.GL_VERTEX_ATTRIB_ARRAY_BUFFER_BINDING);
+            if (vbo != 0) GL15.glDeleteBuffers(vbo);
+        }
+        int ibo = GL11.glGetInteger(GL15.GL_ELEMENT_ARRAY_BUFFER_BINDING);
+        if (ibo != 0) GL15.glDeleteBuffers(ibo);
+        GL30.glBindVertexArray(0);
+        GL30.glDeleteVertexArrays(mesh.getVaoID());
+    }
+
     // generates vertex array object to load VBOs and IBO onto the GPU
     private static void genVao() {
         vaoID = GL30.glGenVertexArrays();
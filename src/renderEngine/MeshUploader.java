@@ -0,0 +1,271 @@
+package renderEngine;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads mesh data to the GPU in chunks over several frames, so the window keeps responding while a large mesh
+ * arrives.<br>
+ * Worker threads copy chunks of the mesh arrays into the slots of a {@link StagingRing}. Each frame the render
+ * thread copies a limited number of ready slots into the mesh buffers with {@link #process(long)}.<br>
+ * If the driver supports buffer storage, the ring lives in a persistently mapped buffer that workers write into
+ * directly; each chunk is copied on the GPU and a fence gates reuse of its slot. Otherwise slots are off-heap
+ * buffers uploaded with <code>glBufferSubData</code>, which copies the data before returning, so slots are reused
+ * straight away.
+ */
+public class MeshUploader {
+    /**
+     * Size of each staging slot in bytes.
+     */
+    public static final int SLOT_BYTES = 4 << 20;
+    /**
+     * Number of staging slots.
+     */
+    public static final int SLOT_COUNT = 8;
+    private static final int WORKERS = 2;
+    private static final Counter uploadBytes = Metrics.counter("upload.bytes");
+    private static final Histogram uploadTime = Metrics.histogram("upload.time");
+
+    private static final StagingRing.Fences GL_FENCES = new StagingRing.Fences() {
+        @Override
+        public boolean isSignalled(long fence) {
+            int status = GL32.glClientWaitSync(fence, 0, 0);
+            return status == GL32.GL_ALREADY_SIGNALED || status == GL32.GL_CONDITION_SATISFIED;
+        }
+
+        @Override
+        public void delete(long fence) {
+            GL32.glDeleteSync(fence);
+        }
+    };
+
+    private final float[][] floatArrays;
+    private final int[] indices;
+    private final List<UploadChunk> chunks;
+    private final int[] buffers = new int[4];
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private ExecutorService executor;
+    private Future<?>[] workers;
+    private StagingRing ring;
+    private boolean persistent;
+    private int stagingBuffer;
+    private ByteBuffer staging;
+    private int vaoID;
+    private int uploaded;
+    private long startTime;
+    private Mesh mesh;
+
+    /**
+     * Creates mesh uploader. Arrays must not change until the upload has finished.
+     *
+     * @param vertices float array containing vertex coordinates
+     * @param indices  integer array containing indices constructing each polygon from given vertices
+     * @param normals  float array for normals of each vertex
+     * @param colours  float array containing colours for each vertex
+     */
+    public MeshUploader(float[] vertices, int[] indices, float[] normals, float[] colours) {
+        this.floatArrays = new float[][]{vertices, normals, colours};
+        this.indices = indices;
+        this.chunks = UploadChunk.split(new int[]{vertices.length, normals.length, colours.length, indices.length}, SLOT_BYTES);
+    }
+
+    /**
+     * Creates the mesh buffers and staging ring and starts filling the ring on worker threads.<br>
+     * Must be called on the thread owning the OpenGL context.
+     */
+    public void start() {
+        startTime = System.nanoTime();
+
+        // vertex array object with empty buffers of the final size, filled in as chunks arrive
+        vaoID = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vaoID);
+        int[] locations = {ShaderProgram.POSITION_LOCATION, ShaderProgram.NORMAL_LOCATION, ShaderProgram.COLOUR_LOCATION};
+        for (int i = 0; i < 3; i++) {
+            buffers[i] = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, buffers[i]);
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) floatArrays[i].length * UploadChunk.ELEMENT_BYTES, GL15.GL_STATIC_DRAW);
+            GL20.glVertexAttribPointer(locations[i], 3, GL11.GL_FLOAT, false, 0, GL11.GL_NONE);
+        }
+        buffers[3] = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, buffers[3]);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (long) indices.length * UploadChunk.ELEMENT_BYTES, GL15.GL_STATIC_DRAW);
+        GL30.glBindVertexArray(0);
+
+        // staging ring in persistently mapped memory if available, otherwise in off-heap memory
+        int stagingBytes = SLOT_BYTES * SLOT_COUNT;
+        persistent = GL.getCapabilities().GL_ARB_buffer_storage;
+        if (persistent) {
+            int flags = GL30.GL_MAP_WRITE_BIT | ARBBufferStorage.GL_MAP_PERSISTENT_BIT | ARBBufferStorage.GL_MAP_COHERENT_BIT;
+            stagingBuffer = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, stagingBuffer);
+            ARBBufferStorage.glBufferStorage(GL31.GL_COPY_READ_BUFFER, stagingBytes, flags);
+            staging = GL30.glMapBufferRange(GL31.GL_COPY_READ_BUFFER, 0, stagingBytes, flags);
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+            if (staging == null) throw new IllegalStateException("Could not map staging buffer");
+        } else {
+            staging = MemoryUtil.memAlloc(stagingBytes);
+        }
+        ring = new StagingRing(staging, SLOT_COUNT, SLOT_BYTES);
+
+        executor = Executors.newFixedThreadPool(WORKERS, runnable -> {
+            Thread thread = new Thread(runnable, "mesh-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers = new Future<?>[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            workers[i] = executor.submit(() -> {
+                fillChunks();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Uploads staged chunks up to the given number of bytes. Called once per frame on the render thread.
+     *
+     * @param byteBudget maximum number of bytes to upload, at least one chunk is uploaded if one is ready
+     * @return true once every chunk has been uploaded
+     */
+    public boolean process(long byteBudget) {
+        if (mesh != null) return true;
+        checkWorkers();
+        if (persistent) ring.reclaim(GL_FENCES);
+
+        long bytes = 0;
+        StagingRing.Slot slot;
+        while (bytes < byteBudget && (slot = ring.pollReady()) != null) {
+            UploadChunk chunk = slot.getChunk();
+            GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, buffers[chunk.getTarget()]);
+            if (persistent) {
+                GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, stagingBuffer);
+                GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER,
+                        slot.getOffset(), chunk.getByteOffset(), chunk.getBytes());
+                ring.retire(slot, GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0));
+            } else {
+                ByteBuffer data = slot.getBuffer();
+                data.limit(chunk.getBytes()).position(0);
+                GL15.glBufferSubData(GL31.GL_COPY_WRITE_BUFFER, chunk.getByteOffset(), data);
+                ring.retire(slot, 0);
+            }
+            bytes += chunk.getBytes();
+            uploaded++;
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        if (uploaded < chunks.size()) return false;
+
+        // copies were issued before the staging buffer is deleted, so the driver keeps it until they complete
+        mesh = new Mesh(vaoID, indices.length);
+        releaseStaging();
+        if (Metrics.ENABLED) {
+            uploadTime.record(System.nanoTime() - startTime);
+            uploadBytes.add(4L * (floatArrays[0].length + floatArrays[1].length + floatArrays[2].length + indices.length));
+        }
+        System.out.printf("Uploaded mesh in %d chunks in %.1f ms (%s)%n", chunks.size(),
+                (System.nanoTime() - startTime) / 1e6, persistent ? "persistent mapped" : "buffer sub data");
+        return true;
+    }
+
+    /**
+     * Returns fraction of chunks uploaded.
+     *
+     * @return progress from 0 to 1
+     */
+    public float getProgress() {
+        return chunks.isEmpty() ? 1f : (float) uploaded / chunks.size();
+    }
+
+    /**
+     * Returns uploaded mesh.
+     *
+     * @return mesh, null until the upload has finished
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Stops workers and frees staging memory. Mesh buffers are deleted if the upload hasn't finished.
+     */
+    public void cleanup() {
+        if (mesh != null) return;
+        releaseStaging();
+        for (int buffer : buffers) {
+            if (buffer != 0) GL15.glDeleteBuffers(buffer);
+        }
+        if (vaoID != 0) GL30.glDeleteVertexArrays(vaoID);
+    }
+
+    // fills free slots with chunks until every chunk has been claimed
+    // runs on worker threads
+    private void fillChunks() throws InterruptedException {
+        for (int i = nextChunk.getAndIncrement(); i < chunks.size(); i = nextChunk.getAndIncrement()) {
+            UploadChunk chunk = chunks.get(i);
+            StagingRing.Slot slot = ring.acquire();
+            if (chunk.getTarget() < floatArrays.length) {
+                slot.getBuffer().asFloatBuffer().put(floatArrays[chunk.getTarget()], chunk.getOffset(), chunk.getCount());
+            } else {
+                slot.getBuffer().asIntBuffer().put(indices, chunk.getOffset(), chunk.getCount());
+            }
+            ring.publish(slot, chunk);
+        }
+    }
+
+    // rethrows failure of a worker
+    private void checkWorkers() {
+        for (Future<?> worker : workers) {
+            if (!worker.isDone() || worker.isCancelled()) continue;
+            try {
+                worker.get();
+            } catch (Exception e) {
+                throw new RuntimeException("Mesh upload failed", e);
+            }
+        }
+    }
+
+    // stops workers, deletes fences and frees the staging ring
+    private void releaseStaging() {
+        if (executor != null) {
+            // workers must have stopped writing before staging memory is freed
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        if (ring != null && persistent) ring.clear(GL_FENCES);
+        ring = null;
+        if (persistent && stagingBuffer != 0) {
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, stagingBuffer);
+            GL15.glUnmapBuffer(GL31.GL_COPY_READ_BUFFER);
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+            GL15.glDeleteBuffers(stagingBuffer);
+            stagingBuffer = 0;
+        } else if (!persistent && staging != null) {
+            MemoryUtil.memFree(staging);
+        }
+        staging = null;
+    }
+}
@@ -2,10 +2,18 @@ package renderEngine;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryUtil;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,8 +23,22 @@ import static org.lwjgl.opengl.GL20.*;
  * Creates and handles the shader program for the 3D engine.
  */
 public class ShaderProgram {
-    private static int programID;
+    /**
+     * Name of the uniform block holding the projection, view, model and normal matrices, in that order.
+     */
+    public static final String MATRICES_BLOCK = "Matrices";
+    /**
+     * Number of floats in the matrices uniform block.
+     */
+    public static final int MATRICES_FLOATS = 4 * 16;
+    /**
+     * Locations of the position, normal and colour attributes, fixed by the vertex shader.
+     */
+    public static final int POSITION_LOCATION = 0, NORMAL_LOCATION = 1, COLOUR_LOCATION = 2;
+    private final int programID;
     private final Map<String, Integer> uniforms;
+    private final Map<String, Integer> uniformBlocks;
+    private final FloatBuffer matrixBuffer;
     private int vertexShaderID;
     private int fragmentShaderID;
 
@@ -46,6 +68,33 @@ public class ShaderProgram {
         System.out.println("Shader Program ID: " + programID);
 
         uniforms = new HashMap<>();
+        uniformBlocks = new HashMap<>();
+        matrixBuffer = MemoryUtil.memAllocFloat(16);
+    }
+
+    /**
+     * Reads shader code from file with given name.<br>
+     * Looks on the classpath next to this class first, then in the source directory (used when program is run
+     * from source code) and the resources directory (used when program is run from .jar file).
+     *
+     * @param name file name of the shader
+     * @return shader code as string written in GLSL
+     * @throws IOException if the shader can't be found or read
+     */
+    public static String readShader(String name) throws IOException {
+        try (InputStream in = ShaderProgram.class.getResourceAsStream(name)) {
+            if (in != null) return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        String dir = System.getProperty("user.dir");
+        Path[] paths = {
+                Path.of(dir, "src", "renderEngine", name),
+                Path.of(dir, "Resources", "Shaders", name)
+        };
+        for (Path path : paths) {
+            if (Files.exists(path)) return Files.readString(path, StandardCharsets.UTF_8);
+        }
+        throw new NoSuchFileException(name);
     }
 
     /**
@@ -53,7 +102,7 @@ public class ShaderProgram {
      *
      * @return shader program ID
      */
-    public static int getProgramID() {
+    public int getProgramID() {
         return programID;
     }
 
@@ -132,8 +181,9 @@ public class ShaderProgram {
      * Creates uniform and sets location.
      *
      * @param uniformName uniform name
+     * @return location of the uniform
      */
-    public void createUniform(String uniformName) {
+    public int createUniform(String uniformName) {
         int uniformLocation = glGetUniformLocation(programID, uniformName);
 
         if (uniformLocation < 0) {
@@ -141,6 +191,72 @@ public class ShaderProgram {
         }
 
         uniforms.put(uniformName, uniformLocation);
+        return uniformLocation;
+    }
+
+    /**
+     * Returns location of a uniform created with {@link #createUniform(String)}.<br>
+     * Locations can be resolved once and passed to the setters taking a location, avoiding a lookup every frame.
+     *
+     * @param uniformName uniform name
+     * @return location of the uniform
+     */
+    public int getUniformLocation(String uniformName) {
+        return uniforms.get(uniformName);
+    }
+
+    /**
+     * Creates uniform buffer object for a uniform block and binds it to the given binding point.
+     *
+     * @param blockName name of the uniform block
+     * @param binding   binding point of the uniform block
+     * @param size      size of the uniform block in bytes
+     * @return ID of the uniform buffer object
+     */
+    public int createUniformBlock(String blockName, int binding, int size) {
+        int blockIndex = GL31.glGetUniformBlockIndex(programID, blockName);
+
+        if (blockIndex == GL31.GL_INVALID_INDEX) {
+            throw new RuntimeException("Could not find uniform block: " + blockName);
+        }
+
+        GL31.glUniformBlockBinding(programID, blockIndex, binding);
+        int ubo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, size, GL15.GL_DYNAMIC_DRAW);
+        GL31.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, binding, ubo);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+
+        uniformBlocks.put(blockName, ubo);
+        return ubo;
+    }
+
+    /**
+     * Uploads data to a uniform buffer object, from the start of the buffer in one call.
+     *
+     * @param ubo  ID of the uniform buffer object
+     * @param data data laid out as the uniform block in std140 layout
+     */
+    public void setUniformBlock(int ubo, FloatBuffer data) {
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+        GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+    }
+
+    /**
+     * Writes projection, view, model and normal matrices into a buffer in the layout of the matrices uniform block.
+     *
+     * @param buffer       buffer of at least {@link #MATRICES_FLOATS} floats
+     * @param projection   projection matrix
+     * @param view         view matrix
+     * @param model        model matrix
+     * @param normalMatrix normal matrix of the model matrix
+     */
+    public static void putMatrices(FloatBuffer buffer, Matrix4f projection, Matrix4f view, Matrix4f model, Matrix4f normalMatrix) {
+        projection.get(0, buffer);
+        view.get(16, buffer);
+        model.get(32, buffer);
+        normalMatrix.get(48, buffer);
     }
 
     /**
@@ -150,14 +266,17 @@ public class ShaderProgram {
      * @param value       Matrix (4 float) value
      */
     public void setUniform(String uniformName, Matrix4f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer fb = stack.mallocFloat(16);
-            value.get(fb);
-            glUniformMatrix4fv(uniforms.get(uniformName), false, value.get(new float[16]));
-        } catch (Exception e) {
-            System.err.println("Failed to set uniform for: " + uniformName);
-            e.printStackTrace();
-        }
+        setUniform(uniforms.get(uniformName), value);
+    }
+
+    /**
+     * Sets uniform for Matrix4f at given location.
+     *
+     * @param location uniform location
+     * @param value    Matrix (4 float) value
+     */
+    public void setUniform(int location, Matrix4f value) {
+        glUniformMatrix4fv(location, false, value.get(0, matrixBuffer));
     }
 
     /**
@@ -167,14 +286,17 @@ public class ShaderProgram {
      * @param value       Vector (3 float) value
      */
     public void setUniform(String uniformName, Vector3f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer fb = stack.mallocFloat(12);
-            value.get(fb);
-            glUniform3f(uniforms.get(uniformName), value.x, value.y, value.z);
-        } catch (Exception e) {
-            System.err.println("Failed to set uniform for: " + uniformName);
-            e.printStackTrace();
-        }
+        setUniform(uniforms.get(uniformName), value);
+    }
+
+    /**
+     * Sets uniform for Vector3f at given location.
+     *
+     * @param location uniform location
+     * @param value    Vector (3 float) value
+     */
+    public void setUniform(int location, Vector3f value) {
+        glUniform3f(location, value.x, value.y, value.z);
     }
 
     /**
@@ -184,12 +306,17 @@ public class ShaderProgram {
      * @param value       float value
      */
     public void setUniform(String uniformName, float value) {
-        try {
-            glUniform1f(uniforms.get(uniformName), value);
-        } catch (Exception e) {
-            System.err.println("Failed to set uniform for: " + uniformName);
-            e.printStackTrace();
-        }
+        setUniform(uniforms.get(uniformName), value);
+    }
+
+    /**
+     * Sets uniform for float at given location.
+     *
+     * @param location uniform location
+     * @param value    float value
+     */
+    public void setUniform(int location, float value) {
+        glUniform1f(location, value);
     }
 
     /**
@@ -211,6 +338,11 @@ public class ShaderProgram {
      */
     public void cleanup() {
         unbind();
+        for (int ubo : uniformBlocks.values()) {
+            GL15.glDeleteBuffers(ubo);
+        }
+        uniformBlocks.clear();
+        MemoryUtil.memFree(matrixBuffer);
         if (programID != 0) {
             glDeleteProgram(programID);
         }
@@ -0,0 +1,461 @@
+package renderEngine;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a mesh into an image on the CPU, without OpenGL.<br>
+ * Uses the same transformations and Phong lighting as the vertex and fragment shaders, with a depth buffer and
+ * back face culling. Triangles with a vertex behind the near clipping plane are not drawn.<br>
+ * Each frame runs in three parallel passes: vertices are transformed in chunks, triangles are binned into the
+ * square tiles of the image they overlap, then each tile is rasterised by a single thread. Bins keep the order of
+ * the index array, so the image is the same for any number of threads.
+ */
+public class SoftwareRenderer implements AutoCloseable {
+    /**
+     * Width and height of tiles in pixels.
+     */
+    public static final int TILE_SIZE = 64;
+
+    private final int threads;
+    private final ExecutorService executor;
+    private int width;
+    private int height;
+    private BufferedImage image;
+    private int[] pixels;
+    private float[] depth;
+    private int tilesX;
+    private int tilesY;
+
+    // triangles overlapping each tile, binned separately by each thread: bins[thread][tile]
+    private int[][][] bins;
+    private int[][] binCounts;
+    private final int[] drawnCounts;
+    private final AtomicInteger nextTile = new AtomicInteger();
+    private final List<Callable<Void>> transformTasks = new ArrayList<>();
+    private final List<Callable<Void>> binTasks = new ArrayList<>();
+    private final List<Callable<Void>> rasterTasks = new ArrayList<>();
+
+    private float[] vertices;
+    private int[] indices;
+    private float[] normals;
+    private float[] colours;
+
+    // transformed vertices: screen x, y, window depth and 1/w
+    private float[] screen;
+    // vertices and normals in world space
+    private float[] world;
+    private float[] worldNormals;
+
+    private final float[] pvm = new float[16];
+    private final float[] model = new float[16];
+    private final float[] normalMatrix = new float[16];
+    private final Matrix4f pvmMatrix = new Matrix4f();
+    private final Matrix4f normalMatrix4f = new Matrix4f();
+
+    private float ambientStrength = WindowView.AMBIENT_STRENGTH;
+    private float specularStrength = WindowView.SPECULAR_STRENGTH;
+    private float lightX, lightY, lightZ;
+    private float viewX, viewY, viewZ;
+
+    /**
+     * Creates software renderer drawing into an image of given size, using a thread for each processor.
+     *
+     * @param width  width of the image in pixels
+     * @param height height of the image in pixels
+     */
+    public SoftwareRenderer(int width, int height) {
+        this(width, height, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates software renderer drawing into an image of given size.<br>
+     * With a single thread, frames are rendered on the calling thread.
+     *
+     * @param width   width of the image in pixels
+     * @param height  height of the image in pixels
+     * @param threads number of threads rendering each frame
+     */
+    public SoftwareRenderer(int width, int height, int threads) {
+        this.threads = Math.max(1, threads);
+        this.executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "software-renderer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        drawnCounts = new int[this.threads];
+
+        for (int i = 0; i < this.threads; i++) {
+            int thread = i;
+            transformTasks.add(() -> {
+                int vertexCount = vertices.length / 3;
+                transformVertices(chunkStart(vertexCount, thread), chunkStart(vertexCount, thread + 1));
+                return null;
+            });
+            binTasks.add(() -> {
+                int triangleCount = indices.length / 3;
+                binTriangles(thread, chunkStart(triangleCount, thread), chunkStart(triangleCount, thread + 1));
+                return null;
+            });
+            rasterTasks.add(() -> {
+                for (int tile = nextTile.getAndIncrement(); tile < tilesX * tilesY; tile = nextTile.getAndIncrement()) {
+                    rasteriseTile(tile);
+                }
+                return null;
+            });
+        }
+        resize(width, height);
+    }
+
+    /**
+     * Resizes image drawn into. The previous image is no longer drawn into.
+     *
+     * @param width  width of the image in pixels
+     * @param height height of the image in pixels
+     */
+    public void resize(int width, int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        depth = new float[this.width * this.height];
+
+        tilesX = (this.width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (this.height + TILE_SIZE - 1) / TILE_SIZE;
+        bins = new int[threads][tilesX * tilesY][16];
+        binCounts = new int[threads][tilesX * tilesY];
+    }
+
+    /**
+     * Sets data of mesh to render.
+     *
+     * @param vertices float array of vertices
+     * @param indices  integer array of indices for vertices
+     * @param normals  float array of normals for vertices
+     * @param colours  float array of colours for vertices
+     */
+    public void setMesh(float[] vertices, int[] indices, float[] normals, float[] colours) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.normals = normals;
+        this.colours = colours;
+
+        int vertexCount = vertices.length / 3;
+        if (screen == null || screen.length < vertexCount * 4) {
+            screen = new float[vertexCount * 4];
+            world = new float[vertexCount * 3];
+            worldNormals = new float[vertexCount * 3];
+        }
+    }
+
+    /**
+     * Sets strength of ambient and specular lighting.
+     *
+     * @param ambientStrength  strength of ambient lighting
+     * @param specularStrength strength of specular lighting
+     */
+    public void setLighting(float ambientStrength, float specularStrength) {
+        this.ambientStrength = ambientStrength;
+        this.specularStrength = specularStrength;
+    }
+
+    /**
+     * Renders mesh into the image.
+     *
+     * @param projection projection matrix
+     * @param view       view matrix
+     * @param modelMat   model matrix
+     * @param lightPos   position of the light
+     * @param viewPos    position of the camera
+     */
+    public void render(Matrix4f projection, Matrix4f view, Matrix4f modelMat, Vector3f lightPos, Vector3f viewPos) {
+        lightX = lightPos.x;
+        lightY = lightPos.y;
+        lightZ = lightPos.z;
+        viewX = viewPos.x;
+        viewY = viewPos.y;
+        viewZ = viewPos.z;
+
+        projection.mul(view, pvmMatrix).mul(modelMat);
+        pvmMatrix.get(pvm);
+        modelMat.get(model);
+        modelMat.normal(normalMatrix4f).get(normalMatrix);
+
+        nextTile.set(0);
+        runAll(transformTasks);
+        runAll(binTasks);
+        runAll(rasterTasks);
+    }
+
+    /**
+     * Returns number of triangles drawn by the last frame, after back face culling and clipping.
+     *
+     * @return number of triangles drawn
+     */
+    public int getTrianglesDrawn() {
+        int drawn = 0;
+        for (int count : drawnCounts) drawn += count;
+        return drawn;
+    }
+
+    /**
+     * Stops threads of the renderer.
+     */
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Returns rendered image. The image is drawn over by the next call to render.
+     *
+     * @return rendered image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns width of the image.
+     *
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns height of the image.
+     *
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    // runs one task for each thread and waits for all of them to finish
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            if (executor == null) {
+                tasks.get(0).call();
+                return;
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // first element of the chunk handled by a thread
+    private int chunkStart(int count, int thread) {
+        return (int) ((long) count * thread / threads);
+    }
+
+    // transforms a range of vertices into screen space and world space
+    // matrices are column major, so element (row, col) is at col * 4 + row
+    private void transformVertices(int start, int end) {
+        for (int i = start; i < end; i++) {
+            float x = vertices[i * 3], y = vertices[i * 3 + 1], z = vertices[i * 3 + 2];
+
+            float cx = pvm[0] * x + pvm[4] * y + pvm[8] * z + pvm[12];
+            float cy = pvm[1] * x + pvm[5] * y + pvm[9] * z + pvm[13];
+            float cz = pvm[2] * x + pvm[6] * y + pvm[10] * z + pvm[14];
+            float cw = pvm[3] * x + pvm[7] * y + pvm[11] * z + pvm[15];
+
+            // vertices behind the near plane are flagged with a negative 1/w
+            float invW = cw > WindowView.Z_NEAR ? 1f / cw : -1f;
+            screen[i * 4] = (cx * invW * 0.5f + 0.5f) * width;
+            screen[i * 4 + 1] = (0.5f - cy * invW * 0.5f) * height;
+            screen[i * 4 + 2] = cz * invW * 0.5f + 0.5f;
+            screen[i * 4 + 3] = invW;
+
+            world[i * 3] = model[0] * x + model[4] * y + model[8] * z + model[12];
+            world[i * 3 + 1] = model[1] * x + model[5] * y + model[9] * z + model[13];
+            world[i * 3 + 2] = model[2] * x + model[6] * y + model[10] * z + model[14];
+
+            float nx = normals[i * 3], ny = normals[i * 3 + 1], nz = normals[i * 3 + 2];
+            worldNormals[i * 3] = normalMatrix[0] * nx + normalMatrix[4] * ny + normalMatrix[8] * nz;
+            worldNormals[i * 3 + 1] = normalMatrix[1] * nx + normalMatrix[5] * ny + normalMatrix[9] * nz;
+            worldNormals[i * 3 + 2] = normalMatrix[2] * nx + normalMatrix[6] * ny + normalMatrix[10] * nz;
+        }
+    }
+
+    // adds each visible triangle in a range to the bins of the tiles its bounding box overlaps
+    private void binTriangles(int thread, int start, int end) {
+        int[][] threadBins = bins[thread];
+        int[] counts = binCounts[thread];
+        Arrays.fill(counts, 0);
+        int drawn = 0;
+
+        for (int t = start; t < end; t++) {
+            int i0 = indices[t * 3], i1 = indices[t * 3 + 1], i2 = indices[t * 3 + 2];
+            if (screen[i0 * 4 + 3] < 0 || screen[i1 * 4 + 3] < 0 || screen[i2 * 4 + 3] < 0) continue;
+
+            float x0 = screen[i0 * 4], y0 = screen[i0 * 4 + 1];
+            float x1 = screen[i1 * 4], y1 = screen[i1 * 4 + 1];
+            float x2 = screen[i2 * 4], y2 = screen[i2 * 4 + 1];
+            if ((x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0) >= 0) continue;
+
+            int left = Math.max(0, (int) Math.min(x0, Math.min(x1, x2)) / TILE_SIZE);
+            int right = Math.min(tilesX - 1, (int) Math.max(x0, Math.max(x1, x2)) / TILE_SIZE);
+            int top = Math.max(0, (int) Math.min(y0, Math.min(y1, y2)) / TILE_SIZE);
+            int bottom = Math.min(tilesY - 1, (int) Math.max(y0, Math.max(y1, y2)) / TILE_SIZE);
+            if (left > right || top > bottom) continue;
+            drawn++;
+
+            for (int tileY = top; tileY <= bottom; tileY++) {
+                for (int tileX = left; tileX <= right; tileX++) {
+                    int tile = tileY * tilesX + tileX;
+                    if (counts[tile] == threadBins[tile].length) {
+                        threadBins[tile] = Arrays.copyOf(threadBins[tile], counts[tile] * 2);
+                    }
+                    threadBins[tile][counts[tile]++] = t;
+                }
+            }
+        }
+        drawnCounts[thread] = drawn;
+    }
+
+    // clears a tile and draws the triangles binned to it, in the order of the index array
+    private void rasteriseTile(int tile) {
+        int minX = (tile % tilesX) * TILE_SIZE;
+        int minY = (tile / tilesX) * TILE_SIZE;
+        int maxX = Math.min(minX + TILE_SIZE, width);
+        int maxY = Math.min(minY + TILE_SIZE, height);
+
+        // clears last frame, depth is cleared to the far plane
+        for (int y = minY; y < maxY; y++) {
+            Arrays.fill(pixels, y * width + minX, y * width + maxX, 0);
+            Arrays.fill(depth, y * width + minX, y * width + maxX, 1f);
+        }
+
+        for (int thread = 0; thread < threads; thread++) {
+            int[] bin = bins[thread][tile];
+            int count = binCounts[thread][tile];
+            for (int i = 0; i < count; i++) {
+                int t = bin[i] * 3;
+                rasteriseTriangle(indices[t], indices[t + 1], indices[t + 2], minX, minY, maxX, maxY);
+            }
+        }
+    }
+
+    // draws the pixels of a triangle that lie inside the given rectangle of the image
+    private void rasteriseTriangle(int i0, int i1, int i2, int minX, int minY, int maxX, int maxY) {
+        float w0 = screen[i0 * 4 + 3], w1 = screen[i1 * 4 + 3], w2 = screen[i2 * 4 + 3];
+        if (w0 < 0 || w1 < 0 || w2 < 0) return;
+
+        float x0 = screen[i0 * 4], y0 = screen[i0 * 4 + 1];
+        float x1 = screen[i1 * 4], y1 = screen[i1 * 4 + 1];
+        float x2 = screen[i2 * 4], y2 = screen[i2 * 4 + 1];
+
+        // counter-clockwise triangles face the camera, which is a negative area once y points down the image
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area >= 0) return;
+
+        int left = Math.max(minX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int right = Math.min(maxX - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int top = Math.max(minY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int bottom = Math.min(maxY - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (left > right || top > bottom) return;
+
+        float z0 = screen[i0 * 4 + 2], z1 = screen[i1 * 4 + 2], z2 = screen[i2 * 4 + 2];
+        float invArea = 1f / area;
+
+        for (int py = top; py <= bottom; py++) {
+            float sy = py + 0.5f;
+            for (int px = left; px <= right; px++) {
+                float sx = px + 0.5f;
+
+                // barycentric weights from edge functions
+                float b0 = ((x2 - x1) * (sy - y1) - (y2 - y1) * (sx - x1)) * invArea;
+                float b1 = ((x0 - x2) * (sy - y2) - (y0 - y2) * (sx - x2)) * invArea;
+                float b2 = 1f - b0 - b1;
+                if (b0 < 0 || b1 < 0 || b2 < 0) continue;
+
+                int pixel = py * width + px;
+                float z = b0 * z0 + b1 * z1 + b2 * z2;
+                if (z >= depth[pixel]) continue;
+                depth[pixel] = z;
+
+                // perspective correct weights for interpolating vertex attributes
+                float p0 = b0 * w0, p1 = b1 * w1, p2 = b2 * w2;
+                float invSum = 1f / (p0 + p1 + p2);
+                p0 *= invSum;
+                p1 *= invSum;
+                p2 *= invSum;
+
+                pixels[pixel] = shade(i0, i1, i2, p0, p1, p2);
+            }
+        }
+    }
+
+    // phong shading of a fragment, matching the fragment shader
+    private int shade(int i0, int i1, int i2, float p0, float p1, float p2) {
+        float fx = p0 * world[i0 * 3] + p1 * world[i1 * 3] + p2 * world[i2 * 3];
+        float fy = p0 * world[i0 * 3 + 1] + p1 * world[i1 * 3 + 1] + p2 * world[i2 * 3 + 1];
+        float fz = p0 * world[i0 * 3 + 2] + p1 * world[i1 * 3 + 2] + p2 * world[i2 * 3 + 2];
+
+        // normals face inwards, so are flipped as in the fragment shader
+        float nx = -(p0 * worldNormals[i0 * 3] + p1 * worldNormals[i1 * 3] + p2 * worldNormals[i2 * 3]);
+        float ny = -(p0 * worldNormals[i0 * 3 + 1] + p1 * worldNormals[i1 * 3 + 1] + p2 * worldNormals[i2 * 3 + 1]);
+        float nz = -(p0 * worldNormals[i0 * 3 + 2] + p1 * worldNormals[i1 * 3 + 2] + p2 * worldNormals[i2 * 3 + 2]);
+        float nLength = invLength(nx, ny, nz);
+        nx *= nLength;
+        ny *= nLength;
+        nz *= nLength;
+
+        // diffuse lighting
+        float lx = lightX - fx, ly = lightY - fy, lz = lightZ - fz;
+        float lLength = invLength(lx, ly, lz);
+        lx *= lLength;
+        ly *= lLength;
+        lz *= lLength;
+        float nDotL = nx * lx + ny * ly + nz * lz;
+        float diffuse = Math.max(nDotL, 0f);
+
+        // specular lighting, reflect(-lightDir, norm) = 2 * dot(norm, lightDir) * norm - lightDir
+        float vx = viewX - fx, vy = viewY - fy, vz = viewZ - fz;
+        float vLength = invLength(vx, vy, vz);
+        float rx = 2 * nDotL * nx - lx, ry = 2 * nDotL * ny - ly, rz = 2 * nDotL * nz - lz;
+        float spec = Math.max((vx * rx + vy * ry + vz * rz) * vLength, 0f);
+        // spec^32 by repeated squaring
+        spec *= spec;
+        spec *= spec;
+        spec *= spec;
+        spec *= spec;
+        spec *= spec;
+
+        float light = ambientStrength + diffuse + specularStrength * spec;
+        int r = toByte(light * (p0 * colours[i0 * 3] + p1 * colours[i1 * 3] + p2 * colours[i2 * 3]));
+        int g = toByte(light * (p0 * colours[i0 * 3 + 1] + p1 * colours[i1 * 3 + 1] + p2 * colours[i2 * 3 + 1]));
+        int b = toByte(light * (p0 * colours[i0 * 3 + 2] + p1 * colours[i1 * 3 + 2] + p2 * colours[i2 * 3 + 2]));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    // inverse length of vector, 0 for a zero vector
+    private static float invLength(float x, float y, float z) {
+        float lengthSquared = x * x + y * y + z * z;
+        return lengthSquared > 0 ? (float) (1 / Math.sqrt(lengthSquared)) : 0;
+    }
+
+    // converts colour channel between 0 and 1 to a byte
+    private static int toByte(float value) {
+        return Math.max(0, Math.min(255, (int) (value * 255 + 0.5f)));
+    }
+}
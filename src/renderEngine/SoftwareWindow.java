@@ -0,0 +1,325 @@
+package renderEngine;
+
+import metrics.Histogram;
+import metrics.Metrics;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.util.Locale;
+
+/**
+ * Window that renders the mesh with {@link SoftwareRenderer}, for machines where an OpenGL window can't be
+ * created.<br>
+ * Controls match {@link WindowView}: drag with the left mouse button to rotate, scroll to scale, arrow and page
+ * keys to translate, R to reset, 1, 2 and 3 to toggle auto rotation and ESC to close. Wireframe rendering is not
+ * supported. The title shows frames per second and triangles drawn per second.
+ */
+public class SoftwareWindow {
+    private static final Histogram frameTime = Metrics.histogram("render.frameTime");
+    private static final int MOVE_RATE = 5;
+    private static final float SCALE_RATE = 0.5f;
+    private static final float SCALE_LIMIT_LOWER = 1;
+    private static final float SCALE_LIMIT_HIGHER = 10;
+
+    private final int windowWidth;
+    private final int windowHeight;
+    private final boolean windowFullscreen;
+    private final String windowTitle;
+    private final Object lock = new Object();
+    private float[] vertices;
+    private int[] indices;
+    private float[] normals;
+    private float[] colours;
+
+    private float posZ = -10f;
+    private float limitX = 0f;
+    private float limitY = 0f;
+    private float limitZ = 0f;
+
+    // input state, guarded by lock
+    private boolean closed = false;
+    private boolean changed = true;
+    private boolean reset = false;
+    private boolean autoRotateX = false;
+    private boolean autoRotateY = false;
+    private boolean autoRotateZ = false;
+    private int transX = 0;
+    private int transY = 0;
+    private int transZ = 0;
+    private float axisX = 0f;
+    private float axisY = 0f;
+    private float scaling = 1f;
+    private int lastMouseX;
+    private int lastMouseY;
+
+    /**
+     * Constructs a software rendered window using prerequisite parameters.
+     *
+     * @param width      width of the window in pixels
+     * @param height     height of the window in pixels
+     * @param fullscreen enable fullscreen mode of the window
+     * @param title      sets title of the window
+     */
+    public SoftwareWindow(int width, int height, boolean fullscreen, String title) {
+        windowWidth = width;
+        windowHeight = height;
+        windowFullscreen = fullscreen;
+        windowTitle = title;
+    }
+
+    /**
+     * Sets data of mesh for window to render.
+     *
+     * @param vertices float array of vertices
+     * @param indices  integer array of indices for vertices
+     * @param normals  float array of normals for vertices
+     * @param colours  float array of colours for vertices
+     */
+    public void data(float[] vertices, int[] indices, float[] normals, float[] colours) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.normals = normals;
+        this.colours = colours;
+    }
+
+    /**
+     * Sets initial starting position for mesh.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     */
+    public void setPos(int x, int y, int z) {
+        this.posZ = -z * 0.8f;
+
+        // translation limits of the mesh
+        this.limitX = (float) x / 2;
+        this.limitY = (float) y / 2;
+        this.limitZ = (float) z / 2;
+    }
+
+    /**
+     * Opens window and renders the mesh until the window is closed.
+     */
+    public void run() {
+        Frame frame = new Frame(windowTitle);
+        Canvas canvas = new Canvas();
+        canvas.setPreferredSize(new Dimension(windowWidth, windowHeight));
+        canvas.setIgnoreRepaint(true);
+        frame.add(canvas);
+        frame.setBackground(Color.BLACK);
+        if (windowFullscreen) {
+            frame.setUndecorated(true);
+            frame.setExtendedState(Frame.MAXIMIZED_BOTH);
+        }
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        addListeners(frame, canvas);
+        frame.setVisible(true);
+        canvas.createBufferStrategy(2);
+        canvas.requestFocus();
+
+        SoftwareRenderer renderer = new SoftwareRenderer(Math.max(1, canvas.getWidth()), Math.max(1, canvas.getHeight()));
+        renderer.setMesh(vertices, indices, normals, colours);
+        try {
+            loop(frame, canvas, renderer);
+        } finally {
+            renderer.close();
+            frame.dispose();
+        }
+    }
+
+    // renders frames while the mesh is changing, otherwise waits for input
+    private void loop(Frame frame, Canvas canvas, SoftwareRenderer renderer) {
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        Matrix4f projection = new Matrix4f();
+        Matrix4f view = new Matrix4f().lookAt(new Vector3f(0, 0, 0), new Vector3f(0, 0, -1), new Vector3f(0, 1, 0));
+        Matrix4f model = new Matrix4f();
+        Vector3f lightPos = new Vector3f(WindowView.LIGHT_POS);
+        Vector3f viewPos = new Vector3f(0, 0, 0);
+
+        float angleX = 0f, angleY = 0f, angleZ = 0f;
+        long lastTime = System.nanoTime();
+        long statsStart = lastTime;
+        int frames = 0;
+        long triangles = 0;
+
+        while (true) {
+            synchronized (lock) {
+                boolean autoRotate = autoRotateX || autoRotateY || autoRotateZ;
+                if (!closed && !changed && !autoRotate) {
+                    while (!closed && !changed) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    // time spent waiting is not counted towards rotation or frame statistics
+                    lastTime = System.nanoTime();
+                    statsStart = lastTime;
+                    frames = 0;
+                    triangles = 0;
+                }
+                if (closed) return;
+                changed = false;
+
+                long now = System.nanoTime();
+                float delta = (now - lastTime) / 1e9f;
+                lastTime = now;
+                float anglePerSecond = 50f;
+                if (autoRotateX) angleX = (angleX + delta * anglePerSecond) % 360;
+                if (autoRotateY) angleY = (angleY + delta * anglePerSecond) % 360;
+                if (autoRotateZ) angleZ = (angleZ + delta * anglePerSecond) % 360;
+                if (reset) {
+                    angleX = 0;
+                    angleY = 0;
+                    angleZ = 0;
+                    reset = false;
+                }
+
+                // same transformations as the OpenGL window
+                model.translation(transX, transY, transZ + posZ)
+                        .rotate((float) Math.toRadians(angleZ), 0, 0, 1)
+                        .rotate((float) Math.toRadians(axisY + angleY), 0, 1, 0)
+                        .rotate((float) Math.toRadians(axisX + angleX), 1, 0, 0)
+                        .scale(scaling, scaling, scaling);
+            }
+
+            long frameStart = System.nanoTime();
+            int width = Math.max(1, canvas.getWidth());
+            int height = Math.max(1, canvas.getHeight());
+            if (width != renderer.getWidth() || height != renderer.getHeight()) renderer.resize(width, height);
+            projection.setPerspective(WindowView.FOV, (float) width / height, WindowView.Z_NEAR, WindowView.Z_FAR);
+            renderer.render(projection, view, model, lightPos, viewPos);
+
+            Graphics graphics = strategy.getDrawGraphics();
+            graphics.drawImage(renderer.getImage(), 0, 0, null);
+            graphics.dispose();
+            strategy.show();
+            Toolkit.getDefaultToolkit().sync();
+            if (Metrics.ENABLED) frameTime.record(System.nanoTime() - frameStart);
+
+            // updates frame statistics in the title once a second
+            frames++;
+            triangles += renderer.getTrianglesDrawn();
+            long elapsed = System.nanoTime() - statsStart;
+            if (elapsed >= 1_000_000_000L) {
+                double seconds = elapsed / 1e9;
+                String title = String.format(Locale.ROOT, "%s | %.1f FPS | %.2f M triangles/s",
+                        windowTitle, frames / seconds, triangles / seconds / 1e6);
+                EventQueue.invokeLater(() -> frame.setTitle(title));
+                statsStart = System.nanoTime();
+                frames = 0;
+                triangles = 0;
+            }
+        }
+    }
+
+    // adds listeners for closing the window, keyboard and mouse input
+    private void addListeners(Frame frame, Canvas canvas) {
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                update(() -> closed = true);
+            }
+        });
+
+        canvas.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                update(() -> {});
+            }
+        });
+
+        canvas.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                update(() -> {
+                    switch (e.getKeyCode()) {
+                        // ESC key closes window
+                        case KeyEvent.VK_ESCAPE -> closed = true;
+                        // R key resets translation, rotation and scaling of mesh
+                        case KeyEvent.VK_R -> {
+                            transX = 0;
+                            transY = 0;
+                            transZ = 0;
+                            axisX = 0;
+                            axisY = 0;
+                            scaling = 1;
+                            autoRotateX = false;
+                            autoRotateY = false;
+                            autoRotateZ = false;
+                            reset = true;
+                        }
+                        // arrow keys translate mesh (simulates camera moving the other way)
+                        case KeyEvent.VK_LEFT -> {
+                            if (transX + MOVE_RATE <= limitX) transX += MOVE_RATE;
+                        }
+                        case KeyEvent.VK_RIGHT -> {
+                            if (transX - MOVE_RATE >= -limitX) transX -= MOVE_RATE;
+                        }
+                        case KeyEvent.VK_DOWN -> {
+                            if (transY + MOVE_RATE <= limitY) transY += MOVE_RATE;
+                        }
+                        case KeyEvent.VK_UP -> {
+                            if (transY - MOVE_RATE >= -limitY) transY -= MOVE_RATE;
+                        }
+                        // PAGE DOWN and PAGE UP keys translate mesh forwards and backwards
+                        case KeyEvent.VK_PAGE_DOWN -> {
+                            if (transZ + MOVE_RATE <= limitZ * 2) transZ += MOVE_RATE;
+                        }
+                        case KeyEvent.VK_PAGE_UP -> {
+                            if (transZ - MOVE_RATE >= -limitZ) transZ -= MOVE_RATE;
+                        }
+                        // 1, 2, 3 keys enables auto rotation for x, y, z axes
+                        case KeyEvent.VK_1 -> autoRotateX = !autoRotateX;
+                        case KeyEvent.VK_2 -> autoRotateY = !autoRotateY;
+                        case KeyEvent.VK_3 -> autoRotateZ = !autoRotateZ;
+                    }
+                });
+            }
+        });
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                lastMouseX = e.getX();
+                lastMouseY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if ((e.getModifiersEx() & InputEvent.BUTTON1_DOWN_MASK) == 0) return;
+                update(() -> {
+                    axisX += e.getY() - lastMouseY;
+                    axisY += e.getX() - lastMouseX;
+                    lastMouseX = e.getX();
+                    lastMouseY = e.getY();
+                });
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                // wheel rotation is negative when scrolled forward
+                update(() -> scaling = Math.max(SCALE_LIMIT_LOWER,
+                        Math.min(SCALE_LIMIT_HIGHER, scaling - SCALE_RATE * e.getWheelRotation())));
+            }
+        };
+        canvas.addMouseListener(mouse);
+        canvas.addMouseMotionListener(mouse);
+        canvas.addMouseWheelListener(mouse);
+    }
+
+    // applies change to input state and wakes the render loop
+    private void update(Runnable change) {
+        synchronized (lock) {
+            change.run();
+            changed = true;
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package renderEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Ring of fixed size staging slots that worker threads fill with mesh data and the render thread uploads.<br>
+ * A slot moves from free (filled by a worker) to ready (waiting for the render thread) to in flight (copy issued
+ * to the GPU) and back to free once the fence issued after its copy has signalled. Workers block while every slot
+ * is in use, so staging memory stays bounded however large the mesh is.<br>
+ * The ring doesn't use OpenGL itself, fences are checked through {@link Fences}.
+ */
+public class StagingRing {
+    /**
+     * Checks and deletes GPU fences.
+     */
+    public interface Fences {
+        /**
+         * Returns whether commands before the fence have completed, without waiting.
+         *
+         * @param fence fence handle
+         * @return true if the fence has signalled
+         */
+        boolean isSignalled(long fence);
+
+        /**
+         * Deletes fence.
+         *
+         * @param fence fence handle
+         */
+        void delete(long fence);
+    }
+
+    /**
+     * Staging slot, a fixed region of the backing buffer.
+     */
+    public static final class Slot {
+        private final ByteBuffer buffer;
+        private final long offset;
+        private UploadChunk chunk;
+        private long fence;
+
+        private Slot(ByteBuffer buffer, long offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns buffer of the slot, cleared when the slot is acquired.
+         *
+         * @return slot buffer in native byte order
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * Returns offset of the slot in the backing buffer in bytes.
+         *
+         * @return byte offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns chunk the slot was filled with.
+         *
+         * @return staged chunk
+         */
+        public UploadChunk getChunk() {
+            return chunk;
+        }
+    }
+
+    private final int slotBytes;
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> ready;
+    private final ArrayDeque<Slot> inFlight;
+
+    /**
+     * Creates staging ring dividing the backing buffer into slots.
+     *
+     * @param backing   backing buffer of at least slotCount * slotBytes bytes, such as mapped GPU memory
+     * @param slotCount number of slots
+     * @param slotBytes size of each slot in bytes
+     */
+    public StagingRing(ByteBuffer backing, int slotCount, int slotBytes) {
+        this.slotBytes = slotBytes;
+        free = new ArrayBlockingQueue<>(slotCount);
+        ready = new ArrayBlockingQueue<>(slotCount);
+        inFlight = new ArrayDeque<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            ByteBuffer slice = backing.slice(i * slotBytes, slotBytes).order(ByteOrder.nativeOrder());
+            free.add(new Slot(slice, (long) i * slotBytes));
+        }
+    }
+
+    /**
+     * Returns size of each slot in bytes.
+     *
+     * @return slot size in bytes
+     */
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * Takes a free slot to fill, waiting until one is free.
+     *
+     * @return free slot with a cleared buffer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Slot acquire() throws InterruptedException {
+        Slot slot = free.take();
+        slot.buffer.clear();
+        return slot;
+    }
+
+    /**
+     * Marks filled slot as ready to upload.
+     *
+     * @param slot  slot taken with {@link #acquire()}
+     * @param chunk chunk the slot was filled with
+     */
+    public void publish(Slot slot, UploadChunk chunk) {
+        slot.chunk = chunk;
+        ready.add(slot);
+    }
+
+    /**
+     * Takes next slot ready to upload, without waiting.
+     *
+     * @return ready slot, null if no slot is ready
+     */
+    public Slot pollReady() {
+        return ready.poll();
+    }
+
+    /**
+     * Marks slot as in flight once its copy has been issued.
+     *
+     * @param slot  slot taken with {@link #pollReady()}
+     * @param fence fence issued after the copy, 0 if the slot can be reused straight away
+     */
+    public void retire(Slot slot, long fence) {
+        slot.fence = fence;
+        if (fence == 0) free.add(slot);
+        else inFlight.add(slot);
+    }
+
+    /**
+     * Frees in flight slots whose fences have signalled.<br>
+     * Fences signal in the order they were issued, so checking stops at the first fence still pending.
+     *
+     * @param fences fence checker
+     * @return number of slots freed
+     */
+    public int reclaim(Fences fences) {
+        int reclaimed = 0;
+        while (!inFlight.isEmpty() && fences.isSignalled(inFlight.peek().fence)) {
+            Slot slot = inFlight.poll();
+            fences.delete(slot.fence);
+            slot.fence = 0;
+            free.add(slot);
+            reclaimed++;
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Returns number of slots in flight.
+     *
+     * @return in flight slot count
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Deletes fences of every in flight slot, used when the ring is discarded.
+     *
+     * @param fences fence checker
+     */
+    public void clear(Fences fences) {
+        for (Slot slot : inFlight) fences.delete(slot.fence);
+        inFlight.clear();
+        ready.clear();
+    }
+}
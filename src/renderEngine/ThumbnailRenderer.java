@@ -0,0 +1,353 @@
+package renderEngine;
+
+import data.MeshData;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Renders snapshots of a mesh from a ring of camera angles and writes them as PNG images, without showing a window.<br>
+ * The OpenGL backend draws with the same shader program as {@link WindowView} into a framebuffer of a hidden
+ * window, which needs an OpenGL driver (a software driver such as Mesa works). GLFW and OpenGL are only called on a
+ * single thread owning one hidden window, which every renderer hands its drawing to, so renderers can be used from
+ * any number of threads. GLFW must be called from the first thread of the process on macOS, so OpenGL isn't used
+ * there. If no OpenGL context can be created, the renderer falls back to {@link SoftwareRenderer}, which needs
+ * neither a display nor a GPU.
+ */
+public class ThumbnailRenderer implements AutoCloseable {
+    /**
+     * Backend used to render images.
+     */
+    public enum Backend {
+        SOFTWARE, GL
+    }
+
+    // tilt of the camera above the mesh, in degrees
+    private static final float TILT = 20f;
+
+    // hidden window with the context, shader program and matrices buffer shared by every renderer using OpenGL
+    // only used on the GL thread, they are created by the first renderer and kept for the life of the process
+    private static final ExecutorService glThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thumbnail-gl");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static long window = NULL;
+    private static ShaderProgram shaderProgram;
+    private static FloatBuffer matrices;
+    private static int matricesBlock;
+    // reason the context couldn't be created, so later renderers fall back without trying again
+    private static String contextError;
+
+    private final int size;
+    private Backend backend;
+    private SoftwareRenderer softwareRenderer;
+    // framebuffer of this renderer in the shared context and the buffer its pixels are read into
+    private int framebuffer;
+    private int colourBuffer;
+    private int depthBuffer;
+    private ByteBuffer pixels;
+    private final Matrix4f normalMatrix = new Matrix4f();
+
+    /**
+     * Creates thumbnail renderer for square images.
+     *
+     * @param size    width and height of images in pixels
+     * @param backend preferred backend, the software backend is used if OpenGL is unavailable
+     */
+    public ThumbnailRenderer(int size, Backend backend) {
+        this.size = size;
+        this.backend = backend;
+        if (backend == Backend.GL) {
+            try {
+                if (System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("mac")) {
+                    throw new IllegalStateException("GLFW can only be used from the main thread on macOS");
+                }
+                onGlThread(this::initGl);
+            } catch (Exception e) {
+                System.err.println("OpenGL unavailable for thumbnails, using software renderer: " + e.getMessage());
+                if (framebuffer != 0 || pixels != null) closeGl();
+                this.backend = Backend.SOFTWARE;
+            }
+        }
+        // jobs already run in parallel, so each thumbnail renderer draws on a single thread
+        if (this.backend == Backend.SOFTWARE) softwareRenderer = new SoftwareRenderer(size, size, 1);
+    }
+
+    /**
+     * Returns backend in use, which is software if OpenGL was requested but unavailable.
+     *
+     * @return backend in use
+     */
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Renders mesh from evenly spaced angles around its vertical axis and writes each image as a PNG file named
+     * <code>prefix_angle.png</code>.
+     *
+     * @param mesh   mesh to render
+     * @param angles number of camera angles
+     * @param dir    output directory
+     * @param prefix file name prefix of images
+     * @return list of written files
+     * @throws IOException if an image can't be written
+     */
+    public List<File> render(MeshData mesh, int angles, File dir, String prefix) throws IOException {
+        List<File> files = new ArrayList<>();
+        if (angles <= 0) return files;
+
+        // frames bounding sphere of the mesh so the whole mesh is visible from every angle
+        float[] vertices = mesh.getVertices();
+        Vector3f min = new Vector3f(Float.MAX_VALUE);
+        Vector3f max = new Vector3f(-Float.MAX_VALUE);
+        for (int i = 0; i < vertices.length; i += 3) {
+            min.set(Math.min(min.x, vertices[i]), Math.min(min.y, vertices[i + 1]), Math.min(min.z, vertices[i + 2]));
+            max.set(Math.max(max.x, vertices[i]), Math.max(max.y, vertices[i + 1]), Math.max(max.z, vertices[i + 2]));
+        }
+        Vector3f centre = vertices.length == 0 ? new Vector3f() : new Vector3f(min).add(max).mul(0.5f);
+        float radius = vertices.length == 0 ? 1f : Math.max(new Vector3f(max).sub(min).length() / 2, 1f);
+        float distance = radius / (float) Math.sin(WindowView.FOV / 2);
+
+        Vector3f cameraPos = new Vector3f(0, 0, 0);
+        Matrix4f projection = new Matrix4f().perspective(WindowView.FOV, 1f, WindowView.Z_NEAR, WindowView.Z_FAR);
+        Matrix4f view = new Matrix4f().lookAt(cameraPos, new Vector3f(0, 0, -1), new Vector3f(0, 1, 0));
+        Vector3f lightPos = new Vector3f(WindowView.LIGHT_POS);
+
+        if (backend == Backend.GL) {
+            // images are drawn on the GL thread and written here, so other renderers can draw meanwhile
+            List<BufferedImage> images;
+            try {
+                images = onGlThread(() -> {
+                    List<BufferedImage> drawn = new ArrayList<>();
+                    Mesh glMesh = MeshLoader.createMesh(vertices, mesh.getIndices(), mesh.getNormals(), mesh.getColours());
+                    try {
+                        for (int angle = 0; angle < angles; angle++) {
+                            Matrix4f model = modelMatrix(angle, angles, centre, distance);
+                            drawn.add(renderGl(glMesh, projection, view, model, lightPos, cameraPos));
+                        }
+                    } finally {
+                        MeshLoader.deleteMesh(glMesh);
+                    }
+                    return drawn;
+                });
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Could not render thumbnails with OpenGL", e);
+            }
+            for (int angle = 0; angle < angles; angle++) files.add(write(images.get(angle), dir, prefix, angle));
+        } else {
+            softwareRenderer.setMesh(vertices, mesh.getIndices(), mesh.getNormals(), mesh.getColours());
+            for (int angle = 0; angle < angles; angle++) {
+                Matrix4f model = modelMatrix(angle, angles, centre, distance);
+                softwareRenderer.render(projection, view, model, lightPos, cameraPos);
+                files.add(write(softwareRenderer.getImage(), dir, prefix, angle));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Frees resources of the renderer.
+     */
+    @Override
+    public void close() {
+        if (softwareRenderer != null) softwareRenderer.close();
+        if (backend == Backend.GL) closeGl();
+    }
+
+    // places mesh in front of the camera, turned around its vertical axis for the given angle
+    private static Matrix4f modelMatrix(int angle, int angles, Vector3f centre, float distance) {
+        return new Matrix4f()
+                .translate(0, 0, -distance)
+                .rotate((float) Math.toRadians(TILT), 1, 0, 0)
+                .rotate((float) (2 * Math.PI * angle / angles), 0, 1, 0)
+                .translate(-centre.x, -centre.y, -centre.z);
+    }
+
+    // writes image as PNG file
+    private static File write(BufferedImage image, File dir, String prefix, int angle) throws IOException {
+        File file = new File(dir, String.format(Locale.ROOT, "%s_%d.png", prefix, angle));
+        if (!ImageIO.write(image, "png", file)) throw new IOException("No PNG writer available");
+        return file;
+    }
+
+    // runs task on the GL thread and waits for it, rethrowing what it throws
+    private static <T> T onGlThread(Callable<T> task) throws Exception {
+        try {
+            return glThread.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the OpenGL thread");
+        } catch (ExecutionException e) {
+            // native libraries that fail to load throw errors rather than exceptions
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw new IllegalStateException(e.getCause().toString(), e.getCause());
+        }
+    }
+
+    // creates framebuffer of the renderer to draw into, creating the shared context first if there is none
+    // runs on the GL thread
+    private Void initGl() throws Exception {
+        if (window == NULL) createContext();
+
+        // framebuffer with colour and depth attachments, the default framebuffer of a hidden window is not used
+        framebuffer = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        colourBuffer = GL30.glGenRenderbuffers();
+        GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, colourBuffer);
+        GL30.glRenderbufferStorage(GL30.GL_RENDERBUFFER, GL11.GL_RGBA8, size, size);
+        GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL30.GL_RENDERBUFFER, colourBuffer);
+        depthBuffer = GL30.glGenRenderbuffers();
+        GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, depthBuffer);
+        GL30.glRenderbufferStorage(GL30.GL_RENDERBUFFER, GL30.GL_DEPTH_COMPONENT24, size, size);
+        GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER, GL30.GL_DEPTH_ATTACHMENT, GL30.GL_RENDERBUFFER, depthBuffer);
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE) throw new IllegalStateException("Framebuffer is incomplete");
+
+        pixels = MemoryUtil.memAlloc(size * size * 4);
+        return null;
+    }
+
+    // creates hidden window with an OpenGL 3.3 core context for the shaders, and the shader program
+    // the context stays current on the GL thread, runs on the GL thread
+    private static void createContext() throws Exception {
+        if (contextError != null) throw new IllegalStateException(contextError);
+        try {
+            if (!GLFW.glfwInit()) throw new IllegalStateException("Unable to initialise GLFW");
+
+            GLFW.glfwDefaultWindowHints();
+            GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+            GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 3);
+            GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 3);
+            GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+            GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_FORWARD_COMPAT, GLFW.GLFW_TRUE);
+            window = GLFW.glfwCreateWindow(1, 1, "Thumbnails", NULL, NULL);
+            if (window == NULL) throw new IllegalStateException("Failed to create the GLFW window");
+
+            GLFW.glfwMakeContextCurrent(window);
+            GL.createCapabilities();
+
+            shaderProgram = new ShaderProgram();
+            shaderProgram.createVertexShader(ShaderProgram.readShader("VertexShader.glsl"));
+            shaderProgram.createFragmentShader(ShaderProgram.readShader("FragmentShader.glsl"));
+            shaderProgram.link();
+            matricesBlock = shaderProgram.createUniformBlock(ShaderProgram.MATRICES_BLOCK, 0, ShaderProgram.MATRICES_FLOATS * Float.BYTES);
+            for (String uniform : new String[]{"lightPos", "viewPos", "ambientStrength", "specularStrength"}) {
+                shaderProgram.createUniform(uniform);
+            }
+            matrices = MemoryUtil.memAllocFloat(ShaderProgram.MATRICES_FLOATS);
+        } catch (Exception | LinkageError e) {
+            contextError = e.toString();
+            destroyContext();
+            if (e instanceof Exception) throw (Exception) e;
+            throw new IllegalStateException(contextError, e);
+        }
+    }
+
+    // frees shader program and hidden window after the context failed to be created, runs on the GL thread
+    private static void destroyContext() {
+        try {
+            if (shaderProgram != null) shaderProgram.cleanup();
+            if (window != NULL) {
+                GLFW.glfwMakeContextCurrent(NULL);
+                GLFW.glfwDestroyWindow(window);
+            }
+        } catch (Exception | LinkageError e) {
+            // natives that failed to load can't free anything either
+        }
+        shaderProgram = null;
+        window = NULL;
+        if (matrices != null) {
+            MemoryUtil.memFree(matrices);
+            matrices = null;
+        }
+    }
+
+    // draws mesh into the framebuffer and reads it back as an image
+    private BufferedImage renderGl(Mesh glMesh, Matrix4f projection, Matrix4f view, Matrix4f model, Vector3f lightPos, Vector3f viewPos) {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        GL11.glViewport(0, 0, size, size);
+        GL11.glEnable(GL11.GL_DEPTH_TEST);
+        GL11.glDepthFunc(GL11.GL_LESS);
+        GL11.glEnable(GL11.GL_CULL_FACE);
+        GL11.glClearColor(0, 0, 0, 1);
+        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+
+        shaderProgram.bind();
+        ShaderProgram.putMatrices(matrices, projection, view, model, model.normal(normalMatrix));
+        shaderProgram.setUniformBlock(matricesBlock, matrices);
+        shaderProgram.setUniform("lightPos", lightPos);
+        shaderProgram.setUniform("viewPos", viewPos);
+        shaderProgram.setUniform("ambientStrength", WindowView.AMBIENT_STRENGTH);
+        shaderProgram.setUniform("specularStrength", WindowView.SPECULAR_STRENGTH);
+
+        GL30.glBindVertexArray(glMesh.getVaoID());
+        GL20.glEnableVertexAttribArray(0);
+        GL20.glEnableVertexAttribArray(1);
+        GL20.glEnableVertexAttribArray(2);
+        GL11.glDrawElements(GL11.GL_TRIANGLES, glMesh.getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+        GL20.glDisableVertexAttribArray(0);
+        GL20.glDisableVertexAttribArray(1);
+        GL20.glDisableVertexAttribArray(2);
+        GL30.glBindVertexArray(0);
+
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL11.glReadPixels(0, 0, size, size, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+
+        // OpenGL rows start at the bottom of the image
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = ((size - 1 - y) * size + x) * 4;
+                image.setRGB(x, y, (pixels.get(i) & 0xff) << 16 | (pixels.get(i + 1) & 0xff) << 8 | (pixels.get(i + 2) & 0xff));
+            }
+        }
+        return image;
+    }
+
+    // frees framebuffer of the renderer on the GL thread, the shared context is kept for other renderers
+    private void closeGl() {
+        try {
+            onGlThread(() -> {
+                if (framebuffer != 0) GL30.glDeleteFramebuffers(framebuffer);
+                if (colourBuffer != 0) GL30.glDeleteRenderbuffers(colourBuffer);
+                if (depthBuffer != 0) GL30.glDeleteRenderbuffers(depthBuffer);
+                framebuffer = colourBuffer = depthBuffer = 0;
+                if (pixels != null) {
+                    MemoryUtil.memFree(pixels);
+                    pixels = null;
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("Could not free thumbnail framebuffer: " + e.getMessage());
+        }
+    }
+}
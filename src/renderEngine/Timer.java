@@ -57,6 +57,22 @@ public class Timer {
      * Counter for the UPS calculation.
      */
     private int upsCount;
+    /**
+     * Average frame time over the last second.
+     */
+    private float frameTimeAverage;
+    /**
+     * Longest frame time over the last second.
+     */
+    private float frameTimeMax;
+    /**
+     * Sum of frame times for the average calculation.
+     */
+    private float frameTimeSum;
+    /**
+     * Longest frame time for the maximum calculation.
+     */
+    private float frameTimeLongest;
 
     /**
      * Initializes the timer.
@@ -102,10 +118,27 @@ public class Timer {
     }
 
     /**
-     * Updates FPS and UPS if a whole second has passed.
+     * Adds the time taken by a frame to the frame time statistics.
+     *
+     * @param frameTime Frame time in seconds
      */
-    public void update() {
+    public void updateFrameTime(float frameTime) {
+        frameTimeSum += frameTime;
+        frameTimeLongest = Math.max(frameTimeLongest, frameTime);
+    }
+
+    /**
+     * Updates FPS, UPS and frame time statistics if a whole second has passed.
+     *
+     * @return true if the statistics were updated
+     */
+    public boolean update() {
         if (timeCount > 1f) {
+            frameTimeAverage = fpsCount > 0 ? frameTimeSum / fpsCount : 0;
+            frameTimeMax = frameTimeLongest;
+            frameTimeSum = 0;
+            frameTimeLongest = 0;
+
             fps = fpsCount;
             fpsCount = 0;
 
@@ -113,7 +146,16 @@ public class Timer {
             upsCount = 0;
 
             timeCount -= 1f;
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Discards time passed since the last loop, such as time spent waiting for events.
+     */
+    public void skip() {
+        lastLoopTime = getTime();
     }
 
     /**
@@ -134,6 +176,24 @@ public class Timer {
         return ups > 0 ? ups : upsCount;
     }
 
+    /**
+     * Getter for the average frame time over the last second.
+     *
+     * @return Average frame time in seconds
+     */
+    public float getFrameTimeAverage() {
+        return frameTimeAverage;
+    }
+
+    /**
+     * Getter for the longest frame time over the last second.
+     *
+     * @return Longest frame time in seconds
+     */
+    public float getFrameTimeMax() {
+        return frameTimeMax;
+    }
+
     /**
      * Getter for the last loop time.
      *
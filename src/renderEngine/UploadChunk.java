@@ -0,0 +1,95 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range of one mesh array that is staged and uploaded to the GPU in one piece.<br>
+ * Offsets and counts are in elements, every element is a 4 byte float or integer.
+ */
+public final class UploadChunk {
+    /**
+     * Size of an element in bytes.
+     */
+    public static final int ELEMENT_BYTES = 4;
+
+    private final int target;
+    private final int offset;
+    private final int count;
+
+    /**
+     * Creates upload chunk.
+     *
+     * @param target index of the array and buffer the chunk belongs to
+     * @param offset first element of the chunk
+     * @param count  number of elements in the chunk
+     */
+    public UploadChunk(int target, int offset, int count) {
+        this.target = target;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    /**
+     * Splits arrays into chunks of at most the given size, in order of the arrays.
+     *
+     * @param lengths    number of elements in each array
+     * @param chunkBytes maximum size of a chunk in bytes
+     * @return list of chunks covering every element of every array
+     */
+    public static List<UploadChunk> split(int[] lengths, int chunkBytes) {
+        int chunkElements = Math.max(1, chunkBytes / ELEMENT_BYTES);
+        List<UploadChunk> chunks = new ArrayList<>();
+        for (int target = 0; target < lengths.length; target++) {
+            for (int offset = 0; offset < lengths[target]; offset += chunkElements) {
+                chunks.add(new UploadChunk(target, offset, Math.min(chunkElements, lengths[target] - offset)));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns index of the array and buffer the chunk belongs to.
+     *
+     * @return target index
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns first element of the chunk.
+     *
+     * @return element offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns number of elements in the chunk.
+     *
+     * @return element count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns offset of the chunk in its buffer in bytes.
+     *
+     * @return byte offset
+     */
+    public long getByteOffset() {
+        return (long) offset * ELEMENT_BYTES;
+    }
+
+    /**
+     * Returns size of the chunk in bytes.
+     *
+     * @return size in bytes
+     */
+    public int getBytes() {
+        return count * ELEMENT_BYTES;
+    }
+}
@@ -8,14 +8,17 @@ out vec3 vertexColour;
 out vec3 vertexNormal;
 out vec3 fragPos;
 
-uniform mat4 model;
-uniform mat4 view;
-uniform mat4 projection;
+layout (std140) uniform Matrices {
+    mat4 projection;
+    mat4 view;
+    mat4 model;
+    mat4 normalMatrix;
+};
 
 void main(){
     vertexColour = colour;
     mat4 pvm = projection * view * model;
     gl_Position = pvm * vec4(position, 1.0);
-    vertexNormal = mat3(transpose(inverse(model))) * normal;
+    vertexNormal = mat3(normalMatrix) * normal;
     fragPos = vec3(model * vec4(position, 1.0));
 }
\ No newline at end of file
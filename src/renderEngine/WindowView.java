@@ -1,6 +1,9 @@
 package renderEngine;
 
-import data.MarchingCubes;
+import data.MeshData;
+import data.TimeSeries;
+import metrics.Histogram;
+import metrics.Metrics;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.*;
@@ -10,14 +13,13 @@ import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
-import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
@@ -26,13 +28,47 @@ import static org.lwjgl.system.MemoryUtil.NULL;
  * Main window class that handles all the logic and setup for rendering the mesh.
  */
 public class WindowView {
-    private static final float FOV = (float) Math.toRadians(60.0f);
-    private static final float Z_NEAR = 0.01f;
-    private static final float Z_FAR = 10000.0f;
+    /**
+     * Vertical field of view of the camera in radians.
+     */
+    static final float FOV = (float) Math.toRadians(60.0f);
+    /**
+     * Distance to the near clipping plane.
+     */
+    static final float Z_NEAR = 0.01f;
+    /**
+     * Distance to the far clipping plane.
+     */
+    static final float Z_FAR = 10000.0f;
+    /**
+     * Strength of ambient lighting.
+     */
+    static final float AMBIENT_STRENGTH = 0.5f;
+    /**
+     * Strength of specular lighting.
+     */
+    static final float SPECULAR_STRENGTH = 0.3f;
+    /**
+     * Position of the light.
+     */
+    static final Vector3f LIGHT_POS = new Vector3f(200, 200, 0);
+    private static final Histogram frameTime = Metrics.histogram("render.frameTime");
     /**
      * Toggles the mesh to render in wireframe mode.
      */
     public static boolean renderWireframe = false;
+    /**
+     * Synchronises buffer swaps with the refresh rate of the monitor.
+     */
+    public static boolean vsync = true;
+    /**
+     * Maximum frames rendered per second, 0 for no limit.
+     */
+    public static int frameCap = 0;
+    /**
+     * Number of fixed timestep updates per second.
+     */
+    public static int updatesPerSecond = 60;
     /**
      * Automatically applies rotation to x-axis.
      */
@@ -50,16 +86,29 @@ public class WindowView {
     private static boolean windowFullscreen;
     private static String windowTitle;
     private static long window;
+    /**
+     * Maximum bytes of mesh data uploaded to the GPU each frame while a mesh is arriving.
+     */
+    static final long UPLOAD_BUDGET = 16 << 20;
     private static Mesh mesh;
+    // meshes of the chunks of a chunked mesh, and chunks waiting to be swapped in by the render thread
+    private static Mesh[] chunkMeshes = new Mesh[0];
+    private static final Map<Integer, MeshData> pendingChunks = new ConcurrentHashMap<>();
+    // run on the render thread when the E key is pressed
+    private static Runnable editAction;
+    private static MeshUploader uploader;
+    private static FramePlayer player;
     private static InputHandler inputHandler;
-    private static Matrix4f projectionMatrix;
-    private static Matrix4f modelMatrix;
-    private static Matrix4f viewMatrix;
-    private static Matrix4f translationMatrix;
-    private static Matrix4f rotationMatrix;
-    private static Matrix4f scalingMatrix;
+    // matrices are allocated once and updated in place, so rendering a frame allocates nothing
+    private static final Matrix4f projectionMatrix = new Matrix4f();
+    private static final Matrix4f modelMatrix = new Matrix4f();
+    private static final Matrix4f viewMatrix = new Matrix4f();
+    private static final Matrix4f normalMatrix = new Matrix4f();
+    private static FloatBuffer matrices;
+    private static int matricesBlock;
     private static Vector3f lightPos;
     private static GLFWErrorCallback errorCallback;
+    private static boolean glfwInitialised = false;
     private static ShaderProgram shaderProgram;
     private final Timer timer;
     private static Vector3f cameraPos = new Vector3f(0, 0, 0);
@@ -99,9 +148,16 @@ public class WindowView {
      * Scale of mesh along z-axis.
      */
     float scaleZ = 1f;
+    private float limitX = 0f;
+    private float limitY = 0f;
+    private float limitZ = 0f;
     private float angleX = 0f;
     private float angleY = 0f;
     private float angleZ = 0f;
+    // angles before the last update, rendering interpolates between these and the current angles
+    private float prevAngleX = 0f;
+    private float prevAngleY = 0f;
+    private float prevAngleZ = 0f;
     private float[] vertices;
     private int[] indices;
     private float[] normals;
@@ -150,6 +206,64 @@ public class WindowView {
                 colours.length / 3);
     }
 
+    /**
+     * Sets data of a mesh made of chunks for window to render, in place of {@link #data}.<br>
+     * Each chunk is drawn as its own mesh, so it can be replaced with {@link #swapChunk} without uploading the
+     * others again.
+     *
+     * @param chunks mesh of each chunk, null for chunks without a mesh
+     */
+    public void chunks(MeshData[] chunks) {
+        chunkMeshes = new Mesh[chunks.length];
+        int vertexCount = 0, triangleCount = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == null) continue;
+            pendingChunks.put(i, chunks[i]);
+            vertexCount += chunks[i].getVertexCount();
+            triangleCount += chunks[i].getTriangleCount();
+        }
+        System.out.printf("Generating mesh with: %n  - Chunks: %d%n  - Vertices: %d%n  - Polygons: %d%n",
+                chunks.length, vertexCount, triangleCount);
+    }
+
+    /**
+     * Replaces mesh of a chunk set with {@link #chunks}.<br>
+     * May be called from any thread. The chunk is uploaded and swapped in by the render thread before a following
+     * frame, and replaces any chunk at the same index still waiting to be swapped in.
+     *
+     * @param index index of the chunk
+     * @param chunk new mesh of the chunk
+     */
+    public void swapChunk(int index, MeshData chunk) {
+        pendingChunks.put(index, chunk);
+        // wakes the render loop if it is waiting for input
+        if (window != NULL) GLFW.glfwPostEmptyEvent();
+    }
+
+    /**
+     * Sets action run when the E key is pressed, e.g. to edit the volume of a mesh set with {@link #chunks} and
+     * swap in the chunks the edit changes with {@link #swapChunk}.<br>
+     * The action is run on the render thread, so should hand extraction to another thread.
+     *
+     * @param action action to run, null for none
+     */
+    public void onEdit(Runnable action) {
+        editAction = action;
+    }
+
+    /**
+     * Plays a time series in place of a single mesh, see {@link FramePlayer}.<br>
+     * Starts extracting the first frame straight away.
+     *
+     * @param series          time series to play
+     * @param framesPerSecond maximum number of frames of the series shown each second
+     */
+    public void play(TimeSeries series, float framesPerSecond) {
+        player = new FramePlayer(series, framesPerSecond);
+        System.out.printf("Playing %d frames in %d chunks at up to %s frames per second%n",
+                series.getFrameCount(), series.getChunkCount(), framesPerSecond);
+    }
+
     /**
      * Sets initial starting position for mesh.
      *
@@ -161,15 +275,30 @@ public class WindowView {
         this.posX = (float) x / 2;
         this.posY = (float) y / 2;
         this.posZ = -z * 0.8f;
+
+        // translation limits of the mesh
+        this.limitX = (float) x / 2;
+        this.limitY = (float) y / 2;
+        this.limitZ = (float) z / 2;
     }
 
     /**
      * Runs GLFW window. Initialises shader, loads mesh data onto GPU and starts main loop.<br>
      * Automatically runs cleanup on program termination.
+     *
+     * @return false if the window or OpenGL context could not be created, true once the window is closed
      */
-    public void run() {
+    public boolean run() {
         try {
             init(); // initialise the program
+        } catch (Exception | LinkageError e) {
+            // native libraries that fail to load throw errors rather than exceptions
+            System.err.println("Failed to initialise OpenGL window: " + e.getMessage());
+            cleanUp();
+            return false;
+        }
+
+        try {
             System.out.printf("Successfully created GLFW Window with ID: %d%n", window);
             System.out.printf("GLFW Window created with title \"%s\"%n", windowTitle);
             loop(); // run loop as long as program remains open
@@ -178,26 +307,26 @@ public class WindowView {
         } finally {
             cleanUp(); // free allocated memory
         }
+        return true;
     }
 
     // Initialisation method to create new GLFW window, input handler class and shader program.<br>
-    // Loads mesh data onto the GPU to be rendered in the loop method.
+    // Starts loading mesh data onto the GPU, it is uploaded in chunks by the loop method.
     private void init() throws Exception {
         errorCallback = GLFWErrorCallback.createPrint(System.err).set();
 
         if (!GLFW.glfwInit()) {
             throw new IllegalStateException("Unable to initialise GLFW");
         }
+        glfwInitialised = true;
 
         createWindow();
-        inputHandler = new InputHandler(
-                window,
-                (float) MarchingCubes.getWidth() / 2,
-                (float) MarchingCubes.getHeight() / 2,
-                (float) MarchingCubes.getDepth() / 2
-        );
+        inputHandler = new InputHandler(window, limitX, limitY, limitZ);
         setupShader();
-        mesh = MeshLoader.createMesh(vertices, indices, normals, colours);
+        if (vertices != null) {
+            uploader = new MeshUploader(vertices, indices, normals, colours);
+            uploader.start();
+        }
     }
 
     // Creates and sets up GLFW window
@@ -256,31 +385,26 @@ public class WindowView {
             GLFW.glfwMakeContextCurrent(window);
             GL.createCapabilities();
 
-            // enable v-sync
-            GLFW.glfwSwapInterval(1);
+            // enable v-sync if set
+            GLFW.glfwSwapInterval(vsync ? 1 : 0);
             GLFW.glfwShowWindow(window);
 
-            // sets up transformation matrices
-            translationMatrix = new Matrix4f().translation(posX, posY, posZ);
-            scalingMatrix = new Matrix4f().scaling(scaleX, scaleY, scaleZ);
-            rotationMatrix = new Matrix4f().rotation(0, 1, 1, 1);
-
             // sets up projection matrix
             float aspectRatio = (float) pWidth.get(0) / (float) pHeight.get(0);
-            projectionMatrix = new Matrix4f().perspective(FOV, aspectRatio, Z_NEAR, Z_FAR);
+            projectionMatrix.setPerspective(FOV, aspectRatio, Z_NEAR, Z_FAR);
 
             // sets up model matrix
-            modelMatrix = new Matrix4f().identity();
+            modelMatrix.identity();
 
             // sets up view matrix
-            viewMatrix = new Matrix4f().lookAt(
-                    cameraPos,  // camera position
-                    new Vector3f(0, 0, -1), // camera look direction
-                    new Vector3f(0, 1, 0)   // camera up direction
+            viewMatrix.setLookAt(
+                    cameraPos.x, cameraPos.y, cameraPos.z, // camera position
+                    0, 0, -1, // camera look direction
+                    0, 1, 0   // camera up direction
             );
 
             // sets diffuse lighting position
-            lightPos = new Vector3f(200, 200, -posZ * 0);
+            lightPos = new Vector3f(LIGHT_POS);
 
             // initialises timer
             timer.init();
@@ -336,25 +460,9 @@ public class WindowView {
         shaderProgram = new ShaderProgram();
         System.out.println("Shader Program created");
 
-        String vertexShader = null;
-        String fragmentShader = null;
-        // try to read shader code from src directory
-        // used when program is run from source code
-        try {
-            vertexShader = Files.readString(Path.of(System.getProperty("user.dir") + File.separator + "src\\renderEngine\\VertexShader.glsl"), Charset.defaultCharset());
-            fragmentShader = Files.readString(Path.of(System.getProperty("user.dir") + File.separator + "src\\renderEngine\\FragmentShader.glsl"), Charset.defaultCharset());
-        } catch (NoSuchFileException e) {
-            // try to read shader code from resources directory
-            // used when program is run from .jar file
-            try {
-                vertexShader = Files.readString(Path.of(System.getProperty("user.dir") + File.separator + "\\Resources\\Shaders\\VertexShader.glsl"), Charset.defaultCharset());
-                fragmentShader = Files.readString(Path.of(System.getProperty("user.dir") + File.separator + "\\Resources\\Shaders\\FragmentShader.glsl"), Charset.defaultCharset());
-            } catch (NoSuchFileException f) {
-                // print stack trace if shader code cannot be found/read from
-                e.printStackTrace();
-                f.printStackTrace();
-            }
-        }
+        // reads shader code from file
+        String vertexShader = ShaderProgram.readShader("VertexShader.glsl");
+        String fragmentShader = ShaderProgram.readShader("FragmentShader.glsl");
 
         // creates vertex and fragment shaders
         shaderProgram.createVertexShader(vertexShader);
@@ -365,10 +473,10 @@ public class WindowView {
         // sets current program to shader program
         shaderProgram.bind();
 
-        // create uniforms for vertex position
-        shaderProgram.createUniform("model");
-        shaderProgram.createUniform("view");
-        shaderProgram.createUniform("projection");
+        // create uniform buffer for projection, view, model and normal matrices
+        // matrices are uploaded together once per frame
+        matrices = MemoryUtil.memAllocFloat(ShaderProgram.MATRICES_FLOATS);
+        matricesBlock = shaderProgram.createUniformBlock(ShaderProgram.MATRICES_BLOCK, 0, ShaderProgram.MATRICES_FLOATS * Float.BYTES);
 
         // create uniforms for lighting
         shaderProgram.createUniform("lightPos");
@@ -376,71 +484,168 @@ public class WindowView {
         shaderProgram.createUniform("ambientStrength");
         shaderProgram.createUniform("specularStrength");
 
+        // lighting and camera don't move, so are only set once
+        shaderProgram.setUniform("lightPos", lightPos);
         shaderProgram.setUniform("viewPos", cameraPos);
 
         // sets ambient and diffuse for shading
-        shaderProgram.setUniform("ambientStrength", 0.5f);
-        shaderProgram.setUniform("specularStrength", 0.3f);
+        shaderProgram.setUniform("ambientStrength", AMBIENT_STRENGTH);
+        shaderProgram.setUniform("specularStrength", SPECULAR_STRENGTH);
     }
 
-    // main loop that contains calls to the methods: update, input handler update, render
+    // main loop with fixed timestep updates and interpolated rendering
+    // updates run at a fixed rate however long frames take, and each frame is rendered between the last two updates
     private void loop() {
+        float accumulator = 0f;
+        boolean swapVsync = vsync;
+
         while (!GLFW.glfwWindowShouldClose(window)) {
-            float delta = timer.getDelta();
+            double frameStart = timer.getTime();
+            float interval = 1f / updatesPerSecond;
+
+            // limits time caught up after a long frame, so updates can't fall further and further behind
+            accumulator = Math.min(accumulator + timer.getDelta(), 0.25f);
 
-            update(delta);
-            inputHandler.update();
-            render();
+            input();
+            while (accumulator >= interval) {
+                update(interval);
+                timer.updateUPS();
+                accumulator -= interval;
+            }
 
+            if (swapVsync != vsync) {
+                swapVsync = vsync;
+                GLFW.glfwSwapInterval(vsync ? 1 : 0);
+            }
+
+            // uploads part of the mesh each frame until it has arrived, so the window keeps responding
+            if (uploader != null && uploader.process(UPLOAD_BUDGET)) {
+                mesh = uploader.getMesh();
+                uploader = null;
+            }
+            if (!pendingChunks.isEmpty()) swapChunks(UPLOAD_BUDGET);
+            // uploads the next frame of a time series in the background of the frames, swapping it in once complete
+            if (player != null) player.process(UPLOAD_BUDGET, timer.getTime());
+
+            long frameNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+            render(accumulator / interval);
             GLFW.glfwSwapBuffers(window);
-            // doesn't make calls to render function if there is no user input and auto rotate isn't enabled
-            if (!autoRotateX && !autoRotateY && !autoRotateZ) GLFW.glfwWaitEvents();
+            if (Metrics.ENABLED) frameTime.record(System.nanoTime() - frameNanos);
+
+            timer.updateFPS();
+            timer.updateFrameTime((float) (timer.getTime() - frameStart));
+            if (timer.update()) updateTitle();
+            if (frameCap > 0) sync(frameCap);
+
+            // doesn't make calls to render function if there is no user input, auto rotate isn't enabled
+            // the mesh and its chunks have finished uploading and no time series is playing
+            if (!autoRotateX && !autoRotateY && !autoRotateZ && uploader == null && pendingChunks.isEmpty() && player == null) {
+                GLFW.glfwWaitEvents();
+                // time spent waiting isn't caught up by updates
+                timer.skip();
+                accumulator = 0f;
+            }
             GLFW.glfwPollEvents();
         }
     }
 
-    // handles updates every frame that are not directly being used to render mesh
-    private void update(float delta) {
-        float anglePerSecond = 50f;
-        // sets autorotation for x-axis if autoRotateX is true
-        if (autoRotateX) {
-            if (angleX > 360) angleX = 0;
-            angleX += delta * anglePerSecond;
-        }
-        // sets autorotation for y-axis if autoRotateY is true
-        if (autoRotateY) {
-            if (angleY > 360) angleY = 0;
-            angleY += delta * anglePerSecond;
+    // uploads chunks waiting to be swapped in and deletes the meshes they replace
+    // stops once the budget of bytes is used, so a large update is spread over several frames
+    private void swapChunks(long budget) {
+        long bytes = 0;
+        for (Integer index : pendingChunks.keySet()) {
+            if (bytes >= budget) break;
+            MeshData chunk = pendingChunks.remove(index);
+            if (chunk == null) continue;
+
+            if (chunkMeshes[index] != null) MeshLoader.deleteMesh(chunkMeshes[index]);
+            chunkMeshes[index] = chunk.getTriangleCount() == 0 ? null
+                    : MeshLoader.createMesh(chunk.getVertices(), chunk.getIndices(), chunk.getNormals(), chunk.getColours());
+            bytes += 4L * (chunk.getVertices().length * 3 + chunk.getIndices().length);
         }
-        // sets autorotation for z-axis if autoRotateZ is true
-        if (autoRotateZ) {
-            if (angleZ > 360) angleZ = 0;
-            angleZ += delta * anglePerSecond;
+    }
+
+    // waits until the frame has taken at least the frame time of the given frame rate
+    private void sync(int fps) {
+        double frameEnd = timer.getLastLoopTime() + 1.0 / fps;
+        while (timer.getTime() < frameEnd) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
+    }
+
+    // shows frame statistics of the last second in the title bar
+    private void updateTitle() {
+        GLFW.glfwSetWindowTitle(window, String.format("%s | %d FPS | %d UPS | frame %.2f ms avg, %.2f ms max | vsync %s",
+                windowTitle, timer.getFPS(), timer.getUPS(),
+                timer.getFrameTimeAverage() * 1000, timer.getFrameTimeMax() * 1000, vsync ? "on" : "off")
+                + (uploader != null ? String.format(" | uploading %.0f%%", uploader.getProgress() * 100) : "")
+                + (player != null ? String.format(" | frame %d/%d", player.getFrame() + 1, player.getFrameCount()) : ""));
+    }
 
+    // handles input once per frame, mouse rotation is applied immediately rather than at the update rate
+    private void input() {
         // applies rotation delta to rotation if left mouse button is pressed
         if (inputHandler.getLeftButtonDown()) {
             axisX += inputHandler.getRotY();
             axisY += inputHandler.getRotX();
         }
+        inputHandler.resetRot();
 
         // resets all transformations when R button is pressed
         if (inputHandler.getRButtonDown()) {
             axisX = 0;
             axisY = 0;
             axisZ = 0;
-            angleX = 0;
-            angleY = 0;
-            angleZ = 0;
+            angleX = prevAngleX = 0;
+            angleY = prevAngleY = 0;
+            angleZ = prevAngleZ = 0;
             autoRotateX = false;
             autoRotateY = false;
             autoRotateZ = false;
             inputHandler.resetRButtonDown();
         }
+
+        // runs the edit action when E button is pressed
+        if (inputHandler.getEButtonDown()) {
+            if (editAction != null) editAction.run();
+            inputHandler.resetEButtonDown();
+        }
+    }
+
+    // fixed timestep update of the state that is not directly being used to render mesh
+    private void update(float delta) {
+        float anglePerSecond = 50f;
+        prevAngleX = angleX;
+        prevAngleY = angleY;
+        prevAngleZ = angleZ;
+
+        // sets autorotation for each axis if enabled
+        // angles wrap together with their previous value, so interpolation doesn't jump back a full turn
+        if (autoRotateX) angleX += delta * anglePerSecond;
+        if (angleX > 360) {
+            angleX -= 360;
+            prevAngleX -= 360;
+        }
+        if (autoRotateY) angleY += delta * anglePerSecond;
+        if (angleY > 360) {
+            angleY -= 360;
+            prevAngleY -= 360;
+        }
+        if (autoRotateZ) angleZ += delta * anglePerSecond;
+        if (angleZ > 360) {
+            angleZ -= 360;
+            prevAngleZ -= 360;
+        }
     }
 
     // render method that is called every frame for handling all render code
-    private void render() {
+    // alpha is how far the frame is between the last two updates, from 0 to 1
+    private void render(float alpha) {
         // clears last frame
         clear();
 
@@ -452,39 +657,35 @@ public class WindowView {
             GL11.glEnable(GL_CULL_FACE);
         }
 
-        modelMatrix = new Matrix4f().identity();
-
-        // sets translation matrix
-        translationMatrix = new Matrix4f().translation(
-                inputHandler.getTransX(),
-                inputHandler.getTransY(),
-                inputHandler.getTransZ() + posZ);
-
-        // sets rotation matrix
-        Matrix4f rotationX = new Matrix4f().rotate((float) Math.toRadians(axisX + angleX), 1.0f, 0.0f, 0.0f);
-        Matrix4f rotationY = new Matrix4f().rotate((float) Math.toRadians(axisY + angleY), 0.0f, 1.0f, 0.0f);
-        Matrix4f rotationZ = new Matrix4f().rotate((float) Math.toRadians(0), 0.0f, 0.0f, 1.0f);
-        rotationMatrix = rotationZ.mul(rotationY.mul(rotationX));
-        inputHandler.resetRot();
-
-        // sets scaling matrix
-        scalingMatrix = new Matrix4f().scaling(
-                inputHandler.getScaling(),
-                inputHandler.getScaling(),
-                inputHandler.getScaling());
-
-        // sets model matrix using transformation matrices
-        modelMatrix = modelMatrix.mul(translationMatrix).mul(rotationMatrix).mul(scalingMatrix);
-
-        // sets uniforms for projection, view and model matrices
+        // sets model matrix from translation, rotation and scaling
+        float scaling = inputHandler.getScaling();
+        modelMatrix.translation(
+                        inputHandler.getTransX(),
+                        inputHandler.getTransY(),
+                        inputHandler.getTransZ() + posZ)
+                .rotateY((float) Math.toRadians(axisY + prevAngleY + (angleY - prevAngleY) * alpha))
+                .rotateX((float) Math.toRadians(axisX + prevAngleX + (angleX - prevAngleX) * alpha))
+                .scale(scaling, scaling, scaling);
+
+        // uploads projection, view, model and normal matrices in a single uniform buffer update
         // used for determining final position each frame for every vertex
-        shaderProgram.setUniform("projection", projectionMatrix);
-        shaderProgram.setUniform("view", viewMatrix);
-        shaderProgram.setUniform("model", modelMatrix);
+        ShaderProgram.putMatrices(matrices, projectionMatrix, viewMatrix, modelMatrix, modelMatrix.normal(normalMatrix));
+        shaderProgram.setUniformBlock(matricesBlock, matrices);
 
-        // sets uniform for lighting position
-        shaderProgram.setUniform("lightPos", lightPos);
+        // nothing is drawn of the mesh until it has been uploaded
+        if (mesh != null) draw(mesh);
+        for (Mesh chunk : chunkMeshes) {
+            if (chunk != null) draw(chunk);
+        }
+        if (player != null) {
+            for (Mesh chunk : player.getChunks()) {
+                if (chunk != null) draw(chunk);
+            }
+        }
+    }
 
+    // draws vertex array object of a mesh
+    private void draw(Mesh mesh) {
         // bind vertex array object from Mesh object
         GL30.glBindVertexArray(mesh.getVaoID());
         // enabled vertex arrays for each VBO stored in VAO
@@ -508,14 +709,40 @@ public class WindowView {
 
     // on window termination run cleanup to free memory
     private void cleanUp() {
+        if (uploader != null) {
+            uploader.cleanup();
+            uploader = null;
+        }
+        for (int i = 0; i < chunkMeshes.length; i++) {
+            if (chunkMeshes[i] != null) MeshLoader.deleteMesh(chunkMeshes[i]);
+            chunkMeshes[i] = null;
+        }
+        pendingChunks.clear();
+        if (player != null) {
+            player.cleanup();
+            player = null;
+        }
         if (shaderProgram != null) {
             shaderProgram.cleanup();
         }
+        if (matrices != null) {
+            MemoryUtil.memFree(matrices);
+            matrices = null;
+        }
 
-        Callbacks.glfwFreeCallbacks(window); // free all callbacks associated with the current GLFW window
-        GLFW.glfwDestroyWindow(window); // destroys the current window
-        errorCallback.free(); // free error callback from memory
-        GLFW.glfwTerminate(); // terminates current session
+        if (window != NULL) {
+            Callbacks.glfwFreeCallbacks(window); // free all callbacks associated with the current GLFW window
+            GLFW.glfwDestroyWindow(window); // destroys the current window
+            window = NULL;
+        }
+        if (errorCallback != null) {
+            errorCallback.free(); // free error callback from memory
+            errorCallback = null;
+        }
+        if (glfwInitialised) {
+            GLFW.glfwTerminate(); // terminates current session
+            glfwInitialised = false;
+        }
 
         System.out.println("Cleanup Success");
     }
@@ -0,0 +1,120 @@
+package service;
+
+import data.CompressedVolume;
+import data.DataLoader;
+import data.DualContouring;
+import data.ExtractionParameters;
+import data.MarchingCubes;
+import data.MarchingTetrahedra;
+import data.MeshData;
+import data.MeshOptimizer;
+import data.SurfaceExtractor;
+import data.Volume;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times repeated extractions of a volume already in memory, so extraction kernels can be compared without
+ * loading time.<br>
+ * The first runs are discarded while the JIT compiles the kernel. Reports the minimum and median time of the
+ * remaining runs, cells processed per second and the size of the mesh, and the average cache miss ratio of the
+ * mesh before and after reordering it for the vertex cache.
+ */
+public class ExtractionBenchmark {
+    private static final int WARMUP_RUNS = 3;
+
+    private final Volume volume;
+
+    /**
+     * Creates benchmark for the volume in given directory.
+     *
+     * @param dir     source directory of image slices
+     * @param storage storage of the volume
+     * @throws Exception if slices can't be read
+     */
+    public ExtractionBenchmark(String dir, DataLoader.Storage storage) throws Exception {
+        this.volume = DataLoader.getVolume(dir, storage);
+    }
+
+    /**
+     * Creates benchmark for a synthetic cube volume holding a gyroid, a periodic surface crossing every part of
+     * the volume.<br>
+     * Samples are centred on 0.1, the default ISO level, and the gyroid repeats 4 times along each axis, so the
+     * mesh grows with the area of the volume's faces rather than its volume.
+     *
+     * @param size    number of samples along each axis
+     * @param storage storage of the volume
+     * @throws IOException never, slices are generated
+     */
+    public ExtractionBenchmark(int size, DataLoader.Storage storage) throws IOException {
+        System.out.printf("Synthetic gyroid: %d x %d x %d%n", size, size, size);
+        this.volume = DataLoader.createVolume(size, size, size, new float[]{1, 1, 1}, storage, (y, slab, slabY) -> {
+            double k = 2 * Math.PI * 4 / size;
+            for (int x = 0; x < size; x++) {
+                for (int z = 0; z < size; z++) {
+                    double gyroid = Math.sin(x * k) * Math.cos(y * k) + Math.sin(y * k) * Math.cos(z * k)
+                            + Math.sin(z * k) * Math.cos(x * k);
+                    slab.setValue(x, slabY, z, (float) (0.1 + 0.05 * gyroid));
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs benchmark and prints the results.
+     *
+     * @param parameters parameters of the extraction, including the method
+     * @param runs       number of timed runs
+     * @return median time of a run in nanoseconds
+     */
+    public long run(ExtractionParameters parameters, int runs) {
+        SurfaceExtractor extractor = switch (parameters.method) {
+            case MARCHING_CUBES -> new MarchingCubes(1);
+            case DUAL_CONTOURING -> new DualContouring();
+            case MARCHING_TETRAHEDRA -> new MarchingTetrahedra();
+        };
+
+        MeshData mesh = null;
+        for (int i = 0; i < WARMUP_RUNS; i++) mesh = extractor.generate(volume, parameters);
+
+        Map<String, Long> countersBefore = Metrics.getCounters();
+        long decodeNanosBefore = Metrics.histogram("volume.brickDecodeTime").getSum();
+        long[] times = new long[Math.max(1, runs)];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            mesh = extractor.generate(volume, parameters);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        long median = times[times.length / 2];
+        long cells = (long) (volume.getWidth() - 1) * (volume.getHeight() - 1) * (volume.getDepth() - 1);
+        System.out.printf(Locale.ROOT, "%s iso %s: min %.1f ms | median %.1f ms | %.1f M cells/s | %d triangles | %d vertices%n",
+                parameters.method, parameters.isoLevel, times[0] / 1e6, median / 1e6, cells * 1e3 / median,
+                mesh.getTriangleCount(), mesh.getVertexCount());
+
+        // vertex cache of the mesh before and after reordering, outside the timed runs
+        long start = System.nanoTime();
+        MeshData optimised = MeshOptimizer.optimise(mesh);
+        long optimiseTime = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "vertex cache: ACMR %.3f -> %.3f | reorder %.1f ms%n",
+                MeshOptimizer.acmr(mesh.getIndices(), MeshOptimizer.CACHE_SIZE),
+                MeshOptimizer.acmr(optimised.getIndices(), MeshOptimizer.CACHE_SIZE), optimiseTime / 1e6);
+
+        // brick cache of compressed volumes over the timed runs, only counted when metrics are enabled
+        if (Metrics.ENABLED && volume instanceof CompressedVolume) {
+            Map<String, Long> counters = Metrics.getCounters();
+            long hits = counters.get("volume.brickCacheHits") - countersBefore.getOrDefault("volume.brickCacheHits", 0L);
+            long misses = counters.get("volume.brickCacheMisses") - countersBefore.getOrDefault("volume.brickCacheMisses", 0L);
+            long bytes = counters.get("volume.brickDecodedBytes") - countersBefore.getOrDefault("volume.brickDecodedBytes", 0L);
+            long decodeNanos = Metrics.histogram("volume.brickDecodeTime").getSum() - decodeNanosBefore;
+            System.out.printf(Locale.ROOT, "brick cache: %.1f%% hits | %d misses | decode %.0f MB/s%n",
+                    100.0 * hits / Math.max(1, hits + misses), misses, bytes * 1e3 / Math.max(1, decodeNanos));
+        }
+        return median;
+    }
+}
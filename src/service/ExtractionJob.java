@@ -0,0 +1,223 @@
+package service;
+
+import data.DataLoader;
+import data.ExtractionParameters;
+import data.MeshWriter;
+import renderEngine.ThumbnailRenderer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Extraction job read from a job file in the service queue directory.<br>
+ * A job file is a properties file with the following keys:
+ * <ul>
+ * <li><code>input</code> - source directory of image slices or DICOM files, or raw volume file with a
+ * properties header (required)</li>
+ * <li><code>isoLevels</code> - comma separated ISO levels, one mesh is written for each (default 0.1)</li>
+ * <li><code>format</code> - output format, <code>obj</code> or <code>stl</code> (default obj)</li>
+ * <li><code>output</code> - output directory (default <code>out</code> inside the queue directory)</li>
+ * <li><code>method</code> - surface extraction method, <code>marching_cubes</code>, <code>dual_contouring</code>
+ * or <code>marching_tetrahedra</code> (default marching_cubes)</li>
+ * <li><code>storage</code> - storage of the volume, <code>dense</code>, <code>sparse</code> bricks,
+ * <code>compressed</code> bricks or <code>morton</code> order (default dense)</li>
+ * <li><code>spacing</code> - comma separated distance between samples along the x, y and z axes (default the
+ * spacing of the volume)</li>
+ * <li><code>twoPass</code> - extract with Marching Cubes in two parallel passes, <code>true</code> or
+ * <code>false</code> (default false)</li>
+ * <li><code>colours</code> - enable colours for vertices, <code>true</code> or <code>false</code> (default false)</li>
+ * <li><code>optimise</code> - reorder each mesh for the vertex cache before writing it, <code>true</code> or
+ * <code>false</code> (default true)</li>
+ * <li><code>thumbnails</code> - number of camera angles to write PNG thumbnails from for each mesh (default 0)</li>
+ * <li><code>thumbnailSize</code> - width and height of thumbnails in pixels (default 256)</li>
+ * <li><code>thumbnailRenderer</code> - <code>software</code> or <code>gl</code>, OpenGL falls back to software if
+ * unavailable (default software)</li>
+ * </ul>
+ */
+public class ExtractionJob {
+    private final String name;
+    private final String input;
+    private final float[] isoLevels;
+    private final MeshWriter.Format format;
+    private final File output;
+    private final ExtractionParameters.Method method;
+    private final boolean twoPass;
+    private final float[] spacing;
+    private final DataLoader.Storage storage;
+    private final boolean colours;
+    private final boolean optimise;
+    private final int thumbnails;
+    private final int thumbnailSize;
+    private final ThumbnailRenderer.Backend thumbnailRenderer;
+
+    /**
+     * Reads job from job file.
+     *
+     * @param file          job file
+     * @param defaultOutput output directory used if the job doesn't set one
+     * @throws IOException if job file can't be read or is missing the input directory
+     */
+    public ExtractionJob(File file, File defaultOutput) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = new FileReader(file)) {
+            properties.load(in);
+        }
+
+        String fileName = file.getName();
+        name = fileName.substring(0, fileName.lastIndexOf('.'));
+
+        input = properties.getProperty("input");
+        if (input == null) throw new IOException("Job " + name + " has no input directory");
+
+        String[] levels = properties.getProperty("isoLevels", "0.1").split(",");
+        isoLevels = new float[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            isoLevels[i] = Float.parseFloat(levels[i].trim());
+        }
+
+        format = MeshWriter.Format.valueOf(properties.getProperty("format", "obj").trim().toUpperCase(Locale.ROOT));
+        output = new File(properties.getProperty("output", defaultOutput.getPath()));
+        method = ExtractionParameters.Method.valueOf(
+                properties.getProperty("method", "marching_cubes").trim().toUpperCase(Locale.ROOT));
+        twoPass = Boolean.parseBoolean(properties.getProperty("twoPass", "false").trim());
+        String spacingValue = properties.getProperty("spacing");
+        spacing = spacingValue != null ? DataLoader.parseSpacing(spacingValue) : null;
+        storage = DataLoader.Storage.valueOf(properties.getProperty("storage", "dense").trim().toUpperCase(Locale.ROOT));
+        colours = Boolean.parseBoolean(properties.getProperty("colours", "false").trim());
+        optimise = Boolean.parseBoolean(properties.getProperty("optimise", "true").trim());
+        thumbnails = Integer.parseInt(properties.getProperty("thumbnails", "0").trim());
+        thumbnailSize = Integer.parseInt(properties.getProperty("thumbnailSize", "256").trim());
+        thumbnailRenderer = ThumbnailRenderer.Backend.valueOf(
+                properties.getProperty("thumbnailRenderer", "software").trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns name of the job, taken from the job file name.
+     *
+     * @return job name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns source directory of image slices.
+     *
+     * @return input directory
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Returns ISO levels to extract a mesh for.
+     *
+     * @return float array of ISO levels
+     */
+    public float[] getIsoLevels() {
+        return isoLevels;
+    }
+
+    /**
+     * Returns output format of meshes.
+     *
+     * @return output format
+     */
+    public MeshWriter.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns output directory of meshes.
+     *
+     * @return output directory
+     */
+    public File getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns surface extraction method.
+     *
+     * @return extraction method
+     */
+    public ExtractionParameters.Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns whether Marching Cubes runs in two parallel passes.
+     *
+     * @return true if two pass extraction is enabled
+     */
+    public boolean getTwoPass() {
+        return twoPass;
+    }
+
+    /**
+     * Returns distance between samples along each axis.
+     *
+     * @return array of spacing along the x, y and z axes, null to use the spacing of the volume
+     */
+    public float[] getSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Returns storage of the volume.
+     *
+     * @return volume storage
+     */
+    public DataLoader.Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns whether colours are enabled for vertices.
+     *
+     * @return true if colours are enabled
+     */
+    public boolean getColours() {
+        return colours;
+    }
+
+    /**
+     * Returns whether meshes are reordered for the vertex cache before they are written.
+     *
+     * @return true if meshes are optimised
+     */
+    public boolean getOptimise() {
+        return optimise;
+    }
+
+    /**
+     * Returns number of camera angles to write thumbnails from, 0 if no thumbnails are written.
+     *
+     * @return number of thumbnails for each mesh
+     */
+    public int getThumbnails() {
+        return thumbnails;
+    }
+
+    /**
+     * Returns width and height of thumbnails.
+     *
+     * @return size of thumbnails in pixels
+     */
+    public int getThumbnailSize() {
+        return thumbnailSize;
+    }
+
+    /**
+     * Returns preferred backend for rendering thumbnails.
+     *
+     * @return thumbnail renderer backend
+     */
+    public ThumbnailRenderer.Backend getThumbnailRenderer() {
+        return thumbnailRenderer;
+    }
+}
@@ -0,0 +1,225 @@
+package service;
+
+import data.DataLoader;
+import data.DualContouring;
+import data.ExtractionParameters;
+import data.MarchingCubes;
+import data.MarchingTetrahedra;
+import data.MeshData;
+import data.MeshOptimizer;
+import data.MeshWriter;
+import data.SurfaceExtractor;
+import data.Volume;
+import renderEngine.ThumbnailRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * Headless service that runs extraction jobs from a queue directory.<br>
+ * Job files ending in <code>.job</code> (see {@link ExtractionJob}) are picked up as they appear in the queue
+ * directory, renamed to <code>.running</code> while they run and to <code>.done</code> or <code>.failed</code>
+ * afterwards. Job files should be written under another name and then renamed to <code>.job</code>, so they are
+ * never read half written. Jobs still <code>.running</code> when the service starts were interrupted by the last
+ * run of the service stopping, so they are renamed back to <code>.job</code> and run again. Only one service
+ * should watch a queue directory.<br>
+ * Jobs run on a fixed number of workers with a bounded queue. When the queue is full no new job files are
+ * claimed until a job finishes, so waiting jobs stay in the queue directory. A single engine for each extraction
+ * method is shared by every job, so their working buffers and compiled code are reused.<br>
+ * Jobs can also write PNG thumbnails of each mesh, rendered offscreen so no display is needed.
+ */
+public class ExtractionService {
+    private static final String JOB_SUFFIX = ".job";
+    private static final String RUNNING_SUFFIX = ".running";
+
+    private final File queueDir;
+    private final File outputDir;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final MarchingCubes marchingCubes;
+    private final DualContouring dualContouring = new DualContouring();
+    private final MarchingTetrahedra marchingTetrahedra = new MarchingTetrahedra();
+
+    /**
+     * Creates extraction service.
+     *
+     * @param queueDir      directory watched for job files
+     * @param workers       number of jobs run at the same time
+     * @param queueCapacity number of claimed jobs that can wait for a worker
+     */
+    public ExtractionService(File queueDir, int workers, int queueCapacity) {
+        this.queueDir = queueDir;
+        this.outputDir = new File(queueDir, "out");
+        this.permits = new Semaphore(workers + queueCapacity);
+        // a worker frees its permit before taking the next job from the queue, so a job claimed with that permit
+        // can find the queue still full for a moment, it waits for space rather than being rejected
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), (task, pool) -> {
+            if (pool.isShutdown()) throw new RejectedExecutionException("Extraction service has stopped");
+            try {
+                pool.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a worker", e);
+            }
+        }) {
+            @Override
+            protected void afterExecute(Runnable task, Throwable throwable) {
+                permits.release();
+            }
+        };
+        this.marchingCubes = new MarchingCubes(workers);
+    }
+
+    /**
+     * Runs service until the thread is interrupted.<br>
+     * Requeues jobs interrupted by the last run, claims job files already in the queue directory, then waits for
+     * new ones.
+     *
+     * @throws IOException          if queue directory can't be watched
+     * @throws InterruptedException if interrupted while waiting for jobs
+     */
+    public void run() throws IOException, InterruptedException {
+        System.out.printf("Extraction service watching %s with %d workers%n", queueDir.getPath(), executor.getMaximumPoolSize());
+        requeueInterruptedJobs();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            queueDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            while (!Thread.currentThread().isInterrupted()) {
+                // scans directory rather than using individual events, so overflowed events don't lose jobs
+                claimJobs();
+                WatchKey key = watcher.poll(5, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+    }
+
+    // renames job files left running by a service that was stopped or killed back to job files
+    // jobs that can't be renamed are marked as failed, so they aren't left running forever
+    private void requeueInterruptedJobs() {
+        File[] runningFiles = queueDir.listFiles((dir, name) -> name.endsWith(RUNNING_SUFFIX));
+        if (runningFiles == null) return;
+        for (File running : runningFiles) {
+            if (rename(running, JOB_SUFFIX) != null) {
+                System.out.printf("Requeued interrupted job %s%n", running.getName());
+            } else if (rename(running, ".failed") == null) {
+                System.err.printf("Could not requeue interrupted job %s%n", running.getName());
+            }
+        }
+    }
+
+    // claims each job file in the queue directory in name order
+    // blocks while the worker queue is full, permits are freed as each job finishes, see the executor
+    private void claimJobs() throws InterruptedException {
+        File[] jobFiles = queueDir.listFiles((dir, name) -> name.endsWith(JOB_SUFFIX));
+        if (jobFiles == null) return;
+        Arrays.sort(jobFiles);
+
+        for (File jobFile : jobFiles) {
+            permits.acquire();
+            File running = rename(jobFile, RUNNING_SUFFIX);
+            if (running == null) {
+                // job already claimed or removed
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(() -> runJob(running));
+            } catch (RejectedExecutionException e) {
+                // job never reached a worker, so it is handed back to the queue directory for the next run
+                permits.release();
+                rename(running, JOB_SUFFIX);
+                System.err.printf("Could not start job %s: %s%n", jobFile.getName(), e.getMessage());
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                return;
+            }
+        }
+    }
+
+    // loads volume once and writes a mesh for each ISO level of the job
+    private void runJob(File jobFile) {
+        String name = jobFile.getName().substring(0, jobFile.getName().lastIndexOf('.'));
+        StageMetrics metrics = new StageMetrics(name);
+        boolean success = false;
+        ThumbnailRenderer thumbnailRenderer = null;
+
+        try {
+            metrics.start("parse");
+            ExtractionJob job = new ExtractionJob(jobFile, outputDir);
+            if (!job.getOutput().isDirectory() && !job.getOutput().mkdirs()) {
+                throw new IOException("Could not create output directory " + job.getOutput());
+            }
+
+            metrics.start("load");
+            Volume volume = DataLoader.getVolume(job.getInput(), job.getStorage());
+            SurfaceExtractor extractor = switch (job.getMethod()) {
+                case MARCHING_CUBES -> marchingCubes;
+                case DUAL_CONTOURING -> dualContouring;
+                case MARCHING_TETRAHEDRA -> marchingTetrahedra;
+            };
+
+            for (float isoLevel : job.getIsoLevels()) {
+                ExtractionParameters parameters = new ExtractionParameters();
+                parameters.isoLevel = isoLevel;
+                parameters.enableColours = job.getColours();
+                parameters.method = job.getMethod();
+                parameters.twoPass = job.getTwoPass();
+                parameters.spacing = job.getSpacing();
+
+                metrics.start(String.format(Locale.ROOT, "extract[%s]", isoLevel));
+                MeshData mesh = extractor.generate(volume, parameters);
+                if (job.getOptimise()) {
+                    metrics.start(String.format(Locale.ROOT, "optimise[%s]", isoLevel));
+                    mesh = MeshOptimizer.optimise(mesh);
+                }
+
+                metrics.start(String.format(Locale.ROOT, "write[%s]", isoLevel));
+                String extension = job.getFormat().name().toLowerCase(Locale.ROOT);
+                File meshFile = new File(job.getOutput(), String.format(Locale.ROOT, "%s_iso%s.%s", name, isoLevel, extension));
+                MeshWriter.write(mesh, meshFile, job.getFormat());
+
+                if (job.getThumbnails() > 0) {
+                    metrics.start(String.format(Locale.ROOT, "thumbnails[%s]", isoLevel));
+                    if (thumbnailRenderer == null) {
+                        thumbnailRenderer = new ThumbnailRenderer(job.getThumbnailSize(), job.getThumbnailRenderer());
+                    }
+                    String prefix = String.format(Locale.ROOT, "%s_iso%s", name, isoLevel);
+                    thumbnailRenderer.render(mesh, job.getThumbnails(), job.getOutput(), prefix);
+                }
+            }
+            metrics.end();
+
+            metrics.write(new File(job.getOutput(), name + ".metrics.csv"));
+            success = true;
+        } catch (Exception e) {
+            metrics.end();
+            System.err.printf("Job %s failed%n", name);
+            e.printStackTrace();
+        } finally {
+            if (thumbnailRenderer != null) thumbnailRenderer.close();
+            rename(jobFile, success ? ".done" : ".failed");
+        }
+    }
+
+    // replaces extension of file, returns null if the file could not be renamed
+    private static File rename(File file, String extension) {
+        String name = file.getName();
+        File target = new File(file.getParentFile(), name.substring(0, name.lastIndexOf('.')) + extension);
+        try {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
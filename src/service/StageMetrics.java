@@ -0,0 +1,94 @@
+package service;
+
+import metrics.Metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Records time and memory used by each stage of a job.<br>
+ * Allocated bytes are measured for the thread running the job, where the JVM supports it.
+ */
+public class StageMetrics {
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final String jobName;
+    private final ArrayList<String> lines = new ArrayList<>();
+    private String stage;
+    private long stageStart;
+    private long stageAllocated;
+
+    /**
+     * Creates metrics for given job.
+     *
+     * @param jobName name of the job
+     */
+    public StageMetrics(String jobName) {
+        this.jobName = jobName;
+    }
+
+    /**
+     * Starts timing given stage, ending the previous stage if one is running.
+     *
+     * @param name name of the stage
+     */
+    public void start(String name) {
+        if (stage != null) end();
+        stage = name;
+        stageAllocated = allocatedBytes();
+        stageStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the running stage and records its time, allocated bytes and used heap.
+     */
+    public void end() {
+        if (stage == null) return;
+        double millis = (System.nanoTime() - stageStart) / 1e6;
+        long allocated = allocatedBytes() - stageAllocated;
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+
+        String line = String.format(Locale.ROOT, "%s,%s,%.3f,%d,%d", jobName, stage, millis, allocated, heapUsed);
+        if (Metrics.ENABLED) {
+            // stages of the same kind are recorded together, ignoring the ISO level in brackets
+            int bracket = stage.indexOf('[');
+            String kind = bracket < 0 ? stage : stage.substring(0, bracket);
+            Metrics.histogram("service." + kind + "Time").record((long) (millis * 1e6));
+        }
+        lines.add(line);
+        System.out.printf(Locale.ROOT, "[%s] %s: %.1f ms | allocated %d KB | heap %d MB%n",
+                jobName, stage, millis, allocated >> 10, heapUsed >> 20);
+        stage = null;
+    }
+
+    /**
+     * Writes recorded stages as CSV with columns job, stage, milliseconds, allocated bytes and used heap bytes.
+     *
+     * @param file destination file
+     * @throws IOException if file can't be written to
+     */
+    public void write(File file) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write("job,stage,ms,allocatedBytes,heapUsedBytes\n");
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+    }
+
+    // bytes allocated by the current thread, or -1 if not supported
+    private static long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,296 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DicomSeriesTest {
+    private static final String IMPLICIT_VR_LITTLE_ENDIAN = "1.2.840.10008.1.2";
+    private static final String EXPLICIT_VR_LITTLE_ENDIAN = "1.2.840.10008.1.2.1";
+    private static final String JPEG_BASELINE = "1.2.840.10008.1.2.4.50";
+
+    private static final int TRANSFER_SYNTAX = 0x00020010;
+    private static final int REFERENCED_IMAGES = 0x00081140;
+    private static final int REFERENCED_SOP_INSTANCE = 0x00081155;
+    private static final int SOURCE_IMAGES = 0x00082112;
+    private static final int INSTANCE_NUMBER = 0x00200013;
+    private static final int IMAGE_POSITION = 0x00200032;
+    private static final int IMAGE_ORIENTATION = 0x00200037;
+    private static final int ROWS = 0x00280010;
+    private static final int COLUMNS = 0x00280011;
+    private static final int PIXEL_SPACING = 0x00280030;
+    private static final int BITS_ALLOCATED = 0x00280100;
+    private static final int BITS_STORED = 0x00280101;
+    private static final int PIXEL_REPRESENTATION = 0x00280103;
+    private static final int RESCALE_INTERCEPT = 0x00281052;
+    private static final int RESCALE_SLOPE = 0x00281053;
+    private static final int PIXEL_DATA = 0x7FE00010;
+    private static final int ITEM = 0xFFFEE000;
+    private static final int ITEM_END = 0xFFFEE00D;
+    private static final int SEQUENCE_END = 0xFFFEE0DD;
+
+    private static final int COLUMN_COUNT = 3;
+    private static final int ROW_COUNT = 2;
+
+    @TempDir
+    File dir;
+
+    // writes DICOM files element by element in either uncompressed little endian syntax
+    // elements are written in the order given, so tests add them in ascending tag order
+    private static class DicomWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean explicit = true;
+
+        private DicomWriter(String transferSyntax) {
+            out.writeBytes(new byte[128]);
+            out.writeBytes("DICM".getBytes(StandardCharsets.US_ASCII));
+            // file meta information is always explicit VR
+            element(TRANSFER_SYNTAX, "UI", padded(transferSyntax, '\0'));
+            explicit = !transferSyntax.equals(IMPLICIT_VR_LITTLE_ENDIAN);
+        }
+
+        private DicomWriter unsignedShort(int tag, int value) {
+            return element(tag, "US", ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) value).array());
+        }
+
+        private DicomWriter string(int tag, String vr, String value) {
+            return element(tag, vr, padded(value, ' '));
+        }
+
+        private DicomWriter samples(short... samples) {
+            ByteBuffer pixels = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (short sample : samples) pixels.putShort(sample);
+            return element(PIXEL_DATA, "OW", pixels.array());
+        }
+
+        private DicomWriter element(int tag, String vr, byte[] value) {
+            header(tag, vr, value.length);
+            out.writeBytes(value);
+            return this;
+        }
+
+        // starts a sequence, item or encapsulated pixel data of undefined length
+        private DicomWriter undefinedLength(int tag, String vr) {
+            header(tag, vr, -1);
+            return this;
+        }
+
+        // ends an item or sequence of undefined length
+        private DicomWriter delimiter(int tag) {
+            header(tag, null, 0);
+            return this;
+        }
+
+        private void header(int tag, String vr, int length) {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            header.putShort((short) (tag >>> 16)).putShort((short) tag);
+            if (!explicit || tag >>> 16 == 0xFFFE) {
+                header.putInt(length);
+            } else if (vr.equals("OB") || vr.equals("OW") || vr.equals("SQ") || vr.equals("UN")) {
+                header.put(vr.getBytes(StandardCharsets.US_ASCII)).putShort((short) 0).putInt(length);
+            } else {
+                header.put(vr.getBytes(StandardCharsets.US_ASCII)).putShort((short) length);
+            }
+            out.write(header.array(), 0, header.position());
+        }
+
+        private File write(File file) throws IOException {
+            Files.write(file.toPath(), out.toByteArray());
+            return file;
+        }
+
+        // values have an even length, padded with the given character
+        private static byte[] padded(String value, char padding) {
+            return (value.length() % 2 == 0 ? value : value + padding).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // slice of 16 bit unsigned samples at given height along the z-axis of the patient, up to its pixel data
+    private static DicomWriter slice(String transferSyntax, double z) {
+        return new DicomWriter(transferSyntax)
+                .string(IMAGE_POSITION, "DS", "0\\0\\" + z)
+                .string(IMAGE_ORIENTATION, "DS", "1\\0\\0\\0\\1\\0")
+                .unsignedShort(ROWS, ROW_COUNT)
+                .unsignedShort(COLUMNS, COLUMN_COUNT)
+                .string(PIXEL_SPACING, "DS", "0.5\\0.25")
+                .unsignedShort(BITS_ALLOCATED, 16)
+                .unsignedShort(BITS_STORED, 16)
+                .unsignedShort(PIXEL_REPRESENTATION, 0);
+    }
+
+    // samples of a slice, each identifying its slice, row and column
+    private static short[] samples(int slice) {
+        short[] samples = new short[ROW_COUNT * COLUMN_COUNT];
+        for (int i = 0; i < samples.length; i++) samples[i] = (short) (slice * 100 + i);
+        return samples;
+    }
+
+    // samples of a volume with rows along the z-axis and columns along the x-axis, one row after another
+    private static float[] samples(Volume volume, int y) {
+        float[] values = new float[volume.getDepth() * volume.getWidth()];
+        for (int row = 0; row < volume.getDepth(); row++) {
+            for (int column = 0; column < volume.getWidth(); column++) {
+                values[row * volume.getWidth() + column] = volume.getValue(column, y, row);
+            }
+        }
+        return values;
+    }
+
+    private static float[] expected(int slice) {
+        short[] samples = samples(slice);
+        float[] values = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) values[i] = samples[i];
+        return values;
+    }
+
+    @Test
+    void implicitAndExplicitSyntaxesReadTheSameVolume() throws IOException {
+        for (String transferSyntax : new String[]{IMPLICIT_VR_LITTLE_ENDIAN, EXPLICIT_VR_LITTLE_ENDIAN}) {
+            File series = new File(dir, transferSyntax);
+            assertTrue(series.mkdir());
+            for (int slice = 0; slice < 2; slice++) {
+                slice(transferSyntax, slice * 2.0).samples(samples(slice)).write(new File(series, slice + ".dcm"));
+            }
+
+            DicomSeries dicom = new DicomSeries(series);
+            DenseVolume volume = dicom.readVolume();
+            assertEquals(COLUMN_COUNT, volume.getWidth(), transferSyntax);
+            assertEquals(2, volume.getHeight(), transferSyntax);
+            assertEquals(ROW_COUNT, volume.getDepth(), transferSyntax);
+            // pixel spacing is the distance between rows then columns
+            assertArrayEquals(new float[]{0.25f, 2, 0.5f}, volume.getSpacing(), transferSyntax);
+            for (int slice = 0; slice < 2; slice++) assertArrayEquals(expected(slice), samples(volume, slice), transferSyntax);
+        }
+    }
+
+    @Test
+    void nestedSequencesOfUndefinedLengthAreSkipped() throws IOException {
+        for (String transferSyntax : new String[]{IMPLICIT_VR_LITTLE_ENDIAN, EXPLICIT_VR_LITTLE_ENDIAN}) {
+            File series = new File(dir, transferSyntax);
+            assertTrue(series.mkdir());
+            // sequence of undefined length holding an item of undefined length, which holds another sequence of
+            // undefined length with an item of defined length, before the elements of the image
+            // values inside the items would be read as rows and columns if the sequences weren't skipped
+            byte[] nestedItem = new byte[12];
+            ByteBuffer.wrap(nestedItem).order(ByteOrder.LITTLE_ENDIAN)
+                    .putShort((short) 0x0028).putShort((short) 0x0010).putInt(2).putShort((short) 99);
+            new DicomWriter(transferSyntax)
+                    .undefinedLength(REFERENCED_IMAGES, "SQ")
+                    .undefinedLength(ITEM, null)
+                    .string(REFERENCED_SOP_INSTANCE, "UI", "1.2.3")
+                    .undefinedLength(SOURCE_IMAGES, "SQ")
+                    .element(ITEM, null, nestedItem)
+                    .delimiter(SEQUENCE_END)
+                    .delimiter(ITEM_END)
+                    .delimiter(SEQUENCE_END)
+                    .unsignedShort(ROWS, ROW_COUNT)
+                    .unsignedShort(COLUMNS, COLUMN_COUNT)
+                    .unsignedShort(BITS_ALLOCATED, 16)
+                    .samples(samples(3))
+                    .write(new File(series, "0.dcm"));
+
+            DenseVolume volume = new DicomSeries(series).readVolume();
+            assertEquals(COLUMN_COUNT, volume.getWidth(), transferSyntax);
+            assertEquals(ROW_COUNT, volume.getDepth(), transferSyntax);
+            assertArrayEquals(expected(3), samples(volume, 0), transferSyntax);
+        }
+    }
+
+    @Test
+    void twelveBitSignedSamplesIgnoreHighBitsAndAreRescaled() throws IOException {
+        // 12 bit two's complement values with unrelated bits above them, as written by some scanners
+        short[] stored = {(short) 0xAFFB, (short) 0x57FF, (short) 0xF800, 0x0000, (short) 0x3001, (short) 0xCFFF};
+        float[] values = {-5, 2047, -2048, 0, 1, -1};
+        slice(EXPLICIT_VR_LITTLE_ENDIAN, 0)
+                .unsignedShort(BITS_STORED, 12)
+                .unsignedShort(PIXEL_REPRESENTATION, 1)
+                .string(RESCALE_INTERCEPT, "DS", "-1024")
+                .string(RESCALE_SLOPE, "DS", "2")
+                .samples(stored)
+                .write(new File(dir, "0.dcm"));
+
+        DenseVolume volume = new DicomSeries(dir).readVolume();
+        float[] expected = new float[values.length];
+        for (int i = 0; i < values.length; i++) expected[i] = values[i] * 2 - 1024;
+        assertArrayEquals(expected, samples(volume, 0));
+    }
+
+    @Test
+    void twelveBitUnsignedSamplesAreMaskedToTheStoredBits() throws IOException {
+        short[] stored = {(short) 0xF123, (short) 0x0FFF, (short) 0x8000, 0x0001, (short) 0xA800, (short) 0x5555};
+        float[] values = {0x123, 0xFFF, 0, 1, 0x800, 0x555};
+        slice(EXPLICIT_VR_LITTLE_ENDIAN, 0)
+                .unsignedShort(BITS_STORED, 12)
+                .samples(stored)
+                .write(new File(dir, "0.dcm"));
+
+        assertArrayEquals(values, samples(new DicomSeries(dir).readVolume(), 0));
+    }
+
+    @Test
+    void slicesAreSortedByPositionRatherThanFileName() throws IOException {
+        // file names run opposite to the positions, with the positions out of order as well
+        double[] positions = {-7.5, 2.5, -2.5, 7.5};
+        String[] names = {"d.dcm", "b.dcm", "c.dcm", "a.dcm"};
+        for (int i = 0; i < positions.length; i++) {
+            slice(IMPLICIT_VR_LITTLE_ENDIAN, positions[i]).samples(samples(i)).write(new File(dir, names[i]));
+        }
+
+        DenseVolume volume = new DicomSeries(dir).readVolume();
+        int[] order = {0, 2, 1, 3};
+        for (int y = 0; y < order.length; y++) assertArrayEquals(expected(order[y]), samples(volume, y));
+        assertEquals(5, volume.getSpacing()[1]);
+    }
+
+    @Test
+    void slicesWithoutPositionAreSortedByInstanceNumber() throws IOException {
+        int[] instances = {3, 1, 2};
+        for (int i = 0; i < instances.length; i++) {
+            new DicomWriter(EXPLICIT_VR_LITTLE_ENDIAN)
+                    .string(INSTANCE_NUMBER, "IS", Integer.toString(instances[i]))
+                    .unsignedShort(ROWS, ROW_COUNT)
+                    .unsignedShort(COLUMNS, COLUMN_COUNT)
+                    .unsignedShort(BITS_ALLOCATED, 16)
+                    .samples(samples(i))
+                    .write(new File(dir, i + ".dcm"));
+        }
+
+        DenseVolume volume = new DicomSeries(dir).readVolume();
+        int[] order = {1, 2, 0};
+        for (int y = 0; y < order.length; y++) assertArrayEquals(expected(order[y]), samples(volume, y));
+    }
+
+    @Test
+    void compressedTransferSyntaxIsRejected() throws IOException {
+        slice(JPEG_BASELINE, 0).samples(samples(0)).write(new File(dir, "0.dcm"));
+
+        IOException e = assertThrows(IOException.class, () -> new DicomSeries(dir));
+        assertTrue(e.getMessage().contains(JPEG_BASELINE), e.getMessage());
+    }
+
+    @Test
+    void encapsulatedPixelDataIsRejected() throws IOException {
+        // pixel data of undefined length holds fragments, even when the transfer syntax claims it is uncompressed
+        slice(EXPLICIT_VR_LITTLE_ENDIAN, 0)
+                .undefinedLength(PIXEL_DATA, "OB")
+                .element(ITEM, null, new byte[0])
+                .element(ITEM, null, new byte[ROW_COUNT * COLUMN_COUNT * 2])
+                .delimiter(SEQUENCE_END)
+                .write(new File(dir, "0.dcm"));
+
+        IOException e = assertThrows(IOException.class, () -> new DicomSeries(dir));
+        assertTrue(e.getMessage().contains("compressed"), e.getMessage());
+    }
+}
@@ -0,0 +1,203 @@
+package renderEngine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagingRingTest {
+    private static final int SLOT_BYTES = 64;
+
+    // fences that signal only once the test says so, recording which were deleted
+    private static class FakeFences implements StagingRing.Fences {
+        private final Set<Long> signalled = new HashSet<>();
+        private final List<Long> deleted = new ArrayList<>();
+
+        @Override
+        public synchronized boolean isSignalled(long fence) {
+            return signalled.contains(fence);
+        }
+
+        @Override
+        public synchronized void delete(long fence) {
+            deleted.add(fence);
+        }
+
+        synchronized void signal(long fence) {
+            signalled.add(fence);
+        }
+    }
+
+    @Test
+    void slotsAreReusedInOrderAroundTheRing() throws InterruptedException {
+        StagingRing ring = new StagingRing(ByteBuffer.allocateDirect(3 * SLOT_BYTES), 3, SLOT_BYTES);
+
+        for (int i = 0; i < 10; i++) {
+            StagingRing.Slot slot = ring.acquire();
+            assertEquals((long) (i % 3) * SLOT_BYTES, slot.getOffset());
+            assertEquals(0, slot.getBuffer().position());
+            assertEquals(SLOT_BYTES, slot.getBuffer().limit());
+
+            slot.getBuffer().putInt(i);
+            UploadChunk chunk = new UploadChunk(0, i, 1);
+            ring.publish(slot, chunk);
+            StagingRing.Slot ready = ring.pollReady();
+            assertSame(slot, ready);
+            assertSame(chunk, ready.getChunk());
+            assertEquals(i, ready.getBuffer().getInt(0));
+            ring.retire(ready, 0);
+        }
+        assertNull(ring.pollReady());
+        assertEquals(0, ring.getInFlight());
+    }
+
+    @Test
+    void slotsShareTheBackingBuffer() throws InterruptedException {
+        ByteBuffer backing = ByteBuffer.allocateDirect(2 * SLOT_BYTES);
+        StagingRing ring = new StagingRing(backing, 2, SLOT_BYTES);
+
+        ring.acquire().getBuffer().putInt(0, 7);
+        ring.acquire().getBuffer().putInt(0, 9);
+
+        assertEquals(7, backing.order(ByteOrder.nativeOrder()).getInt(0));
+        assertEquals(9, backing.getInt(SLOT_BYTES));
+    }
+
+    @Test
+    void slotsInFlightAreFreedOnlyOnceTheirFenceSignals() throws Exception {
+        StagingRing ring = new StagingRing(ByteBuffer.allocateDirect(2 * SLOT_BYTES), 2, SLOT_BYTES);
+        FakeFences fences = new FakeFences();
+        for (long fence = 1; fence <= 2; fence++) {
+            ring.publish(ring.acquire(), new UploadChunk(0, 0, 1));
+            ring.retire(ring.pollReady(), fence);
+        }
+        assertEquals(2, ring.getInFlight());
+
+        // every slot is in flight, so a worker waits for one to be freed
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            Future<StagingRing.Slot> acquired = worker.submit(ring::acquire);
+            assertEquals(0, ring.reclaim(fences));
+            Thread.sleep(50);
+            assertFalse(acquired.isDone());
+
+            // fences signal in order, a later fence signalling first frees nothing
+            fences.signal(2);
+            assertEquals(0, ring.reclaim(fences));
+            assertFalse(acquired.isDone());
+
+            fences.signal(1);
+            assertEquals(2, ring.reclaim(fences));
+            assertEquals(0L, acquired.get(1, TimeUnit.SECONDS).getOffset());
+            assertEquals(List.of(1L, 2L), fences.deleted);
+            assertEquals(0, ring.getInFlight());
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test
+    void clearDeletesFencesOfSlotsInFlight() throws InterruptedException {
+        StagingRing ring = new StagingRing(ByteBuffer.allocateDirect(3 * SLOT_BYTES), 3, SLOT_BYTES);
+        FakeFences fences = new FakeFences();
+        for (long fence = 5; fence <= 6; fence++) {
+            ring.publish(ring.acquire(), new UploadChunk(0, 0, 1));
+            ring.retire(ring.pollReady(), fence);
+        }
+        ring.publish(ring.acquire(), new UploadChunk(0, 0, 1));
+
+        ring.clear(fences);
+
+        assertEquals(List.of(5L, 6L), fences.deleted);
+        assertEquals(0, ring.getInFlight());
+        assertNull(ring.pollReady());
+    }
+
+    @Test
+    void twoProducersReassembleArraysThroughFewerSlotsThanChunks() throws Exception {
+        float[] vertices = new float[3001];
+        float[] normals = new float[3001];
+        int[] indices = new int[4500];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = i * 0.5f;
+            normals[i] = -i;
+        }
+        for (int i = 0; i < indices.length; i++) indices[i] = indices.length - i;
+
+        float[][] floatArrays = {vertices, normals};
+        List<UploadChunk> chunks = UploadChunk.split(new int[]{vertices.length, normals.length, indices.length}, SLOT_BYTES);
+        StagingRing ring = new StagingRing(ByteBuffer.allocateDirect(4 * SLOT_BYTES), 4, SLOT_BYTES);
+        FakeFences fences = new FakeFences();
+
+        // producers fill slots as the uploader's workers do
+        AtomicInteger nextChunk = new AtomicInteger();
+        ExecutorService producers = Executors.newFixedThreadPool(2);
+        List<Future<?>> filled = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            filled.add(producers.submit(() -> {
+                for (int i = nextChunk.getAndIncrement(); i < chunks.size(); i = nextChunk.getAndIncrement()) {
+                    UploadChunk chunk = chunks.get(i);
+                    StagingRing.Slot slot = ring.acquire();
+                    if (chunk.getTarget() < floatArrays.length) {
+                        slot.getBuffer().asFloatBuffer().put(floatArrays[chunk.getTarget()], chunk.getOffset(), chunk.getCount());
+                    } else {
+                        slot.getBuffer().asIntBuffer().put(indices, chunk.getOffset(), chunk.getCount());
+                    }
+                    ring.publish(slot, chunk);
+                }
+                return null;
+            }));
+        }
+
+        // consumer copies each ready slot into its place, fences signalling one upload after they are issued
+        float[][] floatCopies = {new float[vertices.length], new float[normals.length]};
+        int[] indexCopy = new int[indices.length];
+        int uploaded = 0;
+        long fence = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            while (uploaded < chunks.size()) {
+                assertTrue(System.nanoTime() < deadline, "upload stalled");
+                ring.reclaim(fences);
+                StagingRing.Slot slot = ring.pollReady();
+                if (slot == null) {
+                    fences.signal(fence);
+                    Thread.yield();
+                    continue;
+                }
+                UploadChunk chunk = slot.getChunk();
+                if (chunk.getTarget() < floatArrays.length) {
+                    slot.getBuffer().asFloatBuffer().get(floatCopies[chunk.getTarget()], chunk.getOffset(), chunk.getCount());
+                } else {
+                    slot.getBuffer().asIntBuffer().get(indexCopy, chunk.getOffset(), chunk.getCount());
+                }
+                fences.signal(fence);
+                ring.retire(slot, ++fence);
+                uploaded++;
+            }
+            for (Future<?> producer : filled) producer.get(1, TimeUnit.SECONDS);
+        } finally {
+            producers.shutdownNow();
+        }
+
+        assertArrayEquals(vertices, floatCopies[0]);
+        assertArrayEquals(normals, floatCopies[1]);
+        assertArrayEquals(indices, indexCopy);
+    }
+}
@@ -0,0 +1,49 @@
+package renderEngine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadChunkTest {
+    @Test
+    void splitCoversEveryElementInOrder() {
+        List<UploadChunk> chunks = UploadChunk.split(new int[]{10, 0, 7}, 16);
+
+        // 4 elements a chunk: 4 + 4 + 2 of the first array, none of the empty one, 4 + 3 of the last
+        int[][] expected = {{0, 0, 4}, {0, 4, 4}, {0, 8, 2}, {2, 0, 4}, {2, 4, 3}};
+        assertEquals(expected.length, chunks.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], chunks.get(i).getTarget());
+            assertEquals(expected[i][1], chunks.get(i).getOffset());
+            assertEquals(expected[i][2], chunks.get(i).getCount());
+        }
+    }
+
+    @Test
+    void byteOffsetsAndSizesUseElementSize() {
+        UploadChunk chunk = new UploadChunk(1, 1 << 30, 5);
+
+        assertEquals((1L << 30) * UploadChunk.ELEMENT_BYTES, chunk.getByteOffset());
+        assertEquals(5 * UploadChunk.ELEMENT_BYTES, chunk.getBytes());
+    }
+
+    @Test
+    void chunksAreNeverLargerThanChunkBytes() {
+        int chunkBytes = 4096;
+        for (UploadChunk chunk : UploadChunk.split(new int[]{100_000, 3, 1025}, chunkBytes)) {
+            assertTrue(chunk.getCount() > 0);
+            assertTrue(chunk.getBytes() <= chunkBytes);
+        }
+    }
+
+    @Test
+    void chunkSmallerThanAnElementHoldsOneElement() {
+        List<UploadChunk> chunks = UploadChunk.split(new int[]{3}, 1);
+
+        assertEquals(3, chunks.size());
+        for (UploadChunk chunk : chunks) assertEquals(1, chunk.getCount());
+    }
+}